@@ -0,0 +1,25 @@
+package com.semantive.hiqual.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the optional regular expression given as the first argument and writes the results
+ * in JSON format to the file given as the second argument ({@code hiqual-benchmarks.json} by default), so that
+ * they can be compared across releases. For the full set of JMH options, run the benchmarks jar with
+ * {@code -cp benchmarks.jar org.openjdk.jmh.Main}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*")
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 1 ? args[1] : "hiqual-benchmarks.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.semantive.hiqual.benchmarks;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.benchmarks.model.Address;
+import com.semantive.hiqual.benchmarks.model.Customer;
+import com.semantive.hiqual.benchmarks.model.CustomerDto;
+import com.semantive.hiqual.core.QueryBuilder;
+import com.semantive.hiqual.core.QueryPlanCache;
+import com.semantive.hiqual.filter.Operator;
+import com.semantive.hiqual.filter.SimpleWhereCondition;
+import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.semantive.commons.functional.Option.some;
+
+/**
+ * Measures the complete {@link QueryBuilder#generatePaginatedList(Session)} - HQL generation, the main and the count
+ * query and the transformation - against an embedded H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PaginatedListBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"20"})
+    public int pageSize;
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    private IResultSetConfig config;
+
+    private QueryPlanCache planCache;
+
+    @Setup
+    public void setUp() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Customer.class)
+                .addAnnotatedClass(Address.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:hiqual-benchmarks;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session populatingSession = sessionFactory.openSession();
+        populatingSession.beginTransaction();
+        for (int i = 0; i < rows; i++) {
+            Address address = new Address();
+            address.setCity("City " + (i % 100));
+            address.setZip(String.format("%05d", i % 1000));
+            populatingSession.save(address);
+
+            Customer customer = new Customer();
+            customer.setName("Customer " + i);
+            customer.setEmail("customer" + i + "@example.com");
+            customer.setCreated(new Date(1356998400000L + i * 60000L));
+            customer.setAddress(address);
+            populatingSession.save(customer);
+
+            if (i % 500 == 0) {
+                populatingSession.flush();
+                populatingSession.clear();
+            }
+        }
+        populatingSession.getTransaction().commit();
+        populatingSession.close();
+
+        config = new ResultSetConfigBuilder()
+                .setPropertiesToFetch("id", "name", "email", "created")
+                .addPropertyToFetch("address.city", some("address"))
+                .addPropertyToFetch("address.zip", some("address"))
+                .andCondition(new SimpleWhereCondition("name", Operator.LIKE, "name", "Customer 1%"))
+                .addOrder("name", "asc")
+                .setOffset(rows / 10)
+                .setFetchSize(pageSize)
+                .build();
+        planCache = new QueryPlanCache();
+        session = sessionFactory.openSession();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    private QueryBuilder<CustomerDto> newQueryBuilder() {
+        return new QueryBuilder<CustomerDto>(CustomerDto.class, config)
+                .setFromClause("from Customer c")
+                .addDefaultSubstitution("c");
+    }
+
+    @Benchmark
+    public PaginationAwareListWrapper<CustomerDto> paginatedList() {
+        session.clear();
+        return newQueryBuilder().generatePaginatedList(session);
+    }
+
+    @Benchmark
+    public PaginationAwareListWrapper<CustomerDto> paginatedListWithPlanCache() {
+        session.clear();
+        return newQueryBuilder().usePlanCache(planCache).generatePaginatedList(session);
+    }
+}
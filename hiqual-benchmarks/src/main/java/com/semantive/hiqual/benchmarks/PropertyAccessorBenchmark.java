@@ -0,0 +1,56 @@
+package com.semantive.hiqual.benchmarks;
+
+import com.semantive.commons.PropertyAccessor;
+import com.semantive.hiqual.benchmarks.model.AddressDto;
+import com.semantive.hiqual.benchmarks.model.CustomerDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading and writing a nested property with {@link PropertyAccessor} and with plain getters and setters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropertyAccessorBenchmark {
+
+    private final PropertyAccessor<CustomerDto> cityAccessor = new PropertyAccessor<CustomerDto>("address.city", CustomerDto.class);
+
+    private CustomerDto customer;
+
+    @Setup
+    public void setUp() {
+        customer = new CustomerDto();
+        customer.setAddress(new AddressDto());
+        customer.getAddress().setCity("Warsaw");
+    }
+
+    @Benchmark
+    public Object accessorGet() {
+        return cityAccessor.getProperty(customer);
+    }
+
+    @Benchmark
+    public Object plainGet() {
+        return customer.getAddress().getCity();
+    }
+
+    @Benchmark
+    public Object accessorSetOnNewBean() {
+        CustomerDto bean = new CustomerDto();
+        cityAccessor.setProperty(bean, "Cracow");
+        return bean;
+    }
+
+    @Benchmark
+    public Object plainSetOnNewBean() {
+        CustomerDto bean = new CustomerDto();
+        bean.setAddress(new AddressDto());
+        bean.getAddress().setCity("Cracow");
+        return bean;
+    }
+}
@@ -0,0 +1,85 @@
+package com.semantive.hiqual.benchmarks;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.TextSearchExpressions;
+import com.semantive.hiqual.core.QueryBuilder;
+import com.semantive.hiqual.core.QueryPlanCache;
+import com.semantive.hiqual.filter.BetweenWhereCondition;
+import com.semantive.hiqual.filter.Operator;
+import com.semantive.hiqual.filter.SimpleWhereCondition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.semantive.commons.functional.Option.some;
+
+/**
+ * Measures the HQL generation of {@link QueryBuilder} for small, medium and huge result set configs, with and
+ * without the query plan cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryGenerationBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public String size;
+
+    private IResultSetConfig config;
+
+    private QueryPlanCache planCache;
+
+    @Setup
+    public void setUp() {
+        int properties = "SMALL".equals(size) ? 2 : "MEDIUM".equals(size) ? 8 : 40;
+        int joins = "SMALL".equals(size) ? 0 : "MEDIUM".equals(size) ? 2 : 8;
+        int conditions = "SMALL".equals(size) ? 1 : "MEDIUM".equals(size) ? 5 : 25;
+
+        ResultSetConfigBuilder builder = new ResultSetConfigBuilder().setOffset(40).setFetchSize(20);
+        for (int i = 0; i < properties; i++) {
+            if (i < joins) builder.addPropertyToFetch("join" + i + ".property" + i, some("join" + i));
+            else builder.addPropertyToFetch("property" + i);
+        }
+        for (int i = 0; i < Math.min(properties, 3); i++) builder.addOrder("property" + i, i % 2 == 0 ? "asc" : "desc");
+        for (int i = 0; i < conditions; i++) {
+            if (i % 5 == 4)
+                builder.andCondition(new BetweenWhereCondition("property" + i, "lower" + i, i, "upper" + i, i + 10));
+            else if (i % 5 == 3)
+                builder.andCondition(new SimpleWhereCondition("property" + i, Operator.IN, "param" + i, Arrays.asList(1L, 2L, 3L)));
+            else
+                builder.andNotCondition(new SimpleWhereCondition("property" + i, Operator.EQ, "param" + i, "value" + i));
+        }
+        if (!"SMALL".equals(size)) {
+            TextSearchExpressions textSearchExpressions = new TextSearchExpressions()
+                    .addPlainProperty("property0")
+                    .addNumericProperty("property1")
+                    .addDateProperty("property2")
+                    .addIdProperty("id");
+            builder.setTextSearchExpressions(textSearchExpressions).setSearchString("john 2013");
+        }
+        config = builder.build();
+        planCache = new QueryPlanCache();
+    }
+
+    private QueryBuilder<Object> newQueryBuilder() {
+        return new QueryBuilder<Object>(Object.class, config)
+                .setFromClause("from Entity e")
+                .addDefaultSubstitution("e")
+                .addUnconditionalWhereCondition("e.deleted = false");
+    }
+
+    @Benchmark
+    public String render() {
+        return newQueryBuilder().getQueryPlan().getMainQuery();
+    }
+
+    @Benchmark
+    public String renderWithPlanCache() {
+        return newQueryBuilder().usePlanCache(planCache).getQueryPlan().getMainQuery();
+    }
+}
@@ -0,0 +1,72 @@
+package com.semantive.hiqual.benchmarks;
+
+import com.semantive.hiqual.benchmarks.model.CustomerDto;
+import com.semantive.hiqual.benchmarks.model.CustomerRecord;
+import com.semantive.hiqual.core.AliasToBeanCustomTransformer;
+import com.semantive.hiqual.core.AliasToConstructorTransformer;
+import org.openjdk.jmh.annotations.*;
+import org.hibernate.transform.ResultTransformer;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the transformation of a single tuple into flat and nested DTOs. The {@code perQuery} benchmarks include
+ * creating the transformer, as it is done for each query, and transforming the first tuple.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TupleTransformationBenchmark {
+
+    private static final String[] FLAT_ALIASES = {"id", "name", "email", "created"};
+
+    private static final String[] NESTED_ALIASES = {"id", "name", "email", "created", "address_city", "address_zip"};
+
+    private final Object[] flatTuple = {1L, "John Smith", "john@example.com", new Date()};
+
+    private final Object[] nestedTuple = {1L, "John Smith", "john@example.com", new Date(), "Warsaw", "00-001"};
+
+    private ResultTransformer flatBeanTransformer;
+
+    private ResultTransformer nestedBeanTransformer;
+
+    private ResultTransformer flatConstructorTransformer;
+
+    @Setup
+    public void setUp() {
+        flatBeanTransformer = beanTransformer();
+        nestedBeanTransformer = beanTransformer();
+        flatConstructorTransformer = AliasToConstructorTransformer.build(CustomerRecord.class).usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE);
+        flatBeanTransformer.transformTuple(flatTuple, FLAT_ALIASES.clone());
+        nestedBeanTransformer.transformTuple(nestedTuple, NESTED_ALIASES.clone());
+        flatConstructorTransformer.transformTuple(flatTuple, FLAT_ALIASES.clone());
+    }
+
+    private static ResultTransformer beanTransformer() {
+        return AliasToBeanCustomTransformer.build(CustomerDto.class).usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE);
+    }
+
+    @Benchmark
+    public Object flatBean() {
+        return flatBeanTransformer.transformTuple(flatTuple, FLAT_ALIASES);
+    }
+
+    @Benchmark
+    public Object nestedBean() {
+        return nestedBeanTransformer.transformTuple(nestedTuple, NESTED_ALIASES);
+    }
+
+    @Benchmark
+    public Object flatConstructor() {
+        return flatConstructorTransformer.transformTuple(flatTuple, FLAT_ALIASES);
+    }
+
+    @Benchmark
+    public Object nestedBeanPerQuery() {
+        return beanTransformer().transformTuple(nestedTuple, NESTED_ALIASES.clone());
+    }
+}
@@ -0,0 +1,24 @@
+package com.semantive.hiqual.benchmarks.model;
+
+public class AddressDto {
+
+    private String city;
+
+    private String zip;
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    public String getZip() {
+        return zip;
+    }
+
+    public void setZip(String zip) {
+        this.zip = zip;
+    }
+}
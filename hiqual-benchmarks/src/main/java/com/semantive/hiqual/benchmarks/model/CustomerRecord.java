@@ -0,0 +1,42 @@
+package com.semantive.hiqual.benchmarks.model;
+
+import java.beans.ConstructorProperties;
+import java.util.Date;
+
+/**
+ * An immutable counterpart of the flat {@link CustomerDto}.
+ */
+public class CustomerRecord {
+
+    private final Long id;
+
+    private final String name;
+
+    private final String email;
+
+    private final Date created;
+
+    @ConstructorProperties({"id", "name", "email", "created"})
+    public CustomerRecord(Long id, String name, String email, Date created) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+        this.created = created;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+}
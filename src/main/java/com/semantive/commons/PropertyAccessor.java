@@ -34,6 +34,11 @@ public class PropertyAccessor<T> {
 
     private final static Log log = LogFactory.getLog(PropertyAccessor.class);
 
+    /**
+     * Shared arguments array for invoking getters, so that no empty array is allocated on each invocation.
+     */
+    final static Object[] NO_ARGUMENTS = new Object[0];
+
     /**
      * Possible collection handling modes.
      */
@@ -115,6 +120,11 @@ public class PropertyAccessor<T> {
      */
     private final int hash;
 
+    /**
+     * Whether the property is a collection or an array, which may need to be converted when being set.
+     */
+    private final boolean collectionProperty;
+
 
     /**
      * Initializes this property accessor with {@link #PropertyAccessor(String, Class, Map)} with no explicit types for
@@ -186,8 +196,8 @@ public class PropertyAccessor<T> {
             Object o = modelClass.newInstance();
             for (int i = 0; i < pathElems.length; i++) {
                 PropertyDescriptor pd = PropertyUtils.getPropertyDescriptor(o, pathElems[i]);
-                writeMethods[i] = pd.getWriteMethod();
-                readMethods[i] = pd.getReadMethod();
+                writeMethods[i] = makeAccessible(pd.getWriteMethod());
+                readMethods[i] = makeAccessible(pd.getReadMethod());
 
                 log.debug(String.format("Property descriptor for path element %s is: class %s, read method %s, write method %s", pathElems[i], pd.getPropertyType().getName(), pd.getReadMethod(), pd.getWriteMethod()));
                 if (classes[i] != null) {
@@ -206,6 +216,22 @@ public class PropertyAccessor<T> {
         } catch (Exception ex) {
             throw new RuntimeException(String.format("Failed to create the PropertyAccessor for class %s and path %s.", modelClass, path), ex);
         }
+        collectionProperty = Is.collectionInterfaceOrArray(classes[classes.length - 1]);
+    }
+
+    /**
+     * Suppresses the Java language access checks of the method, so that they are not repeated on each invocation.
+     * The method is left untouched if the security manager does not allow that.
+     */
+    private static Method makeAccessible(Method method) {
+        if (method != null && !method.isAccessible()) {
+            try {
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                log.debug(String.format("Cannot suppress access checks for method %s.", method));
+            }
+        }
+        return method;
     }
 
     /**
@@ -248,7 +274,7 @@ public class PropertyAccessor<T> {
         try {
             // initialize a path to the property so that bean points to the object where the property is directly included
             for (int i = 0; i < readMethods.length - 1; i++) {
-                Object v = readMethods[i].invoke(bean);
+                Object v = readMethods[i].invoke(bean, NO_ARGUMENTS);
                 if (v == null) {
                     // if any intermediate property is null and value to be set is also null, there is nothing to do
                     if (value == null && nullValueProcessingMode == NullValueProcessingMode.NONE) {
@@ -263,7 +289,7 @@ public class PropertyAccessor<T> {
                 bean = v;
             }
 
-            if (Is.collectionInterfaceOrArray(classes[classes.length - 1])
+            if (collectionProperty
                     && (nullValueProcessingMode == NullValueProcessingMode.INITIALIZE_COLLECTION || (collectionProcessingMode == CollectionProcessingMode.COPY && value != null))) {
 
                 // convert the collection to desired type
@@ -288,7 +314,10 @@ public class PropertyAccessor<T> {
      */
     public <T> T getProperty(Object bean) {
         try {
-            for (Method readMethod : readMethods) bean = readMethod.invoke(bean);
+            for (Method readMethod : readMethods) {
+                if (bean == null) return null;
+                bean = readMethod.invoke(bean, NO_ARGUMENTS);
+            }
             //noinspection unchecked
             return (T) bean;
         } catch (Exception e) {
@@ -366,6 +395,34 @@ public class PropertyAccessor<T> {
         return ArrayUtils.subarray(pathElems, 0, pathElems.length - 1);
     }
 
+    /*
+     * Path elements access for PropertyMappingPlan.
+     */
+
+    int getPathLength() {
+        return pathElems.length;
+    }
+
+    String getPathElement(int index) {
+        return pathElems[index];
+    }
+
+    Method getReadMethod(int index) {
+        return readMethods[index];
+    }
+
+    Method getWriteMethod(int index) {
+        return writeMethods[index];
+    }
+
+    Class<?> getPathElementClass(int index) {
+        return classes[index];
+    }
+
+    boolean isCollectionProperty() {
+        return collectionProperty;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,173 @@
+package com.semantive.commons;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PropertyMappingPlan populates new instances of the model class with values of many properties at once. The paths
+ * of the given property accessors are grouped into a tree of shared prefixes, so that each intermediate object is
+ * read or created only once per populated bean, rather than once per property, as it is when each
+ * {@link PropertyAccessor} is used separately.
+ * <p/>
+ * The plan follows the default behavior of {@link PropertyAccessor#setProperty(Object, Object)}: intermediate
+ * objects are created only if at least one property below them has a non-null value, and collections and arrays are
+ * copied to the type of the property.
+ */
+public class PropertyMappingPlan<T> {
+
+    private final Class<T> modelClass;
+
+    private final Node root;
+
+    /**
+     * Creates a mapping plan, where i-th value is set with i-th property accessor.
+     *
+     * @param modelClass a class of the populated beans
+     * @param accessors  property accessors for the consecutive values
+     */
+    public PropertyMappingPlan(Class<T> modelClass, PropertyAccessor<T>[] accessors) {
+        this.modelClass = modelClass;
+
+        NodeBuilder rootBuilder = new NodeBuilder(null, null, null, null);
+        for (int i = 0; i < accessors.length; i++) {
+            PropertyAccessor<T> accessor = accessors[i];
+            NodeBuilder builder = rootBuilder;
+            for (int j = 0; j < accessor.getPathLength() - 1; j++) {
+                builder = builder.child(accessor.getPathElement(j), accessor.getReadMethod(j), accessor.getWriteMethod(j), accessor.getPathElementClass(j));
+                builder.indexes.add(i);
+            }
+            int last = accessor.getPathLength() - 1;
+            builder.leaves.add(new Leaf(i, accessor.getWriteMethod(last), accessor.isCollectionProperty() ? accessor.getPathElementClass(last) : null));
+        }
+        this.root = rootBuilder.build();
+    }
+
+    /**
+     * Creates a new instance of the model class and sets the given values on it.
+     *
+     * @param values values of the properties, in the order of the accessors this plan was created for
+     * @return populated bean
+     */
+    public T map(Object[] values) {
+        T bean;
+        try {
+            bean = modelClass.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Failed to instantiate %s.", modelClass), e);
+        }
+        populate(root, bean, values);
+        return bean;
+    }
+
+    private void populate(Node node, Object bean, Object[] values) {
+        for (Leaf leaf : node.leaves) {
+            Object value = values[leaf.index];
+            try {
+                if (leaf.collectionClass != null && value != null)
+                    value = SemantiveCollectionUtils.copyCollectionOrArray(value, leaf.collectionClass);
+                leaf.writeMethod.invoke(bean, value);
+            } catch (Exception e) {
+                throw new RuntimeException(String.format("Error setting property on bean: %s, value: %s, writeMethod: %s", bean, value, leaf.writeMethod), e);
+            }
+        }
+
+        for (Node child : node.children) {
+            try {
+                Object v = child.readMethod.invoke(bean, PropertyAccessor.NO_ARGUMENTS);
+                if (v == null) {
+                    if (!child.hasAnyValue(values)) continue;
+                    v = child.clazz.newInstance();
+                    child.writeMethod.invoke(bean, v);
+                }
+                populate(child, v, values);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(String.format("Error initializing property %s on bean: %s", child.name, bean), e);
+            }
+        }
+    }
+
+    private static class Node {
+        private final String name;
+        private final Method readMethod;
+        private final Method writeMethod;
+        private final Class<?> clazz;
+        private final Leaf[] leaves;
+        private final Node[] children;
+
+        /**
+         * Indexes of all the values set below this node.
+         */
+        private final int[] indexes;
+
+        private Node(String name, Method readMethod, Method writeMethod, Class<?> clazz, Leaf[] leaves, Node[] children, int[] indexes) {
+            this.name = name;
+            this.readMethod = readMethod;
+            this.writeMethod = writeMethod;
+            this.clazz = clazz;
+            this.leaves = leaves;
+            this.children = children;
+            this.indexes = indexes;
+        }
+
+        private boolean hasAnyValue(Object[] values) {
+            for (int index : indexes) {
+                if (values[index] != null) return true;
+            }
+            return false;
+        }
+    }
+
+    private static class Leaf {
+        private final int index;
+        private final Method writeMethod;
+        private final Class<?> collectionClass;
+
+        private Leaf(int index, Method writeMethod, Class<?> collectionClass) {
+            this.index = index;
+            this.writeMethod = writeMethod;
+            this.collectionClass = collectionClass;
+        }
+    }
+
+    private static class NodeBuilder {
+        private final String name;
+        private final Method readMethod;
+        private final Method writeMethod;
+        private final Class<?> clazz;
+        private final List<Leaf> leaves = new ArrayList<Leaf>();
+        private final Map<String, NodeBuilder> children = new LinkedHashMap<String, NodeBuilder>();
+        private final List<Integer> indexes = new ArrayList<Integer>();
+
+        private NodeBuilder(String name, Method readMethod, Method writeMethod, Class<?> clazz) {
+            this.name = name;
+            this.readMethod = readMethod;
+            this.writeMethod = writeMethod;
+            this.clazz = clazz;
+        }
+
+        private NodeBuilder child(String name, Method readMethod, Method writeMethod, Class<?> clazz) {
+            NodeBuilder child = children.get(name);
+            if (child == null) {
+                child = new NodeBuilder(name, readMethod, writeMethod, clazz);
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        private Node build() {
+            Node[] builtChildren = new Node[children.size()];
+            int i = 0;
+            for (NodeBuilder child : children.values()) builtChildren[i++] = child.build();
+
+            int[] builtIndexes = new int[indexes.size()];
+            for (i = 0; i < builtIndexes.length; i++) builtIndexes[i] = indexes.get(i);
+
+            return new Node(name, readMethod, writeMethod, clazz, leaves.toArray(new Leaf[leaves.size()]), builtChildren, builtIndexes);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.semantive.hiqual;
 import com.google.common.collect.Range;
 import com.semantive.commons.functional.Option;
 import com.semantive.hiqual.filter.*;
+import com.semantive.hiqual.pagination.KeysetPageDefinition;
 import com.semantive.hiqual.pagination.PageDefinition;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.validator.GenericValidator;
@@ -26,6 +27,10 @@ public class ResultSetConfigBuilder {
 
     private Integer fetchSize;
 
+    private boolean keysetPagination;
+
+    private Object[] lastKey;
+
     private List<Order> orders = new ArrayList<Order>();
 
     private TextSearchExpressions textSearchExpressions;
@@ -39,16 +44,18 @@ public class ResultSetConfigBuilder {
     public ResultSetConfig build() {
         if (GenericValidator.isBlankOrNull(searchString)) searchString = null;
 
-        return new ResultSetConfig(new PageDefinition(offset, fetchSize), orders, textSearchExpressions, whereConditions, propertiesToFetch, searchString);
+        PageDefinition pageDefinition = keysetPagination ? new KeysetPageDefinition(offset, fetchSize, lastKey) : new PageDefinition(offset, fetchSize);
+        return new ResultSetConfig(pageDefinition, orders, textSearchExpressions, whereConditions, propertiesToFetch, searchString);
     }
 
     public ResultSetConfigBuilder baseOnExisting(IResultSetConfig resultSetConfig) {
         if (resultSetConfig.pageDefinition() != null) {
-            offset = resultSetConfig.pageDefinition().pageStart;
-            fetchSize = resultSetConfig.pageDefinition().pageSize;
+            setPageDefinition(resultSetConfig.pageDefinition());
         } else {
             offset = null;
             fetchSize = null;
+            keysetPagination = false;
+            lastKey = null;
         }
         orders = resultSetConfig.orders();
         textSearchExpressions = resultSetConfig.textSearchExpressions();
@@ -71,9 +78,31 @@ public class ResultSetConfigBuilder {
     public ResultSetConfigBuilder setPageDefinition(PageDefinition pageDefinition) {
         this.offset = pageDefinition.pageStart;
         this.fetchSize = pageDefinition.pageSize;
+        if (pageDefinition instanceof KeysetPageDefinition) {
+            this.keysetPagination = true;
+            this.lastKey = ((KeysetPageDefinition) pageDefinition).lastKey;
+        } else {
+            this.keysetPagination = false;
+            this.lastKey = null;
+        }
         return this;
     }
 
+    /**
+     * Switches to keyset pagination and sets the first page of the given size. The following pages are selected
+     * with {@link #setContinuationToken(String)}.
+     */
+    public ResultSetConfigBuilder setKeysetPagination(Integer pageSize) {
+        return setPageDefinition(new KeysetPageDefinition(pageSize));
+    }
+
+    /**
+     * Sets the keyset page encoded in the continuation token returned with the previous page.
+     */
+    public ResultSetConfigBuilder setContinuationToken(String continuationToken) {
+        return setPageDefinition(KeysetPageDefinition.fromContinuationToken(continuationToken));
+    }
+
     public ResultSetConfigBuilder setOrder(Order order) {
         this.orders.clear();
         this.orders.add(order);
@@ -315,7 +344,7 @@ public class ResultSetConfigBuilder {
 
             ResultSetConfig that = (ResultSetConfig) o;
 
-            if (_orders != null ? !_orders.equals(that._orders) : that._orders != null) return false;
+            if (!orderStrings(_orders).equals(orderStrings(that._orders))) return false;
             if (_pageDefinition != null ? !_pageDefinition.equals(that._pageDefinition) : that._pageDefinition != null)
                 return false;
             if (_propertiesToFetch != null ? !_propertiesToFetch.equals(that._propertiesToFetch) : that._propertiesToFetch != null)
@@ -324,6 +353,8 @@ public class ResultSetConfigBuilder {
                 return false;
             if (_textSearchExpressions != null ? !_textSearchExpressions.equals(that._textSearchExpressions) : that._textSearchExpressions != null)
                 return false;
+            if (_whereConditions != null ? !_whereConditions.equals(that._whereConditions) : that._whereConditions != null)
+                return false;
 
             return true;
         }
@@ -331,10 +362,23 @@ public class ResultSetConfigBuilder {
         @Override
         public int hashCode() {
             int result = _pageDefinition != null ? _pageDefinition.hashCode() : 0;
-            result = 31 * result + (_orders != null ? _orders.hashCode() : 0);
+            result = 31 * result + orderStrings(_orders).hashCode();
             result = 31 * result + (_textSearchExpressions != null ? _textSearchExpressions.hashCode() : 0);
             result = 31 * result + (_propertiesToFetch != null ? _propertiesToFetch.hashCode() : 0);
             result = 31 * result + (_searchString != null ? _searchString.hashCode() : 0);
+            result = 31 * result + (_whereConditions != null ? _whereConditions.hashCode() : 0);
+            return result;
+        }
+
+        /**
+         * Hibernate orders do not implement equals and hashCode, so they are compared by their string forms.
+         */
+        private static List<String> orderStrings(List<Order> orders) {
+            if (orders == null) return Collections.emptyList();
+            List<String> result = new ArrayList<String>(orders.size());
+            for (Order order : orders) {
+                result.add(order.toString());
+            }
             return result;
         }
 
@@ -5,8 +5,16 @@ import com.semantive.commons.IDescribed;
 import com.semantive.commons.functional.F1;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -18,6 +26,8 @@ public class TextSearchExpressions implements Serializable {
 
     private final Set<PropertyExpression> propertyExpressions = new HashSet<PropertyExpression>();
 
+    private final Map<String, Integer> weights = new HashMap<String, Integer>();
+
     public static enum PropertyExpressionTypeDict implements IDescribed {
 
         PLAIN, DATE, ID, NUMERIC, DICT;
@@ -28,15 +38,44 @@ public class TextSearchExpressions implements Serializable {
         }
     }
 
+    /**
+     * Defines how a search token is matched against a property expression. The expression and the token are
+     * compared case insensitively - the expression is rendered as {@code lower(expression)} and the token is
+     * lowered before it is put into the query, so that the comparison can use a functional index on
+     * {@code lower(column)}.
+     */
+    public static enum SearchMode {
+        /**
+         * {@code lower(expression) like '%token%'} - the expression contains the token. It cannot use an index.
+         */
+        CONTAINS,
+        /**
+         * {@code lower(expression) like 'token%'} - the expression starts with the token. It can use a B-tree
+         * index on {@code lower(column)} (in PostgreSQL created with {@code text_pattern_ops} unless the database
+         * uses the C collation).
+         */
+        PREFIX,
+        /**
+         * {@code lower(expression) = 'token'} - the expression equals the token.
+         */
+        EXACT
+    }
+
     public static class PropertyExpression {
         private final String name;
         private final String expression;
         private final PropertyExpressionTypeDict type;
+        private final SearchMode searchMode;
 
         protected PropertyExpression(String name, String expression, PropertyExpressionTypeDict type) {
+            this(name, expression, type, SearchMode.CONTAINS);
+        }
+
+        protected PropertyExpression(String name, String expression, PropertyExpressionTypeDict type, SearchMode searchMode) {
             this.name = name;
             this.expression = expression;
             this.type = type;
+            this.searchMode = searchMode;
         }
 
         public String getName() {
@@ -51,6 +90,18 @@ public class TextSearchExpressions implements Serializable {
             return type;
         }
 
+        public SearchMode getSearchMode() {
+            return searchMode;
+        }
+
+        /**
+         * Returns whether the values of the expression are already in lower case, so that they need not be lowered
+         * in the query.
+         */
+        public boolean isLowerCase() {
+            return false;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -58,93 +109,281 @@ public class TextSearchExpressions implements Serializable {
 
             PropertyExpression that = (PropertyExpression) o;
 
-            return name.equals(that.name) && type == that.type;
+            return name.equals(that.name) && type == that.type && searchMode == that.searchMode;
         }
 
         @Override
         public int hashCode() {
             int result = name.hashCode();
             result = 31 * result + type.hashCode();
+            result = 31 * result + searchMode.hashCode();
             return result;
         }
     }
 
+    /**
+     * An expression which reads a persisted shadow property holding the lowered search representation of another
+     * property - the same text which the regular expression of the given type renders, computed when the entity
+     * is saved instead of for every row of every search. Unlike the regular expressions, it can be served by a
+     * plain index on the shadow column, in particular in the {@link SearchMode#PREFIX} and
+     * {@link SearchMode#EXACT} modes.
+     * <p/>
+     * The shadow property has to be mapped as a string property of the entity. It is kept in sync by
+     * {@link com.semantive.hiqual.core.SearchShadowColumns}, which also provides the DDL of the column and its
+     * index, and fills it for the existing rows. The values are always computed in Java with
+     * {@link #toShadowValue(Object)}, so only the string ({@link PropertyExpressionTypeDict#PLAIN}), date and
+     * integral id properties are supported - their representation does not depend on the database.
+     */
+    public static class ShadowPropertyExpression extends PropertyExpression {
+        private final String shadowProperty;
+
+        protected ShadowPropertyExpression(String name, String shadowProperty, PropertyExpressionTypeDict type, SearchMode searchMode) {
+            super(name, "this." + shadowProperty, type, searchMode);
+            this.shadowProperty = shadowProperty;
+        }
+
+        public String getShadowProperty() {
+            return shadowProperty;
+        }
+
+        @Override
+        public boolean isLowerCase() {
+            return true;
+        }
+
+        /**
+         * Computes the value of the shadow property from the value of the source property - a string, a date or
+         * an integral id, depending on the type of this expression.
+         */
+        public String toShadowValue(Object value) {
+            if (value == null) return null;
+            switch (getType()) {
+                case DATE:
+                    return new SimpleDateFormat("yyyy-MM-dd").format((Date) value);
+                case ID:
+                    return "id" + Long.toString(((Number) value).longValue());
+                default:
+                    return ((String) value).toLowerCase(Locale.ROOT);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && shadowProperty.equals(((ShadowPropertyExpression) o).shadowProperty);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + shadowProperty.hashCode();
+        }
+    }
+
+    /**
+     * An expression which searches an enum property by the translated labels of its constants. The labels are
+     * matched against the search tokens in Java, and the property is compared with the matching constants, bound
+     * as a query parameter, so that the query does not depend on the translations.
+     */
+    public static class DictPropertyExpression extends PropertyExpression {
+        private final Map<Enum<?>, String> labels;
+
+        protected DictPropertyExpression(String name, Map<Enum<?>, String> labels, SearchMode searchMode) {
+            super(name, "this." + name, PropertyExpressionTypeDict.DICT, searchMode);
+            this.labels = labels;
+        }
+
+        /**
+         * Returns the lowered label of the given constant.
+         */
+        public String getLabel(Object constant) {
+            return labels.get(constant);
+        }
+
+        /**
+         * Returns the expression which translates the property into the lowered labels of its constants, with the
+         * labels embedded as literals.
+         */
+        public String getLabelExpression() {
+            StringBuilder buf = new StringBuilder();
+            buf.append("(case ").append(getExpression());
+            for (Map.Entry<Enum<?>, String> label : labels.entrySet()) {
+                if (label.getValue() == null) continue;
+                buf.append(" when '").append(label.getKey().name()).append("' then '").append(label.getValue().replace("'", "''")).append("' ");
+            }
+            buf.append(" end)");
+            return buf.toString();
+        }
+
+        /**
+         * Returns the constants whose labels match the given token according to the search mode.
+         */
+        public List<Enum<?>> matchingConstants(String token) {
+            String lowerToken = token.toLowerCase(Locale.ROOT);
+            List<Enum<?>> result = new ArrayList<Enum<?>>();
+            for (Map.Entry<Enum<?>, String> label : labels.entrySet()) {
+                if (label.getValue() == null) continue;
+                switch (getSearchMode()) {
+                    case EXACT:
+                        if (label.getValue().equals(lowerToken)) result.add(label.getKey());
+                        break;
+                    case PREFIX:
+                        if (label.getValue().startsWith(lowerToken)) result.add(label.getKey());
+                        break;
+                    default:
+                        if (label.getValue().contains(lowerToken)) result.add(label.getKey());
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && labels.equals(((DictPropertyExpression) o).labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + labels.hashCode();
+        }
+    }
+
     public TextSearchExpressions addProperty(PropertyExpression pe) {
         propertyExpressions.add(pe);
         return this;
     }
 
     public TextSearchExpressions addPlainProperty(String name) {
-        PropertyExpression pe = new PropertyExpression(name, "this." + name, PropertyExpressionTypeDict.PLAIN);
+        return addPlainProperty(name, SearchMode.CONTAINS);
+    }
+
+    public TextSearchExpressions addPlainProperty(String name, SearchMode searchMode) {
+        PropertyExpression pe = new PropertyExpression(name, "this." + name, PropertyExpressionTypeDict.PLAIN, searchMode);
         return addProperty(pe);
     }
 
     public TextSearchExpressions addNumericProperty(String name) {
-        PropertyExpression pe = new PropertyExpression(name, "str(this." + name + ")", PropertyExpressionTypeDict.NUMERIC);
+        return addNumericProperty(name, SearchMode.CONTAINS);
+    }
+
+    public TextSearchExpressions addNumericProperty(String name, SearchMode searchMode) {
+        PropertyExpression pe = new PropertyExpression(name, "str(this." + name + ")", PropertyExpressionTypeDict.NUMERIC, searchMode);
         return addProperty(pe);
     }
 
     public TextSearchExpressions addDateProperty(String name) {
-        PropertyExpression pe = new PropertyExpression(name, String.format(
+        return addDateProperty(name, SearchMode.CONTAINS);
+    }
+
+    public TextSearchExpressions addDateProperty(String name, SearchMode searchMode) {
+        PropertyExpression pe = new PropertyExpression(name, dateExpression(name), PropertyExpressionTypeDict.DATE, searchMode);
+        return addProperty(pe);
+    }
+
+    private static String dateExpression(String name) {
+        return String.format(
                 "(trim(str(year(this.%1$s))) " +
                         "|| '-' || (case when month(this.%1$s) < 10 then '0' else '' end) || trim(str(month(this.%1$s))) " +
-                        "|| '-' || (case when day(this.%1$s) < 10 then '0' else '' end) || trim(str(day(this.%1$s))))", name), PropertyExpressionTypeDict.DATE);
-        return addProperty(pe);
+                        "|| '-' || (case when day(this.%1$s) < 10 then '0' else '' end) || trim(str(day(this.%1$s))))", name);
     }
 
     @Deprecated
     public <T extends Enum> TextSearchExpressions addDictProperty(String name, Class<T> dict, Function<T, String> translator) {
-        T[] enums;
-        try {
-            Method m = dict.getMethod("values");
-            enums = (T[]) m.invoke(null);
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Cannot add dict property %s to TextSearchExpression for dict %s.", name, dict.getName()), e);
-        }
-
-        StringBuilder buf = new StringBuilder();
-        buf.append("(case ").append("this.").append(name);
-        for (T anEnum : enums) {
-            buf.append(" when '").append(anEnum).append("' then '").append(translator.apply(anEnum)).append("' ");
-        }
-        buf.append(" end)");
-        PropertyExpression pe = new PropertyExpression(name, buf.toString(), PropertyExpressionTypeDict.DICT);
-        return addProperty(pe);
+        return addProperty(new DictPropertyExpression(name, labels(dict, translator), SearchMode.CONTAINS));
     }
 
     public <T extends Enum> TextSearchExpressions addDictProperty(String name, Class<T> dict, final F1<String, String> dictionary) {
-        T[] enums;
-        try {
-            Method m = dict.getMethod("values");
-            enums = (T[]) m.invoke(null);
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Cannot add dict property %s to TextSearchExpression for dict %s.", name, dict.getName()), e);
-        }
-
-        StringBuilder buf = new StringBuilder();
-        buf.append("(case ").append("this.").append(name);
+        return addDictProperty(name, dict, dictionary, SearchMode.CONTAINS);
+    }
 
-        Function<IDescribed, String> function = new Function<IDescribed, String>() {
+    public <T extends Enum> TextSearchExpressions addDictProperty(String name, Class<T> dict, final F1<String, String> dictionary, SearchMode searchMode) {
+        Function<T, String> translator = new Function<T, String>() {
             @Override
-            public String apply(IDescribed from) {
-                return dictionary.apply(from.getDescriptionKey());
+            public String apply(T from) {
+                return dictionary.apply(((IDescribed) from).getDescriptionKey());
             }
         };
+        return addProperty(new DictPropertyExpression(name, labels(dict, translator), searchMode));
+    }
 
-        for (T anEnum : enums) {
-            buf.append(" when '").append(anEnum).append("' then '").append(function.apply((IDescribed) anEnum)).append("' ");
+    /**
+     * Returns the lowered labels of the constants of the given dictionary, translated with the given translator.
+     * The labels are translated once, when the property is added, and are held by its expression, so they are
+     * shared by all the searches with this object, but never by the objects built with other translations.
+     */
+    private static <T> Map<Enum<?>, String> labels(Class<T> dict, Function<T, String> translator) {
+        Map<Enum<?>, String> labels = new LinkedHashMap<Enum<?>, String>();
+        try {
+            for (T constant : dict.getEnumConstants()) {
+                String label = translator.apply(constant);
+                labels.put((Enum<?>) constant, label != null ? label.toLowerCase(Locale.ROOT) : null);
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException(String.format("Cannot translate the dict %s.", dict.getName()), e);
         }
-        buf.append(" end)");
-        PropertyExpression pe = new PropertyExpression(name, buf.toString(), PropertyExpressionTypeDict.DICT);
-        return addProperty(pe);
+        return Collections.unmodifiableMap(labels);
     }
 
     public TextSearchExpressions addIdProperty(String name) {
-        PropertyExpression pe = new PropertyExpression(name, String.format("'ID' || trim(str(this.%s))", name), PropertyExpressionTypeDict.ID);
+        return addIdProperty(name, SearchMode.CONTAINS);
+    }
+
+    public TextSearchExpressions addIdProperty(String name, SearchMode searchMode) {
+        PropertyExpression pe = new PropertyExpression(name, idExpression(name), PropertyExpressionTypeDict.ID, searchMode);
         return addProperty(pe);
     }
 
+    private static String idExpression(String name) {
+        return String.format("'ID' || trim(str(this.%s))", name);
+    }
+
+    /**
+     * Adds the expression which searches the given property through its shadow property.
+     *
+     * @param name           name of the source property
+     * @param shadowProperty name of the string property which holds the search representation of the source
+     *                       property
+     * @param type           type of the source property - {@link PropertyExpressionTypeDict#PLAIN} for strings,
+     *                       {@link PropertyExpressionTypeDict#DATE} or {@link PropertyExpressionTypeDict#ID}
+     * @param searchMode     search mode
+     * @throws IllegalArgumentException if the type is not supported
+     * @see ShadowPropertyExpression
+     */
+    public TextSearchExpressions addShadowProperty(String name, String shadowProperty, PropertyExpressionTypeDict type, SearchMode searchMode) {
+        if (type != PropertyExpressionTypeDict.PLAIN && type != PropertyExpressionTypeDict.DATE && type != PropertyExpressionTypeDict.ID)
+            throw new IllegalArgumentException(String.format("Shadow properties are not supported for %s properties.", type));
+        return addProperty(new ShadowPropertyExpression(name, shadowProperty, type, searchMode));
+    }
+
     public Set<PropertyExpression> getPropertyExpressions() {
         return propertyExpressions;
     }
+
+    /**
+     * Sets the weight of the expressions of the given property in the relevance ranking of the search results. The
+     * default weight is 1.
+     *
+     * @see com.semantive.hiqual.core.QueryBuilder#useRelevanceRanking()
+     */
+    public TextSearchExpressions setWeight(String name, int weight) {
+        weights.put(name, weight);
+        return this;
+    }
+
+    public int getWeight(String name) {
+        Integer weight = weights.get(name);
+        return weight != null ? weight : 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TextSearchExpressions that = (TextSearchExpressions) o;
+        return propertyExpressions.equals(that.propertyExpressions) && weights.equals(that.weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * propertyExpressions.hashCode() + weights.hashCode();
+    }
 }
@@ -1,11 +1,16 @@
 package com.semantive.hiqual.core;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.semantive.commons.PropertyAccessor;
+import com.semantive.commons.PropertyMappingPlan;
 import com.semantive.commons.SemantiveStringUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.validator.GenericValidator;
 import org.hibernate.transform.BasicTransformerAdapter;
 
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -21,9 +26,14 @@ public class AliasToBeanCustomTransformer<T> extends BasicTransformerAdapter {
 
     public static final char UNDERSCORE = '_';
 
+    /**
+     * The maximum number of distinct transformer configurations, for which the mapping plans are cached.
+     */
+    public static final int CACHE_MAXIMUM_SIZE = 500;
+
     private Class<T> beanClass;
 
-    private PropertyAccessor<T>[] propertyAccessors;
+    private PropertyMappingPlan<T> mappingPlan;
 
     private String skipComponent;
 
@@ -31,6 +41,17 @@ public class AliasToBeanCustomTransformer<T> extends BasicTransformerAdapter {
 
     private Map<String, Class> classReplacements;
 
+    /**
+     * The process-wide cache of mapping plans. It must not pin the bean classes, so that the class loaders of
+     * redeployed applications can be unloaded: the keys refer to the classes weakly, and the plans, which refer to
+     * the classes through their methods, are softly referenced values.
+     */
+    private static final Cache<MappingPlanKey, PropertyMappingPlan<?>> mappingPlansCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_MAXIMUM_SIZE)
+            .softValues()
+            .recordStats()
+            .build();
+
     public static <T> AliasToBeanCustomTransformer<T> build(Class<T> beanClass) {
         return new AliasToBeanCustomTransformer<T>(beanClass);
     }
@@ -62,18 +83,40 @@ public class AliasToBeanCustomTransformer<T> extends BasicTransformerAdapter {
         this.beanClass = beanClass;
     }
 
+    /**
+     * Returns the statistics of the process-wide cache of mapping plans.
+     */
+    public static CacheStats getCacheStats() {
+        return mappingPlansCache.stats();
+    }
+
+    public static void invalidateCache() {
+        mappingPlansCache.invalidateAll();
+    }
+
     private void initialize(String[] paths) {
+        MappingPlanKey key = new MappingPlanKey(beanClass, paths, pathSeparator, skipComponent, classReplacements);
+        @SuppressWarnings("unchecked")
+        PropertyMappingPlan<T> plan = (PropertyMappingPlan<T>) mappingPlansCache.getIfPresent(key);
+        if (plan == null) {
+            plan = new PropertyMappingPlan<T>(beanClass, createPropertyAccessors(paths.clone()));
+            mappingPlansCache.put(key, plan);
+        }
+        mappingPlan = plan;
+    }
+
+    private PropertyAccessor<T>[] createPropertyAccessors(String[] paths) {
         try {
+            Map<String, Class> classReplacements = this.classReplacements;
             if (classReplacements != null && pathSeparator != '.') {
-                Map<String, Class> oldReplacements = classReplacements;
-                classReplacements = new HashMap<String, Class>(classReplacements.size());
-                for (Map.Entry<String, Class> entry : oldReplacements.entrySet()) {
+                classReplacements = new HashMap<String, Class>(this.classReplacements.size());
+                for (Map.Entry<String, Class> entry : this.classReplacements.entrySet()) {
                     classReplacements.put(entry.getKey().replace(DOT, pathSeparator), entry.getValue());
                 }
             }
 
             //noinspection unchecked
-            propertyAccessors = new PropertyAccessor[paths.length];
+            PropertyAccessor<T>[] propertyAccessors = new PropertyAccessor[paths.length];
             for (int i = 0; i < paths.length; i++) {
 
                 if (skipComponent != null && paths[i].startsWith(skipComponent))
@@ -90,6 +133,7 @@ public class AliasToBeanCustomTransformer<T> extends BasicTransformerAdapter {
                 }
                 propertyAccessors[i] = new PropertyAccessor<T>(paths[i], "\\" + pathSeparator, beanClass, replacements);
             }
+            return propertyAccessors;
         } catch (Exception e) {
             throw new RuntimeException(String.format("Failed to initialize the AliasToBeanCustomTransformer for class %s and property paths %s.", beanClass, Arrays.toString(paths)), e);
         }
@@ -97,18 +141,9 @@ public class AliasToBeanCustomTransformer<T> extends BasicTransformerAdapter {
 
     @Override
     public Object transformTuple(Object[] tuple, String[] aliases) {
-        if (propertyAccessors == null) initialize(aliases);
+        if (mappingPlan == null) initialize(aliases);
 
-        Object bean;
-        try {
-            bean = beanClass.newInstance();
-            for (int i = 0; i < tuple.length; i++) {
-                propertyAccessors[i].setProperty(bean, tuple[i]);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        return bean;
+        return mappingPlan.map(tuple);
     }
 
     @Override
@@ -117,7 +152,7 @@ public class AliasToBeanCustomTransformer<T> extends BasicTransformerAdapter {
     }
 
     private void checkIfNotInitializedYet() {
-        if (propertyAccessors != null)
+        if (mappingPlan != null)
             throw new IllegalStateException("This method can be called only before initialization.");
     }
 
@@ -125,4 +160,93 @@ public class AliasToBeanCustomTransformer<T> extends BasicTransformerAdapter {
         this.classReplacements = replacements;
         return this;
     }
+
+    /**
+     * Everything that the mapping plan depends on. The classes are referred to weakly.
+     */
+    private static class MappingPlanKey {
+        private final ClassReference beanClass;
+        private final List<String> aliases;
+        private final char pathSeparator;
+        private final String skipComponent;
+        private final Map<String, ClassReference> classReplacements;
+        private final int hash;
+
+        private MappingPlanKey(Class<?> beanClass, String[] aliases, char pathSeparator, String skipComponent, Map<String, Class> classReplacements) {
+            this.beanClass = new ClassReference(beanClass);
+            this.aliases = Arrays.asList(aliases.clone());
+            this.pathSeparator = pathSeparator;
+            this.skipComponent = skipComponent;
+            if (classReplacements != null) {
+                this.classReplacements = new HashMap<String, ClassReference>(classReplacements.size());
+                for (Map.Entry<String, Class> entry : classReplacements.entrySet()) {
+                    this.classReplacements.put(entry.getKey(), new ClassReference(entry.getValue()));
+                }
+            } else {
+                this.classReplacements = null;
+            }
+
+            int result = this.beanClass.hashCode();
+            result = 31 * result + this.aliases.hashCode();
+            result = 31 * result + pathSeparator;
+            result = 31 * result + (skipComponent != null ? skipComponent.hashCode() : 0);
+            result = 31 * result + (this.classReplacements != null ? this.classReplacements.hashCode() : 0);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            MappingPlanKey that = (MappingPlanKey) o;
+
+            if (hash != that.hash) return false;
+            if (pathSeparator != that.pathSeparator) return false;
+            if (!beanClass.equals(that.beanClass)) return false;
+            if (!aliases.equals(that.aliases)) return false;
+            if (skipComponent != null ? !skipComponent.equals(that.skipComponent) : that.skipComponent != null)
+                return false;
+            if (classReplacements != null ? !classReplacements.equals(that.classReplacements) : that.classReplacements != null)
+                return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A weak reference to a class (or to null), equal to the references to the same class. Once the class is
+     * collected, the reference is equal only to itself.
+     */
+    private static class ClassReference extends WeakReference<Class<?>> {
+        private final boolean nullClass;
+        private final int hash;
+
+        private ClassReference(Class<?> clazz) {
+            super(clazz);
+            this.nullClass = clazz == null;
+            this.hash = clazz != null ? clazz.hashCode() : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ClassReference that = (ClassReference) o;
+            if (nullClass || that.nullClass) return nullClass && that.nullClass;
+            Class<?> clazz = get();
+            return clazz != null && clazz == that.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.semantive.hiqual.core;
+
+import org.hibernate.transform.BasicTransformerAdapter;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A result transformer which creates each result with a single call of an all-args constructor or a static factory
+ * method, so that the target classes can be immutable and no setters are invoked. The constructor or the factory
+ * method is resolved when the transformer is built, the order of its parameters is matched with the aliases on the
+ * first tuple.
+ * <p/>
+ * The parameters are matched with the aliases by names. The names of the constructor parameters are taken from the
+ * {@link ConstructorProperties} annotation, the names of the factory method parameters are given explicitly. The
+ * names may contain dots, which are matched with the path separator used in the aliases.
+ */
+public class AliasToConstructorTransformer<T> extends BasicTransformerAdapter {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Class<T> beanClass;
+
+    private final Constructor<T> constructor;
+
+    private final Method factoryMethod;
+
+    private final List<String> parameterNames;
+
+    private char pathSeparator = AliasToBeanCustomTransformer.DOT;
+
+    /**
+     * Index of the tuple element for each parameter, {@code null} if the aliases are in the order of the parameters.
+     */
+    private int[] tupleIndexes;
+
+    private boolean initialized;
+
+    private AliasToConstructorTransformer(Class<T> beanClass, Constructor<T> constructor, Method factoryMethod, String[] parameterNames) {
+        this.beanClass = beanClass;
+        this.constructor = constructor;
+        this.factoryMethod = factoryMethod;
+        this.parameterNames = Arrays.asList(parameterNames);
+    }
+
+    /**
+     * Builds the transformer which uses the constructor annotated with {@link ConstructorProperties}.
+     */
+    public static <T> AliasToConstructorTransformer<T> build(Class<T> beanClass) {
+        Constructor<?> found = null;
+        for (Constructor<?> constructor : beanClass.getConstructors()) {
+            if (constructor.isAnnotationPresent(ConstructorProperties.class)) {
+                if (found != null)
+                    throw new IllegalArgumentException(String.format("Class %s has more than one constructor annotated with @ConstructorProperties.", beanClass.getName()));
+                found = constructor;
+            }
+        }
+        if (found == null)
+            throw new IllegalArgumentException(String.format("Class %s has no public constructor annotated with @ConstructorProperties.", beanClass.getName()));
+
+        // the public constructors of Class<T> are constructors of T
+        @SuppressWarnings("unchecked")
+        Constructor<T> constructor = (Constructor<T>) found;
+        return new AliasToConstructorTransformer<T>(beanClass, constructor, null, constructor.getAnnotation(ConstructorProperties.class).value());
+    }
+
+    /**
+     * Builds the transformer which uses the public static factory method of the given name, which has as many
+     * parameters as the number of the given parameter names.
+     */
+    public static <T> AliasToConstructorTransformer<T> build(Class<T> beanClass, String factoryMethodName, String... parameterNames) {
+        Method found = null;
+        for (Method method : beanClass.getMethods()) {
+            if (method.getName().equals(factoryMethodName) && Modifier.isStatic(method.getModifiers())
+                    && method.getParameterTypes().length == parameterNames.length && beanClass.isAssignableFrom(method.getReturnType())) {
+                if (found != null)
+                    throw new IllegalArgumentException(String.format("Factory method %s of class %s with %d parameters is ambiguous.", factoryMethodName, beanClass.getName(), parameterNames.length));
+                found = method;
+            }
+        }
+        if (found == null)
+            throw new IllegalArgumentException(String.format("Class %s has no public static factory method %s with %d parameters.", beanClass.getName(), factoryMethodName, parameterNames.length));
+
+        return new AliasToConstructorTransformer<T>(beanClass, null, found, parameterNames);
+    }
+
+    public AliasToConstructorTransformer<T> usePathSeparator(char separator) {
+        if (initialized)
+            throw new IllegalStateException("This method can be called only before initialization.");
+        this.pathSeparator = separator;
+        return this;
+    }
+
+    private void initialize(String[] aliases) {
+        if (aliases.length != parameterNames.size())
+            throw new IllegalArgumentException(String.format("The aliases %s do not match the parameters %s of %s.", Arrays.toString(aliases), parameterNames, constructor != null ? constructor : factoryMethod));
+
+        int[] indexes = new int[aliases.length];
+        boolean ordered = true;
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = -1;
+            String parameterName = parameterNames.get(i).replace(AliasToBeanCustomTransformer.DOT, pathSeparator);
+            for (int j = 0; j < aliases.length; j++) {
+                if (aliases[j].equals(parameterName)) indexes[i] = j;
+            }
+            if (indexes[i] < 0)
+                throw new IllegalArgumentException(String.format("There is no alias for the parameter %s among %s.", parameterName, Arrays.toString(aliases)));
+            ordered &= indexes[i] == i;
+        }
+
+        tupleIndexes = ordered ? null : indexes;
+        initialized = true;
+    }
+
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        if (!initialized) initialize(aliases);
+
+        Object[] arguments = tuple;
+        if (tupleIndexes != null) {
+            arguments = new Object[tupleIndexes.length];
+            for (int i = 0; i < arguments.length; i++) arguments[i] = tuple[tupleIndexes[i]];
+        }
+
+        try {
+            return constructor != null ? constructor.newInstance(arguments) : factoryMethod.invoke(null, arguments);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(String.format("Failed to create an instance of %s.", beanClass.getName()), e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Failed to create an instance of %s with arguments %s.", beanClass.getName(), Arrays.toString(arguments)), e);
+        }
+    }
+}
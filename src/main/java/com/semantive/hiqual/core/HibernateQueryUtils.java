@@ -6,7 +6,12 @@ import com.semantive.hiqual.TextSearchExpressions;
 import org.hibernate.Query;
 import org.hibernate.criterion.Order;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * @author Jacek Lewandowski
@@ -44,16 +49,22 @@ public class HibernateQueryUtils {
     }
 
 
+    /**
+     * Generates the condition which requires each token of the search string to be a prefix of at least one of the
+     * text search expressions, regardless of their search modes. The tokens are embedded in the condition as literals.
+     * The dictionary expressions are matched by the labels of their constants, embedded in the condition as well.
+     *
+     * @deprecated the condition text differs for every search string - use
+     * {@link #generateParameterizedAutocompleteQuery(IResultSetConfig)} instead
+     */
+    @Deprecated
     public static String generateAutocompleteQuery(IResultSetConfig resultSetConfig) {
         if (resultSetConfig == null || resultSetConfig.searchString() == null || resultSetConfig.textSearchExpressions() == null || resultSetConfig.textSearchExpressions().getPropertyExpressions().isEmpty())
             return null;
 
-        boolean beforeWildcard = false;
-        boolean afterWildcard = true;
         boolean caseSensitive = false;
-        int tokenLimit = 5;
 
-        String[] tokens = SemantiveStringUtils.tokenizeAndWildcard(resultSetConfig.searchString(), beforeWildcard, afterWildcard, tokenLimit);
+        String[] tokens = tokenizeSearchString(resultSetConfig);
 
         if (tokens.length == 0) return null;
 
@@ -62,8 +73,11 @@ public class HibernateQueryUtils {
             String[] conditionParts = new String[resultSetConfig.textSearchExpressions().getPropertyExpressions().size()];
             Iterator<TextSearchExpressions.PropertyExpression> it = resultSetConfig.textSearchExpressions().getPropertyExpressions().iterator();
             for (int j = 0; j < conditionParts.length; j++) {
+                TextSearchExpressions.PropertyExpression propertyExpression = it.next();
+                String expression = propertyExpression instanceof TextSearchExpressions.DictPropertyExpression
+                        ? ((TextSearchExpressions.DictPropertyExpression) propertyExpression).getLabelExpression() : propertyExpression.getExpression();
                 StringBuilder buf = new StringBuilder();
-                buf.append("(").append(lower(it.next().getExpression(), !caseSensitive)).append(" LIKE ").append(lower("'" + tokens[i] + "'", !caseSensitive)).append(")");
+                buf.append("(").append(lower(expression, !caseSensitive)).append(" LIKE ").append(lower("'" + tokens[i] + "'", !caseSensitive)).append(")");
                 conditionParts[j] = buf.toString();
             }
 
@@ -73,6 +87,139 @@ public class HibernateQueryUtils {
         return " (" + SemantiveStringUtils.arrayToDelimitedString(tokens, " AND ") + ") ";
     }
 
+    /**
+     * Generates the condition which requires each token of the search string to match at least one of the text
+     * search expressions, according to their search modes - the same condition as
+     * {@link QueryBuilder#generateAutocompleteCondition()}, but with the expressions not transformed. The tokens
+     * are referred to as named parameters, one for each token and search mode ({@code searchToken0Prefix},
+     * {@code searchToken0Exact}, ...), and the dictionary expressions are compared with the constants whose labels
+     * match the tokens ({@code searchToken0Dict1}, ...), so the condition depends only on the number of tokens.
+     * The parameters have to be bound with {@link #applyAutocompleteParameters(Query, IResultSetConfig)}.
+     */
+    public static String generateParameterizedAutocompleteQuery(IResultSetConfig resultSetConfig) {
+        if (resultSetConfig == null || resultSetConfig.searchString() == null || resultSetConfig.textSearchExpressions() == null || resultSetConfig.textSearchExpressions().getPropertyExpressions().isEmpty())
+            return null;
+
+        Collection<TextSearchExpressions.PropertyExpression> propertyExpressions = resultSetConfig.textSearchExpressions().getPropertyExpressions();
+        Map<TextSearchExpressions.PropertyExpression, String> expressions = new HashMap<TextSearchExpressions.PropertyExpression, String>();
+        for (TextSearchExpressions.PropertyExpression propertyExpression : propertyExpressions) {
+            expressions.put(propertyExpression, propertyExpression.getExpression());
+        }
+
+        return autocompleteCondition(searchTokens(resultSetConfig.searchString()).length, propertyExpressions, expressions, false);
+    }
+
+    /**
+     * Binds the parameters referred to by the condition generated by
+     * {@link #generateParameterizedAutocompleteQuery(IResultSetConfig)}.
+     */
+    public static void applyAutocompleteParameters(Query query, IResultSetConfig resultSetConfig) {
+        if (resultSetConfig == null || resultSetConfig.searchString() == null || resultSetConfig.textSearchExpressions() == null || resultSetConfig.textSearchExpressions().getPropertyExpressions().isEmpty())
+            return;
+
+        Map<String, Object> parameters = autocompleteParameters(searchTokens(resultSetConfig.searchString()),
+                resultSetConfig.textSearchExpressions().getPropertyExpressions(), false);
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if (parameter.getValue() instanceof Collection) {
+                Collection<?> constants = (Collection<?>) parameter.getValue();
+                query.setParameterList(parameter.getKey(), constants.isEmpty() ? new Object[]{null} : constants.toArray());
+            } else {
+                query.setParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+    }
+
+    /**
+     * Renders the autocomplete condition for the given number of tokens. The property expressions are rendered as
+     * the given expressions and visited in the order of the given collection, which has to be the same as for
+     * {@link #autocompleteParameters(String[], Collection, boolean)}.
+     */
+    static String autocompleteCondition(int tokenCount, Collection<TextSearchExpressions.PropertyExpression> propertyExpressions,
+                                        Map<TextSearchExpressions.PropertyExpression, String> expressions, boolean caseSensitive) {
+        if (tokenCount == 0) return null;
+
+        String[] tokenConditions = new String[tokenCount];
+        for (int i = 0; i < tokenCount; i++) {
+
+            String[] conditionParts = new String[propertyExpressions.size()];
+            Iterator<TextSearchExpressions.PropertyExpression> it = propertyExpressions.iterator();
+            for (int j = 0; j < conditionParts.length; j++) {
+                TextSearchExpressions.PropertyExpression propertyExpression = it.next();
+                if (propertyExpression instanceof TextSearchExpressions.DictPropertyExpression) {
+                    conditionParts[j] = String.format("(%s in (:%s))", expressions.get(propertyExpression), dictParameterName(i, j));
+                    continue;
+                }
+                StringBuilder buf = new StringBuilder();
+                buf.append("(").append(lower(expressions.get(propertyExpression), !caseSensitive && !propertyExpression.isLowerCase()))
+                        .append(propertyExpression.getSearchMode() == TextSearchExpressions.SearchMode.EXACT ? " = :" : " LIKE :")
+                        .append(tokenParameterName(i, propertyExpression.getSearchMode()))
+                        .append(")");
+                conditionParts[j] = buf.toString();
+            }
+
+            tokenConditions[i] = "(" + SemantiveStringUtils.arrayToDelimitedString(conditionParts, " OR ") + ")";
+        }
+
+        return " (" + SemantiveStringUtils.arrayToDelimitedString(tokenConditions, " AND ") + ") ";
+    }
+
+    /**
+     * Returns the values of the parameters of the autocomplete condition by their names - the search tokens with the
+     * wildcards of the search modes in which they are used, and the constants of the dictionary expressions whose
+     * labels match the search tokens.
+     */
+    static Map<String, Object> autocompleteParameters(String[] tokens, Collection<TextSearchExpressions.PropertyExpression> propertyExpressions,
+                                                      boolean caseSensitive) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < tokens.length; i++) {
+            int j = 0;
+            String token = caseSensitive ? tokens[i] : tokens[i].toLowerCase(Locale.ROOT);
+            for (TextSearchExpressions.PropertyExpression propertyExpression : propertyExpressions) {
+                if (propertyExpression instanceof TextSearchExpressions.DictPropertyExpression) {
+                    parameters.put(dictParameterName(i, j), ((TextSearchExpressions.DictPropertyExpression) propertyExpression).matchingConstants(tokens[i]));
+                } else {
+                    parameters.put(tokenParameterName(i, propertyExpression.getSearchMode()), tokenParameterValue(token, propertyExpression.getSearchMode()));
+                }
+                j++;
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Splits the search string into tokens, without wildcards - they are added according to the search mode of each
+     * property expression.
+     */
+    static String[] searchTokens(String searchString) {
+        boolean beforeWildcard = false;
+        boolean afterWildcard = false;
+        int tokenLimit = 5;
+
+        return SemantiveStringUtils.tokenizeAndWildcard(searchString, beforeWildcard, afterWildcard, tokenLimit);
+    }
+
+    static String tokenParameterValue(String token, TextSearchExpressions.SearchMode searchMode) {
+        return SemantiveStringUtils.addSQLWildcard(token, searchMode == TextSearchExpressions.SearchMode.CONTAINS,
+                searchMode != TextSearchExpressions.SearchMode.EXACT);
+    }
+
+    static String tokenParameterName(int tokenIndex, TextSearchExpressions.SearchMode searchMode) {
+        String mode = searchMode.name();
+        return "searchToken" + tokenIndex + mode.charAt(0) + mode.substring(1).toLowerCase(Locale.ROOT);
+    }
+
+    static String dictParameterName(int tokenIndex, int expressionIndex) {
+        return "searchToken" + tokenIndex + "Dict" + expressionIndex;
+    }
+
+    private static String[] tokenizeSearchString(IResultSetConfig resultSetConfig) {
+        boolean beforeWildcard = false;
+        boolean afterWildcard = true;
+        int tokenLimit = 5;
+
+        return SemantiveStringUtils.tokenizeAndWildcard(resultSetConfig.searchString(), beforeWildcard, afterWildcard, tokenLimit);
+    }
+
     @Deprecated
     public static String formatDate(String fieldName) {
         return String.format(
@@ -0,0 +1,69 @@
+package com.semantive.hiqual.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * A row of the table which holds the values of large id filters, see {@link QueryBuilder#useIdFilterTable(int)}.
+ * The values of a single filter share a unique key, which is bound to the query instead of the values themselves.
+ * <p/>
+ * The class has to be added to the Hibernate configuration of the application. Its table may be created as
+ * a regular table, or - on databases which support it - as a global temporary table with the rows deleted on
+ * commit, which keeps the table empty between transactions even if the rows are not released explicitly.
+ */
+@Entity
+@Table(name = IdFilterEntry.TABLE_NAME)
+public class IdFilterEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String TABLE_NAME = "HIQUAL_ID_FILTER";
+
+    public static final String KEY_COLUMN = "FILTER_KEY";
+
+    public static final String VALUE_COLUMN = "ID_VALUE";
+
+    @Id
+    @Column(name = KEY_COLUMN, length = 36)
+    private String filterKey;
+
+    @Id
+    @Column(name = VALUE_COLUMN)
+    private Long value;
+
+    public String getFilterKey() {
+        return filterKey;
+    }
+
+    public void setFilterKey(String filterKey) {
+        this.filterKey = filterKey;
+    }
+
+    public Long getValue() {
+        return value;
+    }
+
+    public void setValue(Long value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        IdFilterEntry that = (IdFilterEntry) o;
+        return (filterKey != null ? filterKey.equals(that.filterKey) : that.filterKey == null)
+                && (value != null ? value.equals(that.value) : that.value == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = filterKey != null ? filterKey.hashCode() : 0;
+        result = 31 * result + (value != null ? value.hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+package com.semantive.hiqual.core;
+
+import org.hibernate.SharedSessionContract;
+import org.hibernate.engine.spi.SessionImplementor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+
+/**
+ * JDBC access to the table of {@link IdFilterEntry}. The values are inserted with batched statements on
+ * the connection of the given session, so that they are visible to the queries executed in that session.
+ */
+final class IdFilterTable {
+
+    static final int BATCH_SIZE = 500;
+
+    private static final String INSERT_STATEMENT = String.format("insert into %s (%s, %s) values (?, ?)",
+            IdFilterEntry.TABLE_NAME, IdFilterEntry.KEY_COLUMN, IdFilterEntry.VALUE_COLUMN);
+
+    private static final String DELETE_STATEMENT = String.format("delete from %s where %s = ?",
+            IdFilterEntry.TABLE_NAME, IdFilterEntry.KEY_COLUMN);
+
+    private IdFilterTable() {
+    }
+
+    /**
+     * Returns the HQL condition which checks whether the given expression is one of the values of the filter
+     * identified by the given parameter.
+     */
+    static String condition(String expression, String parameterName) {
+        return String.format(" %s in (select _idf.value from %s _idf where _idf.filterKey = :%s) ",
+                expression, IdFilterEntry.class.getSimpleName(), parameterName);
+    }
+
+    /**
+     * Inserts the given numeric values under a new key and returns that key.
+     */
+    static String insert(SharedSessionContract session, Collection<?> values) {
+        String key = UUID.randomUUID().toString();
+        try {
+            PreparedStatement statement = connection(session).prepareStatement(INSERT_STATEMENT);
+            try {
+                int count = 0;
+                for (Object value : new LinkedHashSet<Object>(values)) {
+                    statement.setString(1, key);
+                    statement.setLong(2, ((Number) value).longValue());
+                    statement.addBatch();
+                    if (++count % BATCH_SIZE == 0) statement.executeBatch();
+                }
+                if (count % BATCH_SIZE != 0) statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format("Cannot insert %d values into %s", values.size(), IdFilterEntry.TABLE_NAME), e);
+        }
+        return key;
+    }
+
+    static void delete(SharedSessionContract session, String key) {
+        try {
+            PreparedStatement statement = connection(session).prepareStatement(DELETE_STATEMENT);
+            try {
+                statement.setString(1, key);
+                statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format("Cannot delete filter %s from %s", key, IdFilterEntry.TABLE_NAME), e);
+        }
+    }
+
+    private static Connection connection(SharedSessionContract session) {
+        return ((SessionImplementor) session).connection();
+    }
+}
@@ -0,0 +1,25 @@
+package com.semantive.hiqual.core;
+
+/**
+ * A {@link QueryListener} which ignores all notifications. It is the default listener of {@link QueryBuilder} - when
+ * it is used, the query builder does not even measure the time.
+ */
+public class NoOpQueryListener implements QueryListener {
+
+    public static final NoOpQueryListener INSTANCE = new NoOpQueryListener();
+
+    protected NoOpQueryListener() {
+    }
+
+    @Override
+    public void queryPlanBuilt(QueryExecutionContext context, long nanos, boolean fromCache) {
+    }
+
+    @Override
+    public void mainQueryExecuted(QueryExecutionContext context, long nanos, int rows, long transformationNanos) {
+    }
+
+    @Override
+    public void countQueryExecuted(QueryExecutionContext context, long nanos) {
+    }
+}
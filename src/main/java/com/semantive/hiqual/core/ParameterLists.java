@@ -0,0 +1,108 @@
+package com.semantive.hiqual.core;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Utilities for the collection parameters bound to {@code in} lists. Hibernate expands such a parameter to as many
+ * placeholders as there are elements, so every distinct list size produces a distinct SQL statement, which defeats
+ * statement caching. Therefore the lists are padded - by repeating the last element, which does not change
+ * the result of {@code in} - to one of a few bucket sizes. Lists longer than {@link #MAX_SIZE} exceed the limits of
+ * many databases and are split into chunks rendered as {@code or}'ed {@code in} groups.
+ */
+final class ParameterLists {
+
+    static final int MAX_SIZE = 1000;
+
+    private static final int[] BUCKET_SIZES = {8, 16, 32, 64, 128, 256, 512, MAX_SIZE};
+
+    private ParameterLists() {
+    }
+
+    static boolean isList(Object value) {
+        return value instanceof Collection || (value != null && value.getClass().isArray());
+    }
+
+    static List<Object> toList(Object value) {
+        if (value instanceof Collection) return new ArrayList<Object>((Collection<?>) value);
+
+        int length = Array.getLength(value);
+        List<Object> list = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++) {
+            list.add(Array.get(value, i));
+        }
+        return list;
+    }
+
+    static int size(Object value) {
+        return value instanceof Collection ? ((Collection) value).size() : Array.getLength(value);
+    }
+
+    /**
+     * Returns the number of chunks the given value has to be split into, or 0 if it does not need to be split.
+     */
+    static int chunkCount(Object value) {
+        if (!isList(value)) return 0;
+        int size = size(value);
+        return size > MAX_SIZE ? (size + MAX_SIZE - 1) / MAX_SIZE : 0;
+    }
+
+    /**
+     * Splits the given value into independent lists of at most {@link #MAX_SIZE} elements in a single pass.
+     */
+    static List<List<Object>> chunks(Object value) {
+        int size = size(value);
+        List<List<Object>> chunks = new ArrayList<List<Object>>((size + MAX_SIZE - 1) / MAX_SIZE);
+        List<Object> chunk = null;
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (chunk == null || chunk.size() == MAX_SIZE) chunks.add(chunk = new ArrayList<Object>(Math.min(MAX_SIZE, size)));
+                chunk.add(element);
+                size--;
+            }
+        } else {
+            for (int i = 0, length = size; i < length; i++) {
+                if (chunk == null || chunk.size() == MAX_SIZE) chunks.add(chunk = new ArrayList<Object>(Math.min(MAX_SIZE, size)));
+                chunk.add(Array.get(value, i));
+                size--;
+            }
+        }
+        return chunks;
+    }
+
+    static String chunkParameterName(String parameterName, int index) {
+        return parameterName + "_" + index;
+    }
+
+    /**
+     * Returns the given non-empty list padded to the nearest bucket size. Lists longer than {@link #MAX_SIZE} are
+     * returned unchanged.
+     */
+    static Collection<?> pad(Collection<?> values) {
+        int size = values.size();
+        int bucketSize = bucketSize(size);
+        if (bucketSize == size) return values;
+
+        List<Object> padded = new ArrayList<Object>(bucketSize);
+        padded.addAll(values);
+        Object last = padded.get(size - 1);
+        for (int i = size; i < bucketSize; i++) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    static Collection<?> pad(Object[] values) {
+        return pad(Arrays.asList(values));
+    }
+
+    private static int bucketSize(int size) {
+        for (int bucketSize : BUCKET_SIZES) {
+            if (size <= bucketSize) return bucketSize;
+        }
+        return size;
+    }
+}
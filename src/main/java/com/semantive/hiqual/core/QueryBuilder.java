@@ -6,29 +6,73 @@ import com.semantive.hiqual.FetchableProperty;
 import com.semantive.hiqual.IResultSetConfig;
 import com.semantive.hiqual.TextSearchExpressions;
 import com.semantive.hiqual.filter.*;
+import com.semantive.hiqual.pagination.KeysetPageDefinition;
+import com.semantive.hiqual.pagination.PageDefinition;
 import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.apache.commons.beanutils.NestedNullException;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.commons.validator.GenericValidator;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Order;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.transform.ResultTransformer;
 
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * @author Jacek Lewandowski
  */
 public class QueryBuilder<T> {
 
+    private final static Log log = LogFactory.getLog(QueryBuilder.class);
+
+    private static final String DEFAULT_KEYSET_ID_PROPERTY = "this.id";
+
+    private static final String SEARCH_CANDIDATES_PARAMETER = "searchCandidates";
+
+    private static final boolean CASE_SENSITIVE_SEARCH = false;
+
+    private static final int DEFAULT_SCROLL_FETCH_SIZE = 100;
+
+    /**
+     * Possible ways of computing the total size of paginated lists.
+     */
+    public static enum CountMode {
+        /**
+         * The total size is computed with the count query, unless the page is provably the last one.
+         */
+        EXACT,
+
+        /**
+         * The count query is executed only when the page is empty. If the page is full, the total size is reported as
+         * {@code pageStart + size + 1} which means that there is at least one more element.
+         */
+        ESTIMATED
+    }
+
     private final IResultSetConfig resultSetConfig;
 
     private final Class<? extends T> targetEntityClass;
 
-    private LinkedHashMap<String, String> substitutions;
+    private Substitutions substitutions;
 
     private Map<String, String> expressionsByPropertyName;
 
-    private Map<String, String> expressionsInSearchByPropertyName;
+    private Map<TextSearchExpressions.PropertyExpression, String> expressionsInSearch;
 
     private Map<String, String> expressionsInWhereByPropertyName;
 
@@ -42,16 +86,61 @@ public class QueryBuilder<T> {
 
     private Map<String, Object> parametersToSet;
 
+    private Map<String, Object> keysetParametersToSet;
+
     private Order defaultOrder;
 
+    private String keysetIdProperty = DEFAULT_KEYSET_ID_PROPERTY;
+
     private boolean propertyExpressionsInitialized = false;
 
+    private AbstractWhereCondition whereCondition;
+
+    private boolean whereConditionOptimized = false;
+
     private Map<String, Class> replacements;
 
     private Map<String, String> additionalProperties;
 
     private LinkedHashSet<String> leftOuterJoins;
 
+    private QueryPlanCache queryPlanCache;
+
+    private TotalSizeCache totalSizeCache;
+
+    private CountMode countMode = CountMode.EXACT;
+
+    private boolean constructorProjection;
+
+    private QueryListener queryListener = NoOpQueryListener.INSTANCE;
+
+    private QueryShape queryShape;
+
+    private QueryDiagnostics queryDiagnostics;
+
+    private int idFilterTableThreshold;
+
+    private ResultCache resultCache;
+
+    private Class<?>[] resultCacheEntityClasses;
+
+    private Set<String> idFilterParameterNames;
+
+    private SearchIndex searchIndex;
+
+    private Set<Serializable> searchCandidates;
+
+    private boolean searchCandidatesResolved = false;
+
+    private Map<String, Object> searchParameters;
+
+    private boolean relevanceRanking;
+
+    private Map<String, Object> rankingParameters;
+
+    private final Map<SharedSessionContract, Map<String, String>> generatedIdFilterKeys =
+            Collections.synchronizedMap(new LinkedHashMap<SharedSessionContract, Map<String, String>>());
+
     public QueryBuilder(Class<? extends T> targetEntityClass, IResultSetConfig config) {
         this.targetEntityClass = targetEntityClass;
         this.resultSetConfig = config;
@@ -77,12 +166,12 @@ public class QueryBuilder<T> {
                 }
                 if (resultSetConfig.textSearchExpressions() != null) {
                     for (TextSearchExpressions.PropertyExpression propertyExpression : resultSetConfig.textSearchExpressions().getPropertyExpressions()) {
-                        addPropertyInSearchExpression(propertyExpression.getName(), transformPropertyExpression(propertyExpression.getExpression()));
+                        addPropertyInSearchExpression(propertyExpression, transformPropertyExpression(propertyExpression.getExpression()));
                     }
                 }
 
-                if (resultSetConfig.whereConditions() != null) {
-                    processWhereConditionForPropertyExpressions(resultSetConfig.whereConditions().getWhereCondition());
+                if (whereCondition() != null) {
+                    processWhereConditionForPropertyExpressions(whereCondition());
                 }
 
                 if (resultSetConfig.orders() != null) {
@@ -96,6 +185,43 @@ public class QueryBuilder<T> {
     }
 
 
+    /**
+     * Returns the where conditions of the result set config normalized by {@link WhereConditionOptimizer}, or
+     * {@code null} if there are no conditions or they are always true. If the search string is resolved by the
+     * search index, the condition on the ids of the candidates is appended.
+     */
+    private AbstractWhereCondition whereCondition() {
+        if (!whereConditionOptimized) {
+            if (resultSetConfig != null && resultSetConfig.whereConditions() != null) {
+                whereCondition = WhereConditionOptimizer.optimize(resultSetConfig.whereConditions().getWhereCondition());
+            }
+            Set<Serializable> candidates = searchCandidates();
+            if (candidates != null && !candidates.isEmpty()) {
+                AbstractWhereCondition candidatesCondition = new SimpleWhereCondition(searchIndex.getIdPropertyName(),
+                        Operator.IN, SEARCH_CANDIDATES_PARAMETER, new ArrayList<Serializable>(candidates));
+                whereCondition = whereCondition == null ? candidatesCondition
+                        : new ComplexWhereCondition(LogicalOperator.AND).addWhereCondition(whereCondition).addWhereCondition(candidatesCondition);
+            }
+            whereConditionOptimized = true;
+        }
+        return whereCondition;
+    }
+
+    /**
+     * Returns the ids of the entities matching the search string resolved by the search index, or {@code null} if
+     * the search index is not used or cannot resolve the search string.
+     */
+    private Set<Serializable> searchCandidates() {
+        if (!searchCandidatesResolved) {
+            if (searchIndex != null && resultSetConfig != null && resultSetConfig.searchString() != null
+                    && searchIndex.covers(resultSetConfig.textSearchExpressions())) {
+                searchCandidates = searchIndex.candidates(tokenizeSearchString());
+            }
+            searchCandidatesResolved = true;
+        }
+        return searchCandidates;
+    }
+
     private String withThis(String propertyName) {
         return propertyName.startsWith("this.") ? propertyName : ("this." + propertyName);
     }
@@ -134,8 +260,8 @@ public class QueryBuilder<T> {
     }
 
     public QueryBuilder<T> addSubstitution(String from, String to) {
-        if (this.substitutions == null) this.substitutions = new LinkedHashMap<String, String>();
-        this.substitutions.put(from, to);
+        if (this.substitutions == null) this.substitutions = new Substitutions();
+        this.substitutions.addPattern(from, to);
         propertyExpressionsInitialized = false;
         return this;
     }
@@ -176,24 +302,204 @@ public class QueryBuilder<T> {
         return this;
     }
 
+    /**
+     * Sets the property which is appended to the keyset orders as the tie-breaker, so that the keyset identifies the
+     * rows uniquely - {@code this.id} by default.
+     */
+    public QueryBuilder<T> setKeysetIdProperty(String keysetIdProperty) {
+        this.keysetIdProperty = withThis(keysetIdProperty);
+        return this;
+    }
+
+    /**
+     * Sets the identifier property of the given entity as the keyset tie-breaker.
+     *
+     * @throws IllegalArgumentException if the class is not a mapped entity
+     * @see #setKeysetIdProperty(String)
+     */
+    public QueryBuilder<T> setKeysetIdProperty(SessionFactory sessionFactory, Class<?> entityClass) {
+        ClassMetadata metadata = sessionFactory.getClassMetadata(entityClass);
+        if (metadata == null)
+            throw new IllegalArgumentException(String.format("%s is not a mapped entity.", entityClass.getName()));
+        return setKeysetIdProperty(metadata.getIdentifierPropertyName());
+    }
+
     public QueryBuilder<T> addAdditionalProperty(String expression, String alias) {
         if (this.additionalProperties == null) this.additionalProperties = new HashMap<String, String>();
         this.additionalProperties.put(expression, alias);
         return this;
     }
 
+    public QueryBuilder<T> usePlanCache(QueryPlanCache queryPlanCache) {
+        this.queryPlanCache = queryPlanCache;
+        return this;
+    }
+
+    public QueryBuilder<T> useTotalSizeCache(TotalSizeCache totalSizeCache) {
+        this.totalSizeCache = totalSizeCache;
+        return this;
+    }
+
+    public QueryBuilder<T> setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+        return this;
+    }
+
+    /**
+     * Makes the fetched properties be passed to the constructor of the target class annotated with
+     * {@link java.beans.ConstructorProperties} instead of being set with setters.
+     *
+     * @see AliasToConstructorTransformer
+     */
+    public QueryBuilder<T> useConstructorProjection() {
+        this.constructorProjection = true;
+        return this;
+    }
+
+    /**
+     * Registers the listener which is notified about the time spent on building the query plan, executing the main
+     * and the count queries and transforming the results.
+     */
+    public QueryBuilder<T> useQueryListener(QueryListener queryListener) {
+        this.queryListener = queryListener != null ? queryListener : NoOpQueryListener.INSTANCE;
+        return this;
+    }
+
+    /**
+     * Makes the executions of {@link #generatePaginatedList(Session)} and {@link #generatePlainList(Session)} be
+     * recorded by the given diagnostics.
+     */
+    public QueryBuilder<T> useDiagnostics(QueryDiagnostics queryDiagnostics) {
+        this.queryDiagnostics = queryDiagnostics;
+        return this;
+    }
+
+    /**
+     * Makes the {@code IN} conditions with more than the given number of numeric values be rendered as a subquery
+     * on the {@link IdFilterEntry} table. The values are inserted into that table with batched JDBC statements
+     * once per execution - the main and the count query of a paginated list share them - and they are deleted when
+     * the execution completes. The rows inserted for the queries returned by {@link #generateMainQuery(Session)} and
+     * {@link #generateCountQuery(Session)} are deleted by {@link #releaseIdFilters()}, and the rows inserted for
+     * {@link #generateIterator(Session)} are deleted when the iterator is closed.
+     *
+     * @param threshold the minimal number of values for which the table is used, or 0 to disable the strategy
+     */
+    public QueryBuilder<T> useIdFilterTable(int threshold) {
+        this.idFilterTableThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Makes {@link #generatePaginatedList(Session)} return the results from the given cache when possible.
+     *
+     * @param resultCache   the result cache
+     * @param entityClasses the entity classes whose modifications invalidate the cached results - the mapped entities
+     *                      or their superclasses; the target class is usually a projection, so it is not used by default
+     * @throws IllegalArgumentException if no entity class is given
+     */
+    public QueryBuilder<T> useResultCache(ResultCache resultCache, Class<?>... entityClasses) {
+        if (entityClasses.length == 0)
+            throw new IllegalArgumentException("The entity classes whose modifications invalidate the cached results are required.");
+        this.resultCache = resultCache;
+        this.resultCacheEntityClasses = entityClasses;
+        return this;
+    }
+
+    /**
+     * Checks that the modifications of each entity class of the result cache fire events, i.e. it is a mapped entity
+     * or a superclass of some mapped entity.
+     *
+     * @throws IllegalArgumentException if some of the classes is not mapped
+     */
+    private void checkResultCacheEntityClasses(SessionFactory sessionFactory) {
+        for (Class<?> entityClass : resultCacheEntityClasses) {
+            if (sessionFactory.getClassMetadata(entityClass) != null) continue;
+            boolean mapped = false;
+            for (ClassMetadata classMetadata : sessionFactory.getAllClassMetadata().values()) {
+                if (classMetadata.getMappedClass() != null && entityClass.isAssignableFrom(classMetadata.getMappedClass())) mapped = true;
+            }
+            if (!mapped)
+                throw new IllegalArgumentException(String.format("The class %s is not a mapped entity, so its modifications do not invalidate the cached results.",
+                        entityClass.getName()));
+        }
+    }
+
+    /**
+     * Makes the search string be resolved by the given index into the ids of the matching entities, which are
+     * then selected with an {@code IN} condition instead of the {@code LIKE} conditions on the text search
+     * expressions. The index is used only if it covers the text search expressions of the result set config and
+     * it can resolve the search string - otherwise the {@code LIKE} conditions are generated as usual.
+     */
+    public QueryBuilder<T> useSearchIndex(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+        return this;
+    }
+
+    /**
+     * Makes the results of searches be ordered by their relevance to the search string, before the orders of the
+     * result set config or the default order. The relevance score of a row is computed in the query: for each
+     * search token and each text search expression, an exact match scores 3, a prefix match 2 and any other match
+     * 1 (a dictionary property matching the token scores 1), multiplied by the weight of the expression. The
+     * pagination is applied to the ranked results. It has no effect if there is no search string.
+     * <p/>
+     * The weights are rendered as literals, but the search tokens are bound as parameters of the score in the
+     * {@code order by} clause. Therefore, the ranking is supported only by the databases which accept parameter
+     * markers there, such as H2, PostgreSQL or MySQL - DB2 and Derby, for example, reject such queries.
+     *
+     * @throws IllegalArgumentException if the result set config uses keyset pagination
+     */
+    public QueryBuilder<T> useRelevanceRanking() {
+        if (keysetPage() != null)
+            throw new IllegalArgumentException("Relevance ranking is not supported with keyset pagination.");
+        this.relevanceRanking = true;
+        return this;
+    }
+
+    private boolean isRanked() {
+        return relevanceRanking && resultSetConfig != null && resultSetConfig.searchString() != null
+                && resultSetConfig.textSearchExpressions() != null && !resultSetConfig.textSearchExpressions().getPropertyExpressions().isEmpty()
+                && tokenizeSearchString().length > 0;
+    }
+
+    /**
+     * Generates the relevance score of a row, which is a sum of the scores of each search token matched against
+     * each text search expression.
+     */
+    private String generateRankingExpression() {
+        String[] tokens = tokenizeSearchString();
+        List<String> scores = new ArrayList<String>();
+        for (int i = 0; i < tokens.length; i++) {
+            int j = 0;
+            for (TextSearchExpressions.PropertyExpression propertyExpression : resultSetConfig.textSearchExpressions().getPropertyExpressions()) {
+                int weight = resultSetConfig.textSearchExpressions().getWeight(propertyExpression.getName());
+                String expression = expressionsInSearch.get(propertyExpression);
+                if (propertyExpression instanceof TextSearchExpressions.DictPropertyExpression) {
+                    scores.add(String.format("(case when %s in (:%s) then %d else 0 end)", expression, HibernateQueryUtils.dictParameterName(i, j), weight));
+                } else {
+                    expression = HibernateQueryUtils.lower(expression, !CASE_SENSITIVE_SEARCH && !propertyExpression.isLowerCase());
+                    scores.add(String.format("(case when %1$s = :%2$s then %3$d when %1$s like :%4$s then %5$d when %1$s like :%6$s then %7$d else 0 end)",
+                            expression, HibernateQueryUtils.tokenParameterName(i, TextSearchExpressions.SearchMode.EXACT), 3 * weight,
+                            HibernateQueryUtils.tokenParameterName(i, TextSearchExpressions.SearchMode.PREFIX), 2 * weight,
+                            HibernateQueryUtils.tokenParameterName(i, TextSearchExpressions.SearchMode.CONTAINS), weight));
+                }
+                j++;
+            }
+        }
+        return "(" + SemantiveStringUtils.arrayToDelimitedString(scores.toArray(new String[scores.size()]), " + ") + ")";
+    }
+
     public QueryBuilder<T> addLeftOuterJoin(String joinProperty) {
         if (this.leftOuterJoins == null) this.leftOuterJoins = new LinkedHashSet<String>();
         String transformed = transformPropertyExpression(joinProperty);
         this.leftOuterJoins.add(transformed);
-        String what = "^" + transformed.replaceAll("\\.", "\\\\.") + "\\.";
-        String to = joinPropertyToAlias(transformed) + ".";
-        addSubstitution(what, to);
+        if (this.substitutions == null) this.substitutions = new Substitutions();
+        this.substitutions.addPrefix(transformed + ".", joinPropertyToAlias(transformed) + ".");
+        propertyExpressionsInitialized = false;
         return this;
     }
 
     private String joinPropertyToAlias(String joinProperty) {
-        return "_" + joinProperty.replaceAll("\\.", "_");
+        return "_" + joinProperty.replace('.', '_');
     }
 
     private void addPropertyExpression(String prop, String expr) {
@@ -201,10 +507,15 @@ public class QueryBuilder<T> {
         this.expressionsByPropertyName.put(prop, expr);
     }
 
-    private void addPropertyInSearchExpression(String prop, String expr) {
-        if (this.expressionsInSearchByPropertyName == null)
-            this.expressionsInSearchByPropertyName = new HashMap<String, String>();
-        this.expressionsInSearchByPropertyName.put(prop, expr);
+    /**
+     * Registers the transformed expression of the given text search expression. The expressions are keyed by
+     * themselves rather than by the property names, because a property can be searched by several expressions, e.g.
+     * in different search modes or through its shadow property.
+     */
+    private void addPropertyInSearchExpression(TextSearchExpressions.PropertyExpression propertyExpression, String expr) {
+        if (this.expressionsInSearch == null)
+            this.expressionsInSearch = new HashMap<TextSearchExpressions.PropertyExpression, String>();
+        this.expressionsInSearch.put(propertyExpression, expr);
     }
 
     private void addPropertyInWhereExpression(String prop, String expr) {
@@ -214,11 +525,7 @@ public class QueryBuilder<T> {
     }
 
     private String transformPropertyExpression(String propertyExpression) {
-        String result = propertyExpression;
-        if (substitutions != null) for (Map.Entry<String, String> substitution : substitutions.entrySet()) {
-            result = result.replaceAll(substitution.getKey(), substitution.getValue());
-        }
-        return result;
+        return substitutions != null ? substitutions.transform(propertyExpression) : propertyExpression;
     }
 
     private String transformPropertyNameToAlias(String propertyName) {
@@ -232,29 +539,77 @@ public class QueryBuilder<T> {
         if (resultSetConfig == null || resultSetConfig.searchString() == null || resultSetConfig.textSearchExpressions() == null || resultSetConfig.textSearchExpressions().getPropertyExpressions().isEmpty())
             return null;
 
-        boolean beforeWildcard = true;
-        boolean afterWildcard = true;
-        boolean caseSensitive = false;
-        int tokenLimit = 5;
+        Set<Serializable> candidates = searchCandidates();
+        if (candidates != null) {
+            // the candidates condition is a part of the where condition
+            return candidates.isEmpty() ? " 1 = 0 " : null;
+        }
 
-        String[] tokens = SemantiveStringUtils.tokenizeAndWildcard(resultSetConfig.searchString(), beforeWildcard, afterWildcard, tokenLimit);
+        String[] tokens = tokenizeSearchString();
 
         if (tokens.length == 0) return null;
 
-        for (int i = 0; i < tokens.length; i++) {
+        bindSearchParameters();
+
+        return HibernateQueryUtils.autocompleteCondition(tokens.length, resultSetConfig.textSearchExpressions().getPropertyExpressions(),
+                expressionsInSearch, CASE_SENSITIVE_SEARCH);
+    }
 
-            String[] conditionParts = new String[resultSetConfig.textSearchExpressions().getPropertyExpressions().size()];
-            Iterator<TextSearchExpressions.PropertyExpression> it = resultSetConfig.textSearchExpressions().getPropertyExpressions().iterator();
-            for (int j = 0; j < conditionParts.length; j++) {
-                StringBuilder buf = new StringBuilder();
-                buf.append("(").append(HibernateQueryUtils.lower(expressionsInSearchByPropertyName.get(it.next().getName()), !caseSensitive)).append(" LIKE ").append(HibernateQueryUtils.lower("'" + tokens[i] + "'", !caseSensitive)).append(")");
-                conditionParts[j] = buf.toString();
+    /**
+     * Returns the values of the parameters of the autocomplete condition by their names - the search tokens with the
+     * wildcards of the search modes in which they are used, and the constants of the dictionary properties whose
+     * labels match the search tokens. The names depend only on the positions of the tokens, so the same query is
+     * generated for all the search strings with the same number of tokens.
+     */
+    private Map<String, Object> searchParameters() {
+        if (searchParameters == null) {
+            searchParameters = new LinkedHashMap<String, Object>();
+            if (resultSetConfig != null && resultSetConfig.searchString() != null && resultSetConfig.textSearchExpressions() != null
+                    && searchCandidates() == null) {
+                searchParameters.putAll(HibernateQueryUtils.autocompleteParameters(tokenizeSearchString(),
+                        resultSetConfig.textSearchExpressions().getPropertyExpressions(), CASE_SENSITIVE_SEARCH));
             }
+        }
+        return searchParameters;
+    }
 
-            tokens[i] = "(" + SemantiveStringUtils.arrayToDelimitedString(conditionParts, " OR ") + ")";
+    /**
+     * Returns the values of the parameters of the relevance score by their names - each search token in all the
+     * search modes and the constants of the dictionary properties whose labels match the search tokens.
+     */
+    private Map<String, Object> rankingParameters() {
+        if (rankingParameters == null) {
+            rankingParameters = new LinkedHashMap<String, Object>();
+            String[] tokens = tokenizeSearchString();
+            for (int i = 0; i < tokens.length; i++) {
+                String token = CASE_SENSITIVE_SEARCH ? tokens[i] : tokens[i].toLowerCase(Locale.ROOT);
+                for (TextSearchExpressions.SearchMode searchMode : TextSearchExpressions.SearchMode.values()) {
+                    rankingParameters.put(HibernateQueryUtils.tokenParameterName(i, searchMode), HibernateQueryUtils.tokenParameterValue(token, searchMode));
+                }
+                int j = 0;
+                for (TextSearchExpressions.PropertyExpression propertyExpression : resultSetConfig.textSearchExpressions().getPropertyExpressions()) {
+                    if (propertyExpression instanceof TextSearchExpressions.DictPropertyExpression) {
+                        rankingParameters.put(HibernateQueryUtils.dictParameterName(i, j), ((TextSearchExpressions.DictPropertyExpression) propertyExpression).matchingConstants(tokens[i]));
+                    }
+                    j++;
+                }
+            }
         }
+        return rankingParameters;
+    }
+
+    private void bindSearchParameters() {
+        if (searchParameters().isEmpty()) return;
+        if (parametersToSet == null) parametersToSet = new HashMap<String, Object>();
+        parametersToSet.putAll(searchParameters());
+    }
 
-        return " (" + SemantiveStringUtils.arrayToDelimitedString(tokens, " AND ") + ") ";
+    /**
+     * Splits the search string into tokens, without wildcards - they are added in
+     * {@link #generateAutocompleteCondition()} according to the search mode of each property expression.
+     */
+    private String[] tokenizeSearchString() {
+        return HibernateQueryUtils.searchTokens(resultSetConfig.searchString());
     }
 
     public String generateSelectClause() {
@@ -292,9 +647,9 @@ public class QueryBuilder<T> {
             buf.append(" and ").append(condition).append(" ");
         }
 
-        if (resultSetConfig.whereConditions() != null) {
+        if (whereCondition() != null) {
             buf.append(" and ");
-            processWhereCondition(resultSetConfig.whereConditions().getWhereCondition(), buf);
+            processWhereCondition(whereCondition(), buf);
         }
 
         String autocompleteCondition = generateAutocompleteCondition();
@@ -352,7 +707,28 @@ public class QueryBuilder<T> {
     }
 
     private void processSimpleWhereCondition(SimpleWhereCondition condition, StringBuilder buf) {
-        if (condition.getValue() != null) {
+        int chunkCount = inListChunkCount(condition);
+        if (usesIdFilterTable(condition)) {
+            buf.append(IdFilterTable.condition(expressionsInWhereByPropertyName.get(withoutThis(condition.getPropertyName())),
+                    condition.getParameterName()));
+            if (parametersToSet == null) parametersToSet = new HashMap<String, Object>();
+            parametersToSet.put(condition.getParameterName(), condition.getValue());
+            if (idFilterParameterNames == null) idFilterParameterNames = new HashSet<String>();
+            idFilterParameterNames.add(condition.getParameterName());
+        } else if (chunkCount > 0) {
+            if (parametersToSet == null) parametersToSet = new HashMap<String, Object>();
+            List<List<Object>> chunks = ParameterLists.chunks(condition.getValue());
+            buf.append(" (");
+            for (int i = 0; i < chunkCount; i++) {
+                String parameterName = ParameterLists.chunkParameterName(condition.getParameterName(), i);
+                if (i > 0) buf.append(" or ");
+                buf.append(String.format(condition.getOperator().getRepresentation(),
+                        expressionsInWhereByPropertyName.get(withoutThis(condition.getPropertyName())),
+                        ":" + parameterName));
+                parametersToSet.put(parameterName, chunks.get(i));
+            }
+            buf.append(") ");
+        } else if (condition.getValue() != null) {
             buf.append(String.format(condition.getOperator().getRepresentation(),
                     expressionsInWhereByPropertyName.get(withoutThis(condition.getPropertyName())),
                     ":" + condition.getParameterName()));
@@ -369,11 +745,35 @@ public class QueryBuilder<T> {
         }
     }
 
+    private boolean usesIdFilterTable(SimpleWhereCondition condition) {
+        if (idFilterTableThreshold <= 0 || condition.getOperator() != Operator.IN || !ParameterLists.isList(condition.getValue())
+                || ParameterLists.size(condition.getValue()) < idFilterTableThreshold) return false;
+
+        for (Object value : ParameterLists.toList(condition.getValue())) {
+            if (!(value instanceof Number)) return false;
+        }
+        return true;
+    }
+
+    private int inListChunkCount(SimpleWhereCondition condition) {
+        if (condition.getOperator() != Operator.IN || usesIdFilterTable(condition)) return 0;
+        return ParameterLists.chunkCount(condition.getValue());
+    }
+
     public String generateOrderByClause() {
         initializePropertyExpressions();
         StringBuilder buf = new StringBuilder();
-        if (resultSetConfig != null && resultSetConfig.orders() != null && !resultSetConfig.orders().isEmpty()) {
+        if (keysetPage() != null) {
             buf.append(" order by ");
+            Iterator<KeysetColumn> it = keysetColumns().iterator();
+            while (it.hasNext()) {
+                KeysetColumn column = it.next();
+                buf.append(keysetExpression(column)).append(column.ascending ? " asc" : " desc");
+                if (it.hasNext()) buf.append(", ");
+            }
+        } else if (resultSetConfig != null && resultSetConfig.orders() != null && !resultSetConfig.orders().isEmpty()) {
+            buf.append(" order by ");
+            if (isRanked()) buf.append(generateRankingExpression()).append(" desc, ");
             boolean isFirst = true;
             for (Order order : resultSetConfig.orders()) {
                 if (isFirst) {
@@ -384,13 +784,173 @@ public class QueryBuilder<T> {
                 buf.append(expressionsByPropertyName.get(order.toString()));
             }
         } else if (defaultOrder != null) {
-            buf.append(" order by ").append(defaultOrder.toString()).append(" ");
+            buf.append(" order by ");
+            if (isRanked()) buf.append(generateRankingExpression()).append(" desc, ");
+            buf.append(defaultOrder.toString()).append(" ");
+        } else if (isRanked()) {
+            buf.append(" order by ").append(generateRankingExpression()).append(" desc");
         }
         buf.append(" ");
 
         return buf.toString();
     }
 
+    private KeysetPageDefinition keysetPage() {
+        if (resultSetConfig != null && resultSetConfig.pageDefinition() instanceof KeysetPageDefinition)
+            return (KeysetPageDefinition) resultSetConfig.pageDefinition();
+        return null;
+    }
+
+    /**
+     * Returns the columns of the keyset - the orders of the result set config (or the default order) followed by the
+     * keyset id property, unless the results are already ordered by it. The values of the next page are read from the fetched
+     * beans, so all the columns have to be among the properties to fetch, if these are given.
+     *
+     * @throws IllegalArgumentException if some keyset column is not fetched
+     */
+    private List<KeysetColumn> keysetColumns() {
+        List<KeysetColumn> columns = new ArrayList<KeysetColumn>();
+        if (resultSetConfig.orders() != null && !resultSetConfig.orders().isEmpty()) {
+            for (Order order : resultSetConfig.orders()) columns.add(new KeysetColumn(order, true));
+        } else if (defaultOrder != null) {
+            columns.add(new KeysetColumn(defaultOrder, false));
+        }
+
+        boolean orderedById = false;
+        for (KeysetColumn column : columns) {
+            if (withoutThis(column.property).equals(withoutThis(keysetIdProperty))) orderedById = true;
+        }
+        if (!orderedById) columns.add(new KeysetColumn(Order.asc(keysetIdProperty), true));
+
+        if (resultSetConfig.propertiesToFetch() != null && !resultSetConfig.propertiesToFetch().isEmpty()) {
+            Set<String> fetchedNames = new HashSet<String>();
+            for (FetchableProperty fetchableProperty : resultSetConfig.propertiesToFetch().values()) {
+                fetchedNames.add(withoutThis(fetchableProperty.getName()));
+            }
+            for (KeysetColumn column : columns) {
+                if (!fetchedNames.contains(withoutThis(column.property)))
+                    throw new IllegalArgumentException(String.format("The keyset column %s is not among the properties to fetch %s.",
+                            withoutThis(column.property), fetchedNames));
+            }
+        }
+
+        return columns;
+    }
+
+    private String keysetExpression(KeysetColumn column) {
+        return column.transform ? transformPropertyExpression(withThis(column.property)) : column.property;
+    }
+
+    private String keysetParameterName(int index) {
+        return "_keyset_" + index;
+    }
+
+    /**
+     * Generates the seek predicate for the keyset page - a row {@code (a, b, id)} is on the next page if
+     * {@code a > :a or (a = :a and b > :b) or (a = :a and b = :b and id > :id)}, where the comparison is reversed for
+     * descending orders.
+     *
+     * @throws IllegalArgumentException if the last key does not match the keyset columns or contains a null value
+     */
+    public String generateKeysetCondition() {
+        KeysetPageDefinition page = keysetPage();
+        if (page == null || page.isFirstPage()) return "";
+        initializePropertyExpressions();
+
+        List<KeysetColumn> columns = keysetColumns();
+        if (page.lastKey.length != columns.size())
+            throw new IllegalArgumentException(String.format("The last key of the page %s does not match the keyset orders %s.", page, columns));
+
+        String[] expressions = new String[columns.size()];
+        for (int i = 0; i < expressions.length; i++) expressions[i] = keysetExpression(columns.get(i));
+
+        StringBuilder buf = new StringBuilder(" and (");
+        for (int i = 0; i < expressions.length; i++) {
+            if (i > 0) buf.append(" or ");
+            buf.append("(");
+            for (int j = 0; j < i; j++) {
+                buf.append(expressions[j]).append(" = :").append(keysetParameterName(j)).append(" and ");
+            }
+            buf.append(expressions[i]).append(columns.get(i).ascending ? " > :" : " < :").append(keysetParameterName(i));
+            buf.append(")");
+        }
+        buf.append(") ");
+
+        bindKeysetParameters(page);
+        return buf.toString();
+    }
+
+    private void bindKeysetParameters(KeysetPageDefinition page) {
+        if (page == null || page.isFirstPage()) return;
+        List<KeysetColumn> columns = keysetColumns();
+        if (keysetParametersToSet == null) keysetParametersToSet = new HashMap<String, Object>();
+        for (int i = 0; i < page.lastKey.length; i++) {
+            Object value = page.lastKey[i];
+            if (value == null)
+                throw new IllegalArgumentException(String.format("The last key of the page %s contains null for the keyset column %s.", page, columns.get(i)));
+            if (value instanceof KeysetPageDefinition.EnumKey)
+                value = ((KeysetPageDefinition.EnumKey) value).resolve(keysetColumnType(columns.get(i)));
+            keysetParametersToSet.put(keysetParameterName(i), value);
+        }
+    }
+
+    /**
+     * Returns the type of the keyset column in the target class. Only the getters are introspected, because the
+     * target class may be an immutable projection without a default constructor.
+     */
+    private Class<?> keysetColumnType(KeysetColumn column) {
+        Class<?> type = targetEntityClass;
+        for (String pathElement : withoutThis(column.property).split("\\.")) {
+            PropertyDescriptor propertyDescriptor = null;
+            try {
+                for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                    if (descriptor.getName().equals(pathElement)) propertyDescriptor = descriptor;
+                }
+            } catch (IntrospectionException e) {
+                throw new IllegalArgumentException(String.format("Cannot introspect %s.", type.getName()), e);
+            }
+            if (propertyDescriptor == null || propertyDescriptor.getPropertyType() == null)
+                throw new IllegalArgumentException(String.format("The keyset column %s is not a property of %s.", column, targetEntityClass.getName()));
+            type = propertyDescriptor.getPropertyType();
+        }
+        return type;
+    }
+
+    /**
+     * Reads the value of the keyset column from the given row with the getters only, so that the rows can be
+     * immutable projections, see {@link #useConstructorProjection()}. A null on the path is read as null.
+     */
+    private Object keysetValue(Object row, KeysetColumn column) {
+        try {
+            return PropertyUtils.getProperty(row, withoutThis(column.property));
+        } catch (NestedNullException e) {
+            return null;
+        } catch (Exception e) {
+            throw new IllegalStateException(String.format("Cannot read the keyset column %s of %s.", column, row.getClass().getName()), e);
+        }
+    }
+
+    /**
+     * Reads the values of the keyset columns from the last row of the page. The keyset orders are expected to point
+     * to the properties of the fetched beans.
+     *
+     * @throws IllegalStateException if some keyset column of the last row is null
+     */
+    private KeysetPageDefinition nextKeysetPage(List<T> page) {
+        KeysetPageDefinition currentPage = keysetPage();
+        if (currentPage == null || page.isEmpty() || page.size() < currentPage.pageSize) return null;
+
+        Object last = page.get(page.size() - 1);
+        List<KeysetColumn> columns = keysetColumns();
+        Object[] lastKey = new Object[columns.size()];
+        for (int i = 0; i < lastKey.length; i++) {
+            lastKey[i] = keysetValue(last, columns.get(i));
+            if (lastKey[i] == null)
+                throw new IllegalStateException(String.format("The keyset column %s of the last row of the page is null.", columns.get(i)));
+        }
+        return new KeysetPageDefinition(currentPage.pageStart + page.size(), currentPage.pageSize, lastKey);
+    }
+
     public String generateFromClause() {
         StringBuilder buf = new StringBuilder();
         buf.append(" ").append(fromClause).append(" ");
@@ -403,90 +963,582 @@ public class QueryBuilder<T> {
         return buf.toString();
     }
 
-    public Query generateMainQuery(Session session) {
+    public QueryShape getQueryShape() {
+        return queryShapeBuilder().build();
+    }
+
+    /**
+     * Returns the shape of the results, used as a part of the {@link ResultCache} keys - the query shape extended
+     * with the settings which do not change the rendered queries, but change the transformed results and their
+     * total size.
+     */
+    private QueryShape getResultShape() {
+        return queryShapeBuilder()
+                .append("replacements", replacements != null ? new TreeMap<String, Class>(replacements) : null)
+                .append("constructorProjection", constructorProjection)
+                .append("countMode", countMode)
+                .build();
+    }
+
+    private QueryShape.Builder queryShapeBuilder() {
+        QueryShape.Builder shape = new QueryShape.Builder()
+                .append("from", fromClause)
+                .append("select", defaultSelectClause)
+                .append("custom", whereClauseCustomPart)
+                .append("conditions", whereClauseConditions)
+                .append("defaultOrder", defaultOrder)
+                .append("additional", additionalProperties)
+                .append("joins", leftOuterJoins)
+                .append("substitutions", substitutions);
+
+        if (resultSetConfig != null) {
+            KeysetPageDefinition keysetPage = keysetPage();
+            if (keysetPage != null) {
+                shape.append("keyset", keysetPage.isFirstPage() ? 0 : keysetPage.lastKey.length)
+                        .append("keysetId", keysetIdProperty);
+            }
+            if (resultSetConfig.propertiesToFetch() != null) {
+                for (FetchableProperty fetchableProperty : resultSetConfig.propertiesToFetch().values()) {
+                    shape.append("fetch", fetchableProperty.getExpression())
+                            .append("as", fetchableProperty.getName())
+                            .append("join", fetchableProperty.getJoin().orNull());
+                }
+            }
+            if (resultSetConfig.orders() != null) {
+                for (Order order : resultSetConfig.orders()) {
+                    shape.append("order", order);
+                }
+            }
+            if (whereCondition() != null) {
+                appendWhereConditionShape(whereCondition(), shape);
+            }
+            if (resultSetConfig.searchString() != null && resultSetConfig.textSearchExpressions() != null) {
+                for (TextSearchExpressions.PropertyExpression propertyExpression : resultSetConfig.textSearchExpressions().getPropertyExpressions()) {
+                    // the kind of the expression decides how it is rendered, e.g. dictionaries are compared with constants
+                    shape.append("search", propertyExpression.getExpression())
+                            .append("kind", propertyExpression.getClass().getName())
+                            .append("lowerCase", propertyExpression.isLowerCase())
+                            .append("mode", propertyExpression.getSearchMode());
+                    if (isRanked()) shape.append("weight", resultSetConfig.textSearchExpressions().getWeight(propertyExpression.getName()));
+                }
+                Set<Serializable> candidates = searchCandidates();
+                if (candidates != null) {
+                    // the candidates condition is a part of the where condition shape
+                    shape.append("searchIndex", candidates.isEmpty() ? "none" : "candidates");
+                } else {
+                    // search tokens are bound as parameters, so only their number matters
+                    shape.append("tokens", tokenizeSearchString().length);
+                }
+                if (isRanked()) shape.append("ranking", tokenizeSearchString().length);
+            }
+        }
+
+        return shape;
+    }
+
+    private void appendWhereConditionShape(AbstractWhereCondition condition, QueryShape.Builder shape) {
+        if (condition instanceof SimpleWhereCondition) {
+            SimpleWhereCondition simpleWhereCondition = (SimpleWhereCondition) condition;
+            shape.open("simple")
+                    .append("property", simpleWhereCondition.getPropertyName())
+                    .append("operator", simpleWhereCondition.getOperator())
+                    .append("parameter", simpleWhereCondition.getParameterName())
+                    .append("null", simpleWhereCondition.getValue() == null)
+                    .append("chunks", inListChunkCount(simpleWhereCondition))
+                    .append("idFilter", usesIdFilterTable(simpleWhereCondition))
+                    .close();
+        } else if (condition instanceof ComplexWhereCondition) {
+            ComplexWhereCondition complexWhereCondition = (ComplexWhereCondition) condition;
+            shape.open(complexWhereCondition.getLogicalOperator().name());
+            for (AbstractWhereCondition subCondition : complexWhereCondition.getWhereConditions()) {
+                appendWhereConditionShape(subCondition, shape);
+            }
+            shape.close();
+        } else if (condition instanceof NotWhereCondition) {
+            shape.open("not");
+            appendWhereConditionShape(((NotWhereCondition) condition).getWhereCondition(), shape);
+            shape.close();
+        } else if (condition instanceof BetweenWhereCondition) {
+            BetweenWhereCondition betweenWhereCondition = (BetweenWhereCondition) condition;
+            shape.open("between")
+                    .append("property", betweenWhereCondition.getPropertyName())
+                    .append("lower", betweenWhereCondition.getLowerBoundParameterName())
+                    .append("upper", betweenWhereCondition.getUpperBoundParameterName())
+                    .close();
+        }
+    }
+
+    /**
+     * Returns the query plan for the current configuration. If a plan cache is used and it already contains a plan
+     * of the same shape, the HQL is not rendered at all - only the parameter values are collected from the where
+     * conditions.
+     */
+    public QueryPlan getQueryPlan() {
+        long start = isListened() ? System.nanoTime() : 0L;
+        boolean fromCache = false;
+
+        QueryPlan plan;
+        if (queryPlanCache == null) {
+            plan = compileQueryPlan();
+        } else {
+            queryShape = getQueryShape();
+            plan = queryPlanCache.get(queryShape);
+            if (plan == null) {
+                plan = compileQueryPlan();
+                queryPlanCache.put(queryShape, plan);
+            } else {
+                bindConditionParameters(plan);
+                bindSearchParameters();
+                bindKeysetParameters(keysetPage());
+                fromCache = true;
+            }
+        }
+
+        if (isListened()) queryListener.queryPlanBuilt(executionContext(plan), System.nanoTime() - start, fromCache);
+        return plan;
+    }
+
+    private boolean isListened() {
+        return queryListener != NoOpQueryListener.INSTANCE;
+    }
+
+    private QueryExecutionContext executionContext(QueryPlan plan) {
+        return new QueryExecutionContext(targetEntityClass, this, plan, queryShape);
+    }
+
+    private QueryPlan compileQueryPlan() {
         initializePropertyExpressions();
-        StringBuilder buf = new StringBuilder();
+        String fromClause = generateFromClause();
+        String whereClause = generateWhereClause();
+
+        String mainQuery = generateSelectClause() + fromClause + whereClause + generateKeysetCondition() + generateOrderByClause();
+        String countQuery = "select count(*) " + fromClause + whereClause;
+
+        List<String> parameterNames = new ArrayList<String>();
+        if (whereCondition() != null) collectConditionParameters(whereCondition(), parameterNames, null);
+
+        return new QueryPlan(mainQuery, countQuery, parameterNames.toArray(new String[parameterNames.size()]),
+                idFilterParameterNames != null ? new HashSet<String>(idFilterParameterNames) : Collections.<String>emptySet());
+    }
 
-        buf.append(generateSelectClause())
-                .append(generateFromClause())
-                .append(generateWhereClause())
-                .append(generateOrderByClause());
+    private void bindConditionParameters(QueryPlan plan) {
+        String[] parameterNames = plan.getConditionParameterNames();
+        if (parameterNames.length == 0) return;
 
-        System.out.println("Query: " + buf.toString());
-        Query query = session.createQuery(buf.toString());
+        List<Object> values = new ArrayList<Object>(parameterNames.length);
+        collectConditionParameters(whereCondition(), null, values);
 
-        if (resultSetConfig != null && resultSetConfig.pageDefinition() != null) {
+        if (parametersToSet == null) parametersToSet = new HashMap<String, Object>();
+        for (int i = 0; i < parameterNames.length; i++) {
+            parametersToSet.put(parameterNames[i], values.get(i));
+        }
+    }
+
+    /**
+     * Visits the where conditions in the same order as they are rendered and collects the names and/or values of
+     * the parameters which are bound by the rendered conditions.
+     */
+    private void collectConditionParameters(AbstractWhereCondition condition, List<String> names, List<Object> values) {
+        if (condition instanceof SimpleWhereCondition) {
+            SimpleWhereCondition simpleWhereCondition = (SimpleWhereCondition) condition;
+            int chunkCount = inListChunkCount(simpleWhereCondition);
+            if (chunkCount > 0) {
+                for (int i = 0; i < chunkCount; i++) {
+                    if (names != null) names.add(ParameterLists.chunkParameterName(simpleWhereCondition.getParameterName(), i));
+                }
+                if (values != null) values.addAll(ParameterLists.chunks(simpleWhereCondition.getValue()));
+            } else if (simpleWhereCondition.getValue() != null) {
+                if (names != null) names.add(simpleWhereCondition.getParameterName());
+                if (values != null) values.add(simpleWhereCondition.getValue());
+            }
+        } else if (condition instanceof ComplexWhereCondition) {
+            for (AbstractWhereCondition subCondition : ((ComplexWhereCondition) condition).getWhereConditions()) {
+                collectConditionParameters(subCondition, names, values);
+            }
+        } else if (condition instanceof NotWhereCondition) {
+            collectConditionParameters(((NotWhereCondition) condition).getWhereCondition(), names, values);
+        } else if (condition instanceof BetweenWhereCondition) {
+            BetweenWhereCondition betweenWhereCondition = (BetweenWhereCondition) condition;
+            if (names != null) {
+                names.add(betweenWhereCondition.getLowerBoundParameterName());
+                names.add(betweenWhereCondition.getUpperBoundParameterName());
+            }
+            if (values != null) {
+                values.add(betweenWhereCondition.getLowerBoundValue());
+                values.add(betweenWhereCondition.getUpperBoundValue());
+            }
+        }
+    }
+
+    /**
+     * Creates the main query in the given session. If the query uses id filters (see {@link #useIdFilterTable(int)}),
+     * their values are inserted right away and stay in the database until {@link #releaseIdFilters()} is called.
+     */
+    public Query generateMainQuery(Session session) {
+        QueryPlan plan = getQueryPlan();
+        return createMainQuery(session, plan, generatedIdFilterKeys(session, plan));
+    }
+
+    private Query createMainQuery(SharedSessionContract session, QueryPlan plan, Map<String, String> idFilterKeys) {
+        Query query = createUntransformedMainQuery(session, plan, idFilterKeys);
+        ResultTransformer transformer = createResultTransformer();
+        if (transformer != null) query.setResultTransformer(transformer);
+        return query;
+    }
+
+    private Query createUntransformedMainQuery(SharedSessionContract session, QueryPlan plan, Map<String, String> idFilterKeys) {
+        if (log.isDebugEnabled()) log.debug(String.format("Query: %s", plan.getMainQuery()));
+        Query query = session.createQuery(plan.getMainQuery());
+
+        if (keysetPage() != null) {
+            query.setMaxResults(keysetPage().pageSize);
+        } else if (resultSetConfig != null && resultSetConfig.pageDefinition() != null) {
             query.setFirstResult(resultSetConfig.pageDefinition().pageStart);
             query.setMaxResults(resultSetConfig.pageDefinition().pageSize);
         }
 
         if (parametersToSet != null) {
             for (Map.Entry<String, Object> paramDef : parametersToSet.entrySet()) {
+                setParameterInternal(query, plan, idFilterKeys, paramDef);
+            }
+        }
+
+        if (keysetParametersToSet != null) {
+            for (Map.Entry<String, Object> paramDef : keysetParametersToSet.entrySet()) {
                 setParameterInternal(query, paramDef);
             }
         }
 
-        if (resultSetConfig.propertiesToFetch() != null && !resultSetConfig.propertiesToFetch().isEmpty())
-            query.setResultTransformer(AliasToBeanCustomTransformer.build(targetEntityClass).usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE).setClassReplacements(replacements));
+        // the relevance score is a part of the order by clause, so its parameters are bound only in the main query
+        if (isRanked()) {
+            for (Map.Entry<String, Object> paramDef : rankingParameters().entrySet()) {
+                setParameterInternal(query, paramDef);
+            }
+        }
 
         return query;
     }
 
+    private ResultTransformer createResultTransformer() {
+        if (resultSetConfig.propertiesToFetch() != null && !resultSetConfig.propertiesToFetch().isEmpty()) {
+            if (constructorProjection)
+                return AliasToConstructorTransformer.build(targetEntityClass).usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE);
+            return AliasToBeanCustomTransformer.build(targetEntityClass).usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE).setClassReplacements(replacements);
+        }
+        return null;
+    }
+
+    /**
+     * Binds the given parameter. An id filter parameter is bound to the key under which its values were inserted
+     * into the id filter table.
+     */
+    private void setParameterInternal(Query query, QueryPlan plan, Map<String, String> idFilterKeys, Map.Entry<String, Object> paramDef) {
+        if (plan.isIdFilterParameter(paramDef.getKey())) {
+            query.setParameter(paramDef.getKey(), idFilterKeys.get(paramDef.getKey()));
+        } else {
+            setParameterInternal(query, paramDef);
+        }
+    }
+
+    /**
+     * Inserts the values of the id filter parameters of the given plan into the id filter table in the given
+     * session and returns the keys of the inserted values by the parameter names.
+     */
+    private Map<String, String> insertIdFilters(SharedSessionContract session, QueryPlan plan) {
+        if (!plan.hasIdFilterParameters()) return Collections.emptyMap();
+
+        Map<String, String> idFilterKeys = new HashMap<String, String>();
+        try {
+            for (Map.Entry<String, Object> paramDef : parametersToSet.entrySet()) {
+                if (plan.isIdFilterParameter(paramDef.getKey()))
+                    idFilterKeys.put(paramDef.getKey(), IdFilterTable.insert(session, ParameterLists.toList(paramDef.getValue())));
+            }
+        } catch (RuntimeException e) {
+            deleteIdFilters(session, idFilterKeys);
+            throw e;
+        }
+        return idFilterKeys;
+    }
+
+    private static void deleteIdFilters(SharedSessionContract session, Map<String, String> idFilterKeys) {
+        for (String key : idFilterKeys.values()) {
+            IdFilterTable.delete(session, key);
+        }
+    }
+
+    /**
+     * Returns the keys of the id filters inserted in the given session for the generated queries, inserting them
+     * on the first call, so that the generated main and count queries share them.
+     */
+    private Map<String, String> generatedIdFilterKeys(SharedSessionContract session, QueryPlan plan) {
+        if (!plan.hasIdFilterParameters()) return Collections.emptyMap();
+
+        synchronized (generatedIdFilterKeys) {
+            Map<String, String> idFilterKeys = generatedIdFilterKeys.get(session);
+            if (idFilterKeys == null) {
+                idFilterKeys = insertIdFilters(session, plan);
+                generatedIdFilterKeys.put(session, idFilterKeys);
+            }
+            return idFilterKeys;
+        }
+    }
+
+    /**
+     * Deletes the values of the id filters inserted for the queries returned by {@link #generateMainQuery(Session)}
+     * and {@link #generateCountQuery(Session)}, see {@link #useIdFilterTable(int)}. The sessions in which the queries
+     * were created must still be open.
+     */
+    public void releaseIdFilters() {
+        synchronized (generatedIdFilterKeys) {
+            for (Iterator<Map.Entry<SharedSessionContract, Map<String, String>>> it = generatedIdFilterKeys.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<SharedSessionContract, Map<String, String>> entry = it.next();
+                deleteIdFilters(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Binds the given parameter. Non-empty lists are padded, see {@link ParameterLists}.
+     */
     private void setParameterInternal(Query query, Map.Entry<String, Object> paramDef) {
         if (paramDef.getValue() != null && paramDef.getValue() instanceof Collection) {
             if (((Collection) paramDef.getValue()).isEmpty()) {
                 query.setParameterList(paramDef.getKey(), new Object[]{null});
             } else {
-                query.setParameterList(paramDef.getKey(), (Collection) paramDef.getValue());
+                query.setParameterList(paramDef.getKey(), ParameterLists.pad((Collection) paramDef.getValue()));
             }
         } else if (paramDef.getValue() != null && paramDef.getValue().getClass().isArray()) {
             if (Array.getLength(paramDef.getValue()) == 0) {
                 query.setParameterList(paramDef.getKey(), new Object[]{null});
             } else {
-                query.setParameterList(paramDef.getKey(), (Object[]) paramDef.getValue());
+                query.setParameterList(paramDef.getKey(), ParameterLists.pad((Object[]) paramDef.getValue()));
             }
         } else {
             query.setParameter(paramDef.getKey(), paramDef.getValue());
         }
     }
 
-    public Query generateCountQuery(Session session) {
-        initializePropertyExpressions();
-        StringBuilder buf = new StringBuilder();
+    /**
+     * Executes the main query and, if a query listener is registered, reports its execution and transformation time.
+     */
+    private List<T> listMainQuery(SharedSessionContract session, QueryPlan plan, Map<String, String> idFilterKeys) {
+        if (!isListened()) return createMainQuery(session, plan, idFilterKeys).list();
+
+        long start = System.nanoTime();
+        Query query = createUntransformedMainQuery(session, plan, idFilterKeys);
+        ResultTransformer transformer = createResultTransformer();
+        TimedResultTransformer timedTransformer = transformer != null ? new TimedResultTransformer(transformer) : null;
+        if (timedTransformer != null) query.setResultTransformer(timedTransformer);
+        List<T> list = query.list();
+        queryListener.mainQueryExecuted(executionContext(plan), System.nanoTime() - start, list.size(),
+                timedTransformer != null ? timedTransformer.getNanos() : 0L);
+        return list;
+    }
 
-        buf.append("select count(*) ")
-                .append(generateFromClause())
-                .append(generateWhereClause());
+    /**
+     * Creates the count query in the given session. If the query uses id filters (see {@link #useIdFilterTable(int)}),
+     * their values are inserted right away - or reused from {@link #generateMainQuery(Session)} called with the same
+     * session - and stay in the database until {@link #releaseIdFilters()} is called.
+     */
+    public Query generateCountQuery(Session session) {
+        QueryPlan plan = getQueryPlan();
+        return createCountQuery(session, plan, generatedIdFilterKeys(session, plan));
+    }
 
-        Query query = session.createQuery(buf.toString());
+    private Query createCountQuery(SharedSessionContract session, QueryPlan plan, Map<String, String> idFilterKeys) {
+        Query query = session.createQuery(plan.getCountQuery());
 
         if (parametersToSet != null) {
             for (Map.Entry<String, Object> paramDef : parametersToSet.entrySet()) {
-                setParameterInternal(query, paramDef);
+                setParameterInternal(query, plan, idFilterKeys, paramDef);
             }
         }
 
         return query;
     }
 
+    private int executeCountQuery(SharedSessionContract session, QueryPlan plan, Map<String, String> idFilterKeys) {
+        long start = isListened() ? System.nanoTime() : 0L;
+        int totalSize = ((Number) createCountQuery(session, plan, idFilterKeys).uniqueResult()).intValue();
+        if (isListened()) queryListener.countQueryExecuted(executionContext(plan), System.nanoTime() - start);
+        return totalSize;
+    }
+
     public PaginationAwareListWrapper<T> generatePaginatedList(Session session) {
-        initializePropertyExpressions();
-        Query mainQuery = generateMainQuery(session);
+        if (resultCache == null) return generateUncachedPaginatedList(session);
+
+        checkResultCacheEntityClasses(session.getSessionFactory());
+        ResultCache.Key key = new ResultCache.Key(targetEntityClass, resultSetConfig, getResultShape(), parametersToSet);
+        PaginationAwareListWrapper<T> result = resultCache.get(key);
+        if (result == null) {
+            long[] generations = resultCache.generations(resultCacheEntityClasses);
+            result = generateUncachedPaginatedList(session);
+            resultCache.put(key, resultCacheEntityClasses, generations, result);
+        }
+        return result;
+    }
 
-        if (resultSetConfig != null && resultSetConfig.pageDefinition() != null) {
-            Query countQuery = generateCountQuery(session);
-            int totalSize = ((Number) countQuery.uniqueResult()).intValue();
-            return new PaginationAwareListWrapper<T>(mainQuery.list(), resultSetConfig.pageDefinition().pageStart, totalSize);
-        } else {
-            List<T> list = mainQuery.list();
-            return new PaginationAwareListWrapper<T>(list, 0, list.size());
+    private PaginationAwareListWrapper<T> generateUncachedPaginatedList(Session session) {
+        if (queryDiagnostics == null) return executePaginatedList(session, getQueryPlan());
+
+        QueryListener listener = queryListener;
+        QueryDiagnostics.Recorder recorder = queryDiagnostics.startRecording(session.getSessionFactory(), listener);
+        queryListener = recorder;
+        try {
+            return executePaginatedList(session, getQueryPlan());
+        } finally {
+            queryListener = listener;
+            recorder.finish();
+        }
+    }
+
+    private PaginationAwareListWrapper<T> executePaginatedList(SharedSessionContract session, QueryPlan plan) {
+        Map<String, String> idFilterKeys = insertIdFilters(session, plan);
+        try {
+            if (resultSetConfig != null && resultSetConfig.pageDefinition() != null) {
+                List<T> list = listMainQuery(session, plan, idFilterKeys);
+                int totalSize = countTotalSize(session, plan, idFilterKeys, resultSetConfig.pageDefinition(), list.size());
+                return new PaginationAwareListWrapper<T>(list, resultSetConfig.pageDefinition().pageStart, totalSize, nextKeysetPage(list));
+            } else {
+                List<T> list = listMainQuery(session, plan, idFilterKeys);
+                return new PaginationAwareListWrapper<T>(list, 0, list.size());
+            }
+        } finally {
+            deleteIdFilters(session, idFilterKeys);
+        }
+    }
+
+    private List<T> executePlainList(SharedSessionContract session, QueryPlan plan) {
+        Map<String, String> idFilterKeys = insertIdFilters(session, plan);
+        try {
+            return listMainQuery(session, plan, idFilterKeys);
+        } finally {
+            deleteIdFilters(session, idFilterKeys);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #generatePaginatedList(Session)}. The main query and the count query are
+     * executed concurrently by the given executor, each one in its own stateless session opened from the given
+     * session factory. Therefore, the fetched objects are detached - this mode is intended for projections.
+     * <p/>
+     * When the count query is not needed (no pagination, {@link CountMode#ESTIMATED} mode or the total size is
+     * already cached), only a single task is submitted. So it is when the query uses id filters, because their values
+     * are inserted once and are visible only in the session which inserted them.
+     * <p/>
+     * Unlike {@link #generatePaginatedList(Session)}, this method neither uses the result cache (see
+     * {@link #useResultCache(ResultCache, Class[])}) nor records the executions with the diagnostics (see
+     * {@link #useDiagnostics(QueryDiagnostics)}) - the queries are always executed, and only the query listener is
+     * notified, from the threads of the executor.
+     */
+    public Future<PaginationAwareListWrapper<T>> generatePaginatedListAsync(final SessionFactory sessionFactory, ExecutorService executor) {
+        final QueryPlan plan = getQueryPlan();
+        final PageDefinition page = resultSetConfig != null ? resultSetConfig.pageDefinition() : null;
+
+        if (page == null || countMode == CountMode.ESTIMATED || plan.hasIdFilterParameters()
+                || (totalSizeCache != null && totalSizeCache.get(plan.getCountQuery(), parametersToSet) != null)) {
+            return executor.submit(new StatelessSessionTask<PaginationAwareListWrapper<T>>(sessionFactory, plan) {
+                @Override
+                protected PaginationAwareListWrapper<T> call(StatelessSession session) {
+                    return executePaginatedList(session, plan);
+                }
+            });
+        }
+
+        Future<List<T>> mainFuture = executor.submit(new StatelessSessionTask<List<T>>(sessionFactory, plan) {
+            @Override
+            protected List<T> call(StatelessSession session) {
+                return listMainQuery(session, plan, Collections.<String, String>emptyMap());
+            }
+        });
+        Future<Integer> countFuture = executor.submit(new StatelessSessionTask<Integer>(sessionFactory, plan) {
+            @Override
+            protected Integer call(StatelessSession session) {
+                int totalSize = executeCountQuery(session, plan, Collections.<String, String>emptyMap());
+                if (totalSizeCache != null) totalSizeCache.put(plan.getCountQuery(), parametersToSet, totalSize);
+                return totalSize;
+            }
+        });
+
+        return new PaginatedListFuture(mainFuture, countFuture, page);
+    }
+
+    /**
+     * Returns the total size for the page of the given size. The count query is skipped when the page is not full,
+     * because then it is the last page, and, in the {@link CountMode#ESTIMATED} mode, also when the page is full.
+     * Otherwise the total size is taken from the total size cache or computed with the count query.
+     */
+    private int countTotalSize(SharedSessionContract session, QueryPlan plan, Map<String, String> idFilterKeys, PageDefinition page, int size) {
+        if (isLastPage(page, size)) return page.pageStart + size;
+        if (countMode == CountMode.ESTIMATED && size > 0) return page.pageStart + size + 1;
+
+        Integer totalSize = totalSizeCache != null ? totalSizeCache.get(plan.getCountQuery(), parametersToSet) : null;
+        if (totalSize == null) {
+            totalSize = executeCountQuery(session, plan, idFilterKeys);
+            if (totalSizeCache != null) totalSizeCache.put(plan.getCountQuery(), parametersToSet, totalSize);
+        }
+        return totalSize;
+    }
+
+    public ScrollableResultsIterator<T> generateIterator(Session session) {
+        return generateIterator(session, DEFAULT_SCROLL_FETCH_SIZE, DEFAULT_SCROLL_FETCH_SIZE);
+    }
+
+    /**
+     * Executes the main query with forward-only scrollable results, so that the rows are fetched from the database
+     * in chunks of the given size and transformed one at a time, as they are iterated. The session is cleared after
+     * every {@code clearInterval} rows, therefore the memory used does not depend on the size of the result. The
+     * returned iterator should be closed if it is not iterated to the end - closing it also deletes the values of
+     * the id filters inserted for the query, see {@link #useIdFilterTable(int)}.
+     *
+     * @param session       a session
+     * @param fetchSize     JDBC fetch size
+     * @param clearInterval the number of rows after which the session is cleared, or 0 if it should not be cleared
+     * @return an iterator over the results
+     */
+    public ScrollableResultsIterator<T> generateIterator(final Session session, int fetchSize, int clearInterval) {
+        QueryPlan plan = getQueryPlan();
+        final Map<String, String> idFilterKeys = insertIdFilters(session, plan);
+        try {
+            Query query = createUntransformedMainQuery(session, plan, idFilterKeys);
+            query.setFetchSize(fetchSize);
+            String[] aliases = query.getReturnAliases();
+            return new ScrollableResultsIterator<T>(query.scroll(ScrollMode.FORWARD_ONLY), createResultTransformer(), aliases, session, clearInterval) {
+                @Override
+                protected void afterClose() {
+                    deleteIdFilters(session, idFilterKeys);
+                }
+            };
+        } catch (RuntimeException e) {
+            deleteIdFilters(session, idFilterKeys);
+            throw e;
         }
     }
 
+    private static boolean isLastPage(PageDefinition page, int size) {
+        return size < page.pageSize && (size > 0 || page.pageStart == 0);
+    }
+
     public List<T> generatePlainList(Session session) {
-        initializePropertyExpressions();
-        Query mainQuery = generateMainQuery(session);
-        return mainQuery.list();
+        if (queryDiagnostics == null) return executePlainList(session, getQueryPlan());
+
+        QueryListener listener = queryListener;
+        QueryDiagnostics.Recorder recorder = queryDiagnostics.startRecording(session.getSessionFactory(), listener);
+        queryListener = recorder;
+        try {
+            return executePlainList(session, getQueryPlan());
+        } finally {
+            queryListener = listener;
+            recorder.finish();
+        }
+    }
+
+    String[] getParameterNames() {
+        Set<String> names = new TreeSet<String>();
+        if (parametersToSet != null) names.addAll(parametersToSet.keySet());
+        if (keysetParametersToSet != null) names.addAll(keysetParametersToSet.keySet());
+        return names.toArray(new String[names.size()]);
     }
 
     public QueryBuilder<T> setParameter(String parameterName, Object parameterValue) {
@@ -503,5 +1555,119 @@ public class QueryBuilder<T> {
         return this;
     }
 
+    private static class KeysetColumn {
+        private final String property;
+        private final boolean ascending;
+        private final boolean transform;
 
+        private KeysetColumn(Order order, boolean transform) {
+            String representation = order.toString();
+            this.property = representation.substring(0, representation.lastIndexOf(' '));
+            this.ascending = representation.endsWith(" asc");
+            this.transform = transform;
+        }
+
+        @Override
+        public String toString() {
+            return property + (ascending ? " asc" : " desc");
+        }
+    }
+
+    /**
+     * A task executed in its own stateless session. If the plan uses id filters, the task is executed in
+     * a transaction, so that the inserted values do not leave any locks on the pooled connection.
+     */
+    private static abstract class StatelessSessionTask<V> implements Callable<V> {
+        private final SessionFactory sessionFactory;
+        private final QueryPlan plan;
+
+        private StatelessSessionTask(SessionFactory sessionFactory, QueryPlan plan) {
+            this.sessionFactory = sessionFactory;
+            this.plan = plan;
+        }
+
+        protected abstract V call(StatelessSession session);
+
+        @Override
+        public V call() {
+            StatelessSession session = sessionFactory.openStatelessSession();
+            Transaction transaction = plan.hasIdFilterParameters() ? session.beginTransaction() : null;
+            try {
+                V result = call(session);
+                if (transaction != null) transaction.commit();
+                return result;
+            } finally {
+                if (transaction != null && transaction.isActive()) transaction.rollback();
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Combines the concurrently executed main and count queries. If the page turns out to be the last one, the count
+     * query is cancelled and its result is not awaited.
+     */
+    private class PaginatedListFuture implements Future<PaginationAwareListWrapper<T>> {
+        private final Future<List<T>> mainFuture;
+        private final Future<Integer> countFuture;
+        private final PageDefinition page;
+
+        private PaginatedListFuture(Future<List<T>> mainFuture, Future<Integer> countFuture, PageDefinition page) {
+            this.mainFuture = mainFuture;
+            this.countFuture = countFuture;
+            this.page = page;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean mainCancelled = mainFuture.cancel(mayInterruptIfRunning);
+            boolean countCancelled = countFuture.cancel(mayInterruptIfRunning);
+            return mainCancelled || countCancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mainFuture.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return mainFuture.isDone() && (countFuture.isDone() || isMainResultLastPage());
+        }
+
+        @Override
+        public PaginationAwareListWrapper<T> get() throws InterruptedException, ExecutionException {
+            List<T> list = mainFuture.get();
+            int totalSize;
+            if (isLastPage(page, list.size())) {
+                countFuture.cancel(true);
+                totalSize = page.pageStart + list.size();
+            } else {
+                totalSize = countFuture.get();
+            }
+            return new PaginationAwareListWrapper<T>(list, page.pageStart, totalSize, nextKeysetPage(list));
+        }
+
+        @Override
+        public PaginationAwareListWrapper<T> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            List<T> list = mainFuture.get(timeout, unit);
+            int totalSize;
+            if (isLastPage(page, list.size())) {
+                countFuture.cancel(true);
+                totalSize = page.pageStart + list.size();
+            } else {
+                totalSize = countFuture.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            return new PaginationAwareListWrapper<T>(list, page.pageStart, totalSize, nextKeysetPage(list));
+        }
+
+        private boolean isMainResultLastPage() {
+            try {
+                return !mainFuture.isCancelled() && isLastPage(page, mainFuture.get().size());
+            } catch (Exception e) {
+                return true;
+            }
+        }
+    }
 }
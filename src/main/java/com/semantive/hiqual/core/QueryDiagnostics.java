@@ -0,0 +1,296 @@
+package com.semantive.hiqual.core;
+
+import com.google.common.collect.EvictingQueue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in diagnostics of the executions of {@link QueryBuilder#generatePaginatedList(org.hibernate.Session)} and
+ * {@link QueryBuilder#generatePlainList(org.hibernate.Session)}. For each execution the wall time of the consecutive
+ * phases is recorded, and - if the Hibernate statistics are enabled - the number of entities loaded and fetched and
+ * the number of statements prepared during the execution. An execution is reported when it is slower than
+ * the slow query threshold, or when it loads at least as many entities as the entity load threshold, which usually
+ * means that the fetched properties trigger lazy loading one by one (N+1 selects).
+ * <p/>
+ * Reported executions are logged and kept in a bounded buffer, which holds only the most recent ones and can be
+ * dumped with the JMX bean registered by {@link #registerMBean(String)}. Note that the Hibernate statistics are
+ * global for the session factory, so the entity counters include the loads done concurrently by other threads.
+ * <p/>
+ * A single instance is meant to be shared by all query builders of the application.
+ * @see QueryBuilder#useDiagnostics(QueryDiagnostics)
+ */
+public class QueryDiagnostics implements QueryDiagnosticsMBean {
+
+    private final static Log log = LogFactory.getLog(QueryDiagnostics.class);
+
+    public static final int DEFAULT_CAPACITY = 100;
+
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS = 1000;
+
+    public static final long DEFAULT_ENTITY_LOAD_THRESHOLD = 100;
+
+    private final int capacity;
+
+    private final EvictingQueue<Record> records;
+
+    private final AtomicLong executionCount = new AtomicLong();
+
+    private final AtomicLong reportedCount = new AtomicLong();
+
+    private volatile long slowQueryThresholdMillis = DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS;
+
+    private volatile long entityLoadThreshold = DEFAULT_ENTITY_LOAD_THRESHOLD;
+
+    public QueryDiagnostics() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public QueryDiagnostics(int capacity) {
+        this.capacity = capacity;
+        this.records = EvictingQueue.create(capacity);
+    }
+
+    public QueryDiagnostics setThresholds(long slowQueryThresholdMillis, long entityLoadThreshold) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+        this.entityLoadThreshold = entityLoadThreshold;
+        return this;
+    }
+
+    /**
+     * Registers this object in the platform MBean server under the given name, for example
+     * {@code com.semantive.hiqual:type=QueryDiagnostics}.
+     */
+    public QueryDiagnostics registerMBean(String objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(objectName));
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Cannot register query diagnostics MBean %s", objectName), e);
+        }
+        return this;
+    }
+
+    /**
+     * Starts recording a single execution. The returned recorder forwards all notifications to the given listener.
+     */
+    Recorder startRecording(SessionFactory sessionFactory, QueryListener delegate) {
+        Statistics statistics = sessionFactory.getStatistics();
+        return new Recorder(statistics.isStatisticsEnabled() ? statistics : null, delegate);
+    }
+
+    /**
+     * Returns the reasons to report an execution with the given measurements, or null if it is not reported.
+     */
+    private String[] reportReasons(long totalNanos, long mainNanos, long countNanos, long entityLoads, long entityFetches) {
+        executionCount.incrementAndGet();
+
+        List<String> reasons = new ArrayList<String>(3);
+        if (totalNanos >= TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis)) {
+            reasons.add("slow query");
+            if (countNanos > mainNanos) reasons.add("count query slower than main query");
+        }
+        if (entityLoads >= 0 && entityLoads + entityFetches >= entityLoadThreshold) {
+            reasons.add("possible N+1 selects");
+        }
+        return reasons.isEmpty() ? null : reasons.toArray(new String[reasons.size()]);
+    }
+
+    private void report(Record record) {
+        reportedCount.incrementAndGet();
+        synchronized (records) {
+            records.add(record);
+        }
+        if (log.isWarnEnabled()) log.warn(record.toString());
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdMillis;
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+    }
+
+    @Override
+    public long getEntityLoadThreshold() {
+        return entityLoadThreshold;
+    }
+
+    @Override
+    public void setEntityLoadThreshold(long entityLoadThreshold) {
+        this.entityLoadThreshold = entityLoadThreshold;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    @Override
+    public long getReportedCount() {
+        return reportedCount.get();
+    }
+
+    @Override
+    public String[] dump() {
+        List<Record> snapshot = getRecords();
+        String[] result = new String[snapshot.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = snapshot.get(i).toString();
+        }
+        return result;
+    }
+
+    public List<Record> getRecords() {
+        synchronized (records) {
+            return new ArrayList<Record>(records);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (records) {
+            records.clear();
+        }
+    }
+
+    /**
+     * A reported execution. Entity counters are -1 if the Hibernate statistics were disabled.
+     */
+    public static class Record {
+        public final long timestamp;
+        public final Class<?> targetEntityClass;
+        public final String shapeFingerprint;
+        public final String mainQuery;
+        public final String countQuery;
+        public final String[] parameterNames;
+        public final long totalNanos;
+        public final long planNanos;
+        public final long mainNanos;
+        public final long transformationNanos;
+        public final long countNanos;
+        public final int rows;
+        public final long entityLoads;
+        public final long entityFetches;
+        public final long statements;
+        private final String[] reasons;
+
+        private Record(QueryExecutionContext context, String[] reasons, long totalNanos, long planNanos, long mainNanos, long transformationNanos,
+                       long countNanos, int rows, long entityLoads, long entityFetches, long statements) {
+            this.timestamp = System.currentTimeMillis();
+            this.targetEntityClass = context.getTargetEntityClass();
+            this.shapeFingerprint = context.getShapeFingerprint();
+            this.mainQuery = context.getQueryPlan().getMainQuery();
+            this.countQuery = context.getQueryPlan().getCountQuery();
+            this.parameterNames = context.getParameterNames();
+            this.totalNanos = totalNanos;
+            this.planNanos = planNanos;
+            this.mainNanos = mainNanos;
+            this.transformationNanos = transformationNanos;
+            this.countNanos = countNanos;
+            this.rows = rows;
+            this.entityLoads = entityLoads;
+            this.entityFetches = entityFetches;
+            this.statements = statements;
+            this.reasons = reasons;
+        }
+
+        public String[] getReasons() {
+            return reasons.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s for %s [shape %s]: total %d ms, plan %d ms, main query %d ms (transformation %d ms, %d rows), " +
+                    "count query %d ms, entity loads %d, entity fetches %d, statements %d, parameters %s, query: %s",
+                    Arrays.toString(reasons), targetEntityClass.getName(), shapeFingerprint, toMillis(totalNanos),
+                    toMillis(planNanos), toMillis(mainNanos), toMillis(transformationNanos), rows, toMillis(countNanos),
+                    entityLoads, entityFetches, statements, Arrays.toString(parameterNames), mainQuery);
+        }
+
+        private static long toMillis(long nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    /**
+     * Collects the timings of a single execution reported by {@link QueryBuilder} and forwards them to the listener
+     * which was registered in the query builder.
+     */
+    class Recorder implements QueryListener {
+        private final Statistics statistics;
+        private final QueryListener delegate;
+        private final long start;
+        private final long entityLoadsBefore;
+        private final long entityFetchesBefore;
+        private final long statementsBefore;
+        private QueryExecutionContext context;
+        private long planNanos;
+        private long mainNanos;
+        private long transformationNanos;
+        private long countNanos;
+        private int rows;
+
+        private Recorder(Statistics statistics, QueryListener delegate) {
+            this.statistics = statistics;
+            this.delegate = delegate;
+            this.entityLoadsBefore = statistics != null ? statistics.getEntityLoadCount() : -1;
+            this.entityFetchesBefore = statistics != null ? statistics.getEntityFetchCount() : -1;
+            this.statementsBefore = statistics != null ? statistics.getPrepareStatementCount() : -1;
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void queryPlanBuilt(QueryExecutionContext context, long nanos, boolean fromCache) {
+            this.context = context;
+            this.planNanos = nanos;
+            delegate.queryPlanBuilt(context, nanos, fromCache);
+        }
+
+        @Override
+        public void mainQueryExecuted(QueryExecutionContext context, long nanos, int rows, long transformationNanos) {
+            this.context = context;
+            this.mainNanos = nanos;
+            this.rows = rows;
+            this.transformationNanos = transformationNanos;
+            delegate.mainQueryExecuted(context, nanos, rows, transformationNanos);
+        }
+
+        @Override
+        public void countQueryExecuted(QueryExecutionContext context, long nanos) {
+            this.context = context;
+            this.countNanos = nanos;
+            delegate.countQueryExecuted(context, nanos);
+        }
+
+        void finish() {
+            long totalNanos = System.nanoTime() - start;
+            if (context == null) return;
+            long entityLoads = statistics != null ? statistics.getEntityLoadCount() - entityLoadsBefore : -1;
+            long entityFetches = statistics != null ? statistics.getEntityFetchCount() - entityFetchesBefore : -1;
+            long statements = statistics != null ? statistics.getPrepareStatementCount() - statementsBefore : -1;
+
+            // the record resolves the shape fingerprint and the parameter names, so it is built only when reported
+            String[] reasons = reportReasons(totalNanos, mainNanos, countNanos, entityLoads, entityFetches);
+            if (reasons == null) return;
+            report(new Record(context, reasons, totalNanos, planNanos, mainNanos, transformationNanos, countNanos, rows,
+                    entityLoads, entityFetches, statements));
+        }
+    }
+}
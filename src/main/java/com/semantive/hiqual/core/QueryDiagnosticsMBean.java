@@ -0,0 +1,28 @@
+package com.semantive.hiqual.core;
+
+/**
+ * JMX management interface of {@link QueryDiagnostics}.
+ */
+public interface QueryDiagnosticsMBean {
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long slowQueryThresholdMillis);
+
+    long getEntityLoadThreshold();
+
+    void setEntityLoadThreshold(long entityLoadThreshold);
+
+    int getCapacity();
+
+    long getExecutionCount();
+
+    long getReportedCount();
+
+    /**
+     * Returns the descriptions of the reported executions held in the buffer, from the oldest to the newest one.
+     */
+    String[] dump();
+
+    void clear();
+}
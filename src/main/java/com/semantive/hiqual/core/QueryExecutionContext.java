@@ -0,0 +1,47 @@
+package com.semantive.hiqual.core;
+
+/**
+ * Identifies a query reported to a {@link QueryListener}. The shape fingerprint is computed lazily, on the first
+ * call to {@link #getShapeFingerprint()}, so that listeners which do not use it do not pay for it.
+ */
+public class QueryExecutionContext {
+
+    private final Class<?> targetEntityClass;
+
+    private final QueryBuilder<?> queryBuilder;
+
+    private final QueryPlan queryPlan;
+
+    private volatile QueryShape queryShape;
+
+    QueryExecutionContext(Class<?> targetEntityClass, QueryBuilder<?> queryBuilder, QueryPlan queryPlan, QueryShape queryShape) {
+        this.targetEntityClass = targetEntityClass;
+        this.queryBuilder = queryBuilder;
+        this.queryPlan = queryPlan;
+        this.queryShape = queryShape;
+    }
+
+    public Class<?> getTargetEntityClass() {
+        return targetEntityClass;
+    }
+
+    public QueryPlan getQueryPlan() {
+        return queryPlan;
+    }
+
+    /**
+     * Returns the names of the parameters bound to the main query.
+     */
+    public String[] getParameterNames() {
+        return queryBuilder.getParameterNames();
+    }
+
+    public QueryShape getQueryShape() {
+        if (queryShape == null) queryShape = queryBuilder.getQueryShape();
+        return queryShape;
+    }
+
+    public String getShapeFingerprint() {
+        return getQueryShape().getFingerprint();
+    }
+}
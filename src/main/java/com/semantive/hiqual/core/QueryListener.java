@@ -0,0 +1,41 @@
+package com.semantive.hiqual.core;
+
+/**
+ * Receives timings of the consecutive phases of query generation and execution performed by {@link QueryBuilder}.
+ * Each notification carries a {@link QueryExecutionContext} which identifies the query by the target entity class
+ * and the query shape fingerprint, so that the timings can be fed into any metrics library as tagged timers.
+ * <p/>
+ * Listeners are invoked synchronously, from the thread which executes the query (which may be an executor thread
+ * for the asynchronous queries), therefore they should be fast and thread safe. Use {@link NoOpQueryListener} as
+ * a base class to implement only selected notifications.
+ * @see QueryBuilder#useQueryListener(QueryListener)
+ */
+public interface QueryListener {
+
+    /**
+     * Called when the query plan has been obtained.
+     *
+     * @param context   the query context
+     * @param nanos     the time spent on rendering HQL or on binding the parameters of a cached plan
+     * @param fromCache whether the plan was taken from the plan cache
+     */
+    void queryPlanBuilt(QueryExecutionContext context, long nanos, boolean fromCache);
+
+    /**
+     * Called when the main query has been executed and its results have been transformed.
+     *
+     * @param context             the query context
+     * @param nanos               the total execution time, including the transformation
+     * @param rows                the number of rows returned
+     * @param transformationNanos the time spent in the result transformer, or 0 if no transformer was used
+     */
+    void mainQueryExecuted(QueryExecutionContext context, long nanos, int rows, long transformationNanos);
+
+    /**
+     * Called when the count query has been executed. It is not called when the count query is skipped.
+     *
+     * @param context the query context
+     * @param nanos   the execution time
+     */
+    void countQueryExecuted(QueryExecutionContext context, long nanos);
+}
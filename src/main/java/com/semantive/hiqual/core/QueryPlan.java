@@ -0,0 +1,55 @@
+package com.semantive.hiqual.core;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A pre-rendered query: the main and the count HQL statements together with the binding plan for the parameters
+ * taken from the where conditions tree. The parameter names are listed in the order in which
+ * {@link QueryBuilder} visits the where conditions, so that on a cache hit only the values have to be collected.
+ */
+public class QueryPlan {
+
+    private final String mainQuery;
+
+    private final String countQuery;
+
+    private final String[] conditionParameterNames;
+
+    private final Set<String> idFilterParameterNames;
+
+    public QueryPlan(String mainQuery, String countQuery, String[] conditionParameterNames) {
+        this(mainQuery, countQuery, conditionParameterNames, Collections.<String>emptySet());
+    }
+
+    public QueryPlan(String mainQuery, String countQuery, String[] conditionParameterNames, Set<String> idFilterParameterNames) {
+        this.mainQuery = mainQuery;
+        this.countQuery = countQuery;
+        this.conditionParameterNames = conditionParameterNames;
+        this.idFilterParameterNames = idFilterParameterNames;
+    }
+
+    public String getMainQuery() {
+        return mainQuery;
+    }
+
+    public String getCountQuery() {
+        return countQuery;
+    }
+
+    public String[] getConditionParameterNames() {
+        return conditionParameterNames;
+    }
+
+    public boolean hasIdFilterParameters() {
+        return !idFilterParameterNames.isEmpty();
+    }
+
+    /**
+     * Returns whether the values of the given parameter are to be stored in the id filter table and the parameter
+     * is to be bound to the key of the stored filter.
+     */
+    public boolean isIdFilterParameter(String parameterName) {
+        return idFilterParameterNames.contains(parameterName);
+    }
+}
@@ -0,0 +1,45 @@
+package com.semantive.hiqual.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * A bounded, thread safe cache of {@link QueryPlan}s keyed by {@link QueryShape}. A single instance is meant to be
+ * shared by all query builders of the application (see {@link QueryBuilder#usePlanCache(QueryPlanCache)}), so that
+ * repeatedly executed queries of the same shape skip rendering HQL entirely and only bind parameter values.
+ */
+public class QueryPlanCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private final Cache<QueryShape, QueryPlan> plans;
+
+    public QueryPlanCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public QueryPlanCache(long maximumSize) {
+        this.plans = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    public QueryPlan get(QueryShape shape) {
+        return plans.getIfPresent(shape);
+    }
+
+    public void put(QueryShape shape, QueryPlan plan) {
+        plans.put(shape, plan);
+    }
+
+    public long size() {
+        return plans.size();
+    }
+
+    public CacheStats stats() {
+        return plans.stats();
+    }
+
+    public void invalidateAll() {
+        plans.invalidateAll();
+    }
+}
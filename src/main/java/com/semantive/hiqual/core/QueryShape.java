@@ -0,0 +1,77 @@
+package com.semantive.hiqual.core;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * An immutable key which describes everything that influences the HQL text generated by {@link QueryBuilder}, but
+ * not the values of the bound parameters. Two query builders with equal shapes render exactly the same HQL, so the
+ * shape can be used as a key for caching the compiled queries.
+ */
+public final class QueryShape {
+
+    private final String key;
+
+    private final int hash;
+
+    private QueryShape(String key) {
+        this.key = key;
+        this.hash = key.hashCode();
+    }
+
+    /**
+     * Returns a short, stable identifier of this shape, which is suitable for logging and tagging metrics.
+     *
+     * @return a hexadecimal fingerprint of the shape
+     */
+    public String getFingerprint() {
+        return Long.toHexString(Hashing.murmur3_128().hashUnencodedChars(key).padToLong());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        QueryShape that = (QueryShape) o;
+        return hash == that.hash && key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return key.replace(Builder.SEPARATOR, ' ');
+    }
+
+    /**
+     * Builder which assembles a shape from the named components.
+     */
+    public static class Builder {
+
+        private static final char SEPARATOR = '\u0000';
+
+        private final StringBuilder buf = new StringBuilder(256);
+
+        public Builder append(String name, Object value) {
+            buf.append(name).append('=').append(value).append(SEPARATOR);
+            return this;
+        }
+
+        public Builder open(String name) {
+            buf.append(name).append('(');
+            return this;
+        }
+
+        public Builder close() {
+            buf.append(')').append(SEPARATOR);
+            return this;
+        }
+
+        public QueryShape build() {
+            return new QueryShape(buf.toString());
+        }
+    }
+}
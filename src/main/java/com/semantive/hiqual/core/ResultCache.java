@@ -0,0 +1,223 @@
+package com.semantive.hiqual.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the paginated lists generated by {@link QueryBuilder#generatePaginatedList(org.hibernate.Session)},
+ * keyed by the target class, the result set config, the query shape extended with the class replacements, the
+ * projection mode and the count mode, and the values of the parameters set directly on the query builder. It is
+ * meant for the dictionaries and lookups which are queried repeatedly with identical configs.
+ * <p/>
+ * Each entry depends on a set of entity classes. When an entity of such a class (or of its subclass) is inserted,
+ * updated or deleted, the dependent entries become stale - for that the cache has to be registered as a Hibernate
+ * event listener with {@link #registerListeners(SessionFactory)}. The invalidation is based on a generation counter
+ * kept for each entity class, so it costs a single increment per event regardless of the number of entries, and
+ * the results of queries which were running while an entity changed are never served. Bulk HQL updates do not
+ * fire events - call {@link #invalidate(Class)} after them.
+ * <p/>
+ * The cache is bounded by the total number of cached rows (each entry weighs the number of its rows plus one) and
+ * the entries expire after the configured time. The cached objects are shared by all the callers, so the cache
+ * should be used with projections which are not modified.
+ * @see QueryBuilder#useResultCache(ResultCache, Class[])
+ */
+public class ResultCache implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long DEFAULT_MAXIMUM_ROWS = 100000;
+
+    private final Cache<Key, Entry> entries;
+
+    private final ConcurrentMap<Class<?>, AtomicLong> generations = new ConcurrentHashMap<Class<?>, AtomicLong>();
+
+    public ResultCache(long timeToLive, TimeUnit unit) {
+        this(DEFAULT_MAXIMUM_ROWS, timeToLive, unit);
+    }
+
+    public ResultCache(long maximumRows, long timeToLive, TimeUnit unit) {
+        this.entries = CacheBuilder.newBuilder()
+                .maximumWeight(maximumRows)
+                .weigher(new Weigher<Key, Entry>() {
+                    @Override
+                    public int weigh(Key key, Entry entry) {
+                        return entry.result.size() + 1;
+                    }
+                })
+                .expireAfterWrite(timeToLive, unit)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Registers this cache as the post insert, update and delete listener (both in-transaction and post-commit) of
+     * the given session factory.
+     */
+    public ResultCache registerListeners(SessionFactory sessionFactory) {
+        EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+        return this;
+    }
+
+    /**
+     * Returns the current generations of the given entity classes. They have to be taken before the query is
+     * executed and passed to {@link #put(Key, Class[], long[], PaginationAwareListWrapper)}.
+     */
+    long[] generations(Class<?>[] entityClasses) {
+        long[] result = new long[entityClasses.length];
+        for (int i = 0; i < entityClasses.length; i++) {
+            result[i] = generation(entityClasses[i]).get();
+        }
+        return result;
+    }
+
+    <T> PaginationAwareListWrapper<T> get(Key key) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) return null;
+        if (!Arrays.equals(entry.generations, generations(entry.entityClasses))) {
+            entries.invalidate(key);
+            return null;
+        }
+
+        // the key includes the target class, so the cached elements are of the requested type
+        @SuppressWarnings("unchecked")
+        PaginationAwareListWrapper<T> result = (PaginationAwareListWrapper<T>) entry.result;
+        return new PaginationAwareListWrapper<T>(new ArrayList<T>(result), result.offset(), result.totalSize(), result.nextPage());
+    }
+
+    void put(Key key, Class<?>[] entityClasses, long[] generations, PaginationAwareListWrapper<?> result) {
+        if (!Arrays.equals(generations, generations(entityClasses))) return;
+        entries.put(key, new Entry(entityClasses, generations,
+                new PaginationAwareListWrapper<Object>(new ArrayList<Object>(result), result.offset(), result.totalSize(), result.nextPage())));
+    }
+
+    /**
+     * Makes the entries which depend on the given entity class or its superclasses stale.
+     */
+    public void invalidate(Class<?> entityClass) {
+        for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            generation(clazz).incrementAndGet();
+        }
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public CacheStats stats() {
+        return entries.stats();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        invalidate(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        invalidate(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        invalidate(event.getPersister().getMappedClass());
+    }
+
+    private AtomicLong generation(Class<?> entityClass) {
+        AtomicLong generation = generations.get(entityClass);
+        if (generation == null) {
+            AtomicLong newGeneration = new AtomicLong();
+            generation = generations.putIfAbsent(entityClass, newGeneration);
+            if (generation == null) generation = newGeneration;
+        }
+        return generation;
+    }
+
+    private static class Entry {
+        private final Class<?>[] entityClasses;
+        private final long[] generations;
+        private final PaginationAwareListWrapper<?> result;
+
+        private Entry(Class<?>[] entityClasses, long[] generations, PaginationAwareListWrapper<?> result) {
+            this.entityClasses = entityClasses;
+            this.generations = generations;
+            this.result = result;
+        }
+    }
+
+    /**
+     * The complete key of a cached result.
+     */
+    static class Key {
+        private final Class<?> targetClass;
+        private final IResultSetConfig config;
+        private final QueryShape shape;
+        private final Map<String, Object> parameters;
+        private final int hash;
+
+        Key(Class<?> targetClass, IResultSetConfig config, QueryShape shape, Map<String, Object> parameters) {
+            this.targetClass = targetClass;
+            this.config = config;
+            this.shape = shape;
+            this.parameters = new HashMap<String, Object>();
+            if (parameters != null) for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                Object value = parameter.getValue();
+                // arrays do not implement equals and hashCode
+                this.parameters.put(parameter.getKey(), value instanceof Object[] ? Arrays.asList((Object[]) value) : value);
+            }
+
+            int result = targetClass.hashCode();
+            result = 31 * result + (config != null ? config.hashCode() : 0);
+            result = 31 * result + shape.hashCode();
+            result = 31 * result + this.parameters.hashCode();
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+            return hash == that.hash && targetClass.equals(that.targetClass) && shape.equals(that.shape)
+                    && (config != null ? config.equals(that.config) : that.config == null) && parameters.equals(that.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
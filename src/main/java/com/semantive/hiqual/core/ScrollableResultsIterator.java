@@ -0,0 +1,96 @@
+package com.semantive.hiqual.core;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.transform.ResultTransformer;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over forward-only {@link ScrollableResults}, which transforms the rows lazily, one at a time. If the
+ * session is provided, it is cleared periodically, so that the memory used by the first level cache does not grow
+ * with the number of iterated rows. The underlying results are closed automatically when the iteration is finished,
+ * however, if the iteration is abandoned, the iterator has to be closed explicitly.
+ */
+public class ScrollableResultsIterator<T> implements Iterator<T>, Closeable {
+
+    private final ScrollableResults results;
+
+    private final ResultTransformer transformer;
+
+    private final String[] aliases;
+
+    private final Session session;
+
+    private final int clearInterval;
+
+    private Boolean hasNext;
+
+    private int count;
+
+    private boolean closed;
+
+    /**
+     * @param results       forward-only scrollable results
+     * @param transformer   a transformer applied to each row or {@code null} if the rows are to be returned as they
+     *                      are (single column rows are unwrapped)
+     * @param aliases       aliases of the columns passed to the transformer
+     * @param session       a session to be cleared periodically or {@code null}
+     * @param clearInterval the number of rows after which the session is cleared
+     */
+    public ScrollableResultsIterator(ScrollableResults results, ResultTransformer transformer, String[] aliases, Session session, int clearInterval) {
+        this.results = results;
+        this.transformer = transformer;
+        this.aliases = aliases;
+        this.session = session;
+        this.clearInterval = clearInterval;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (hasNext == null) {
+            if (closed) return false;
+            // the session is cleared before moving to the next row, so that the last returned object stays attached
+            if (session != null && clearInterval > 0 && count > 0 && count % clearInterval == 0) session.clear();
+            hasNext = results.next();
+            if (!hasNext) close();
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        hasNext = null;
+        count++;
+
+        Object[] row = results.get();
+        //noinspection unchecked
+        return (T) (transformer != null ? transformer.transformTuple(row, aliases) : (row.length == 1 ? row[0] : row));
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Scrollable results cannot be modified.");
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                results.close();
+            } finally {
+                afterClose();
+            }
+        }
+    }
+
+    /**
+     * Called once, after the underlying results are closed.
+     */
+    protected void afterClose() {
+    }
+}
@@ -0,0 +1,419 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.TextSearchExpressions;
+import com.semantive.hiqual.filter.Operator;
+import com.semantive.hiqual.filter.SimpleWhereCondition;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-process trigram index of the values of the text search expressions of an entity, which resolves the tokens
+ * of a search string into the ids of the matching entities without scanning the table. The values of all the
+ * expressions are read with a {@link QueryBuilder} scroll over the entity by {@link #build()}, lowered, and each
+ * of their three character substrings is mapped to the ids of the entities having it.
+ * <p/>
+ * A token of at least three characters is resolved by intersecting the id sets of its trigrams. The candidates are
+ * then verified against the stored values according to the {@link TextSearchExpressions.SearchMode}s of the
+ * expressions, so the resolved ids are exactly those the {@code LIKE} conditions would match (up to the differences
+ * between the lower case conversions of Java and of the database). Shorter tokens are only verified, therefore at
+ * least one token of a search string has to be three characters long for the index to be used.
+ * <p/>
+ * The index is kept up to date by the Hibernate post-commit event listeners registered with
+ * {@link #registerListeners(SessionFactory)}. The ids of the inserted and updated entities are queued and their
+ * values are reloaded in a single query, in a new session, before the next search. The listeners track only the
+ * changes of the indexed entity itself - if the expressions refer to associated entities, or the entities are
+ * modified with bulk HQL updates, call {@link #refresh(Serializable)} or {@link #build()}.
+ * @see QueryBuilder#useSearchIndex(SearchIndex)
+ */
+public class SearchIndex implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_MAX_CANDIDATES = 10000;
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static final String ALIAS = "_si";
+
+    private final SessionFactory sessionFactory;
+
+    private final Class<?> entityClass;
+
+    private final String entityName;
+
+    private final String idPropertyName;
+
+    private final TextSearchExpressions textSearchExpressions;
+
+    private final List<TextSearchExpressions.PropertyExpression> propertyExpressions;
+
+    private final int maxCandidates;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Map<Serializable, String[]> values = new HashMap<Serializable, String[]>();
+
+    private Map<String, Set<Serializable>> postings = new HashMap<String, Set<Serializable>>();
+
+    private final Set<Serializable> pending = Collections.newSetFromMap(new ConcurrentHashMap<Serializable, Boolean>());
+
+    private volatile boolean built;
+
+    public SearchIndex(SessionFactory sessionFactory, Class<?> entityClass, TextSearchExpressions textSearchExpressions) {
+        this(sessionFactory, entityClass, textSearchExpressions, DEFAULT_MAX_CANDIDATES);
+    }
+
+    /**
+     * @param sessionFactory        session factory used to load the values
+     * @param entityClass           indexed entity class
+     * @param textSearchExpressions the expressions whose values are indexed
+     * @param maxCandidates         the maximal number of ids resolved for a search string; if more entities match,
+     *                              the search falls back to the {@code LIKE} conditions
+     */
+    public SearchIndex(SessionFactory sessionFactory, Class<?> entityClass, TextSearchExpressions textSearchExpressions, int maxCandidates) {
+        ClassMetadata metadata = sessionFactory.getClassMetadata(entityClass);
+        if (metadata == null)
+            throw new IllegalArgumentException(String.format("%s is not a mapped entity.", entityClass.getName()));
+        if (textSearchExpressions.getPropertyExpressions().isEmpty())
+            throw new IllegalArgumentException("At least one text search expression is required.");
+
+        this.sessionFactory = sessionFactory;
+        this.entityClass = entityClass;
+        this.entityName = metadata.getEntityName();
+        this.idPropertyName = metadata.getIdentifierPropertyName();
+        this.textSearchExpressions = textSearchExpressions;
+        this.propertyExpressions = new ArrayList<TextSearchExpressions.PropertyExpression>(textSearchExpressions.getPropertyExpressions());
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Registers this index as the post-commit insert, update and delete listener of the given session factory.
+     */
+    public SearchIndex registerListeners(SessionFactory sessionFactory) {
+        EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+        return this;
+    }
+
+    /**
+     * (Re)builds the whole index with a scroll over all the entities. The searches are served from the previous
+     * state of the index until the new one is complete.
+     */
+    public SearchIndex build() {
+        // the changes committed during the scan are reloaded afterwards
+        pending.clear();
+
+        Map<Serializable, String[]> newValues = new HashMap<Serializable, String[]>();
+        Map<String, Set<Serializable>> newPostings = new HashMap<String, Set<Serializable>>();
+        Session session = sessionFactory.openSession();
+        try {
+            ScrollableResultsIterator<Object[]> rows = queryBuilder(null).generateIterator(session);
+            try {
+                while (rows.hasNext()) {
+                    Object[] row = rows.next();
+                    add((Serializable) row[0], lowerValues(row), newValues, newPostings);
+                }
+            } finally {
+                rows.close();
+            }
+        } finally {
+            session.close();
+        }
+
+        lock.writeLock().lock();
+        try {
+            values = newValues;
+            postings = newPostings;
+            built = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Makes the values of the entity with the given id be reloaded before the next search.
+     */
+    public void refresh(Serializable id) {
+        pending.add(id);
+    }
+
+    /**
+     * Returns whether this index can resolve the searches over the given expressions, that is, whether they are the
+     * same as the indexed ones.
+     */
+    public boolean covers(TextSearchExpressions textSearchExpressions) {
+        return textSearchExpressions != null && this.textSearchExpressions.getPropertyExpressions().equals(textSearchExpressions.getPropertyExpressions());
+    }
+
+    public String getIdPropertyName() {
+        return idPropertyName;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return values.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Resolves the given search tokens (without wildcards) into the ids of the entities for which each token
+     * matches at least one of the expressions.
+     *
+     * @return the ids of the matching entities, or {@code null} if the index is not built, none of the tokens is
+     *         long enough or more than the maximal number of entities match
+     */
+    public Set<Serializable> candidates(String... tokens) {
+        if (!built || tokens.length == 0) return null;
+        refreshPending();
+
+        String[] lowerTokens = new String[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            lowerTokens[i] = tokens[i].toLowerCase(Locale.ROOT);
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<Serializable> candidates = null;
+            for (String token : lowerTokens) {
+                if (token.length() < GRAM_LENGTH) continue;
+                candidates = candidates == null ? lookup(token) : intersect(candidates, lookup(token));
+                if (candidates.isEmpty()) return candidates;
+            }
+            if (candidates == null) return null;
+
+            Set<Serializable> result = new HashSet<Serializable>();
+            for (Serializable id : candidates) {
+                if (matchesAll(values.get(id), lowerTokens)) {
+                    if (result.size() == maxCandidates) return null;
+                    result.add(id);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (isIndexed(event.getPersister())) pending.add(event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (isIndexed(event.getPersister())) pending.add(event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!isIndexed(event.getPersister())) return;
+        lock.writeLock().lock();
+        try {
+            remove(event.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        pending.remove(event.getId());
+    }
+
+    private boolean isIndexed(EntityPersister persister) {
+        return entityClass.isAssignableFrom(persister.getMappedClass());
+    }
+
+    /**
+     * Reloads the values of the queued entities in a single query. The entities which no longer exist are removed.
+     */
+    private void refreshPending() {
+        if (pending.isEmpty()) return;
+
+        List<Serializable> ids = new ArrayList<Serializable>(pending);
+        pending.removeAll(ids);
+        Map<Serializable, String[]> reloaded = new HashMap<Serializable, String[]>();
+        Session session = sessionFactory.openSession();
+        try {
+            ScrollableResultsIterator<Object[]> rows = queryBuilder(ids).generateIterator(session);
+            try {
+                while (rows.hasNext()) {
+                    Object[] row = rows.next();
+                    reloaded.put((Serializable) row[0], lowerValues(row));
+                }
+            } finally {
+                rows.close();
+            }
+        } catch (RuntimeException e) {
+            pending.addAll(ids);
+            throw e;
+        } finally {
+            session.close();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Serializable id : ids) {
+                remove(id);
+                String[] entityValues = reloaded.get(id);
+                if (entityValues != null) add(id, entityValues, values, postings);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private QueryBuilder<Object[]> queryBuilder(Collection<Serializable> ids) {
+        Substitutions substitutions = new Substitutions().addPattern("\\bthis\\.([\\w\\.]+)\\b", ALIAS + ".$1");
+        StringBuilder select = new StringBuilder("select ").append(ALIAS).append(".").append(idPropertyName);
+        for (TextSearchExpressions.PropertyExpression propertyExpression : propertyExpressions) {
+            select.append(", ").append(substitutions.transform(propertyExpression.getExpression()));
+        }
+
+        ResultSetConfigBuilder config = new ResultSetConfigBuilder().setAllResults();
+        if (ids != null) config.andCondition(new SimpleWhereCondition(idPropertyName, Operator.IN, "ids", ids));
+
+        return new QueryBuilder<Object[]>(Object[].class, config.build())
+                .setFromClause(String.format(" from %s %s ", entityName, ALIAS))
+                .setDefaultSelectClause(select.toString())
+                .addDefaultSubstitution(ALIAS);
+    }
+
+    private String[] lowerValues(Object[] row) {
+        String[] result = new String[row.length - 1];
+        for (int i = 1; i < row.length; i++) {
+            TextSearchExpressions.PropertyExpression propertyExpression = propertyExpressions.get(i - 1);
+            if (row[i] == null) {
+                result[i - 1] = null;
+            } else if (propertyExpression instanceof TextSearchExpressions.DictPropertyExpression) {
+                result[i - 1] = ((TextSearchExpressions.DictPropertyExpression) propertyExpression).getLabel(row[i]);
+            } else {
+                result[i - 1] = row[i].toString().toLowerCase(Locale.ROOT);
+            }
+        }
+        return result;
+    }
+
+    private static void add(Serializable id, String[] entityValues, Map<Serializable, String[]> values, Map<String, Set<Serializable>> postings) {
+        values.put(id, entityValues);
+        for (String gram : grams(entityValues)) {
+            Set<Serializable> ids = postings.get(gram);
+            if (ids == null) {
+                ids = new HashSet<Serializable>();
+                postings.put(gram, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    private void remove(Serializable id) {
+        String[] entityValues = values.remove(id);
+        if (entityValues == null) return;
+        for (String gram : grams(entityValues)) {
+            Set<Serializable> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) postings.remove(gram);
+            }
+        }
+    }
+
+    private static Set<String> grams(String... strings) {
+        Set<String> result = new HashSet<String>();
+        for (String string : strings) {
+            if (string == null) continue;
+            for (int i = 0; i + GRAM_LENGTH <= string.length(); i++) {
+                result.add(string.substring(i, i + GRAM_LENGTH));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids of the entities having all the trigrams of the given token. The smallest id set is filtered
+     * with the other ones.
+     */
+    private Set<Serializable> lookup(String token) {
+        List<Set<Serializable>> sets = new ArrayList<Set<Serializable>>();
+        Set<Serializable> smallest = null;
+        for (String gram : grams(token)) {
+            Set<Serializable> ids = postings.get(gram);
+            if (ids == null) return Collections.emptySet();
+            sets.add(ids);
+            if (smallest == null || ids.size() < smallest.size()) smallest = ids;
+        }
+
+        Set<Serializable> result = new HashSet<Serializable>(smallest);
+        for (Set<Serializable> ids : sets) {
+            if (ids != smallest) result.retainAll(ids);
+        }
+        return result;
+    }
+
+    private static Set<Serializable> intersect(Set<Serializable> a, Set<Serializable> b) {
+        Set<Serializable> smaller = a.size() <= b.size() ? a : b;
+        Set<Serializable> larger = smaller == a ? b : a;
+        Set<Serializable> result = new HashSet<Serializable>();
+        for (Serializable id : smaller) {
+            if (larger.contains(id)) result.add(id);
+        }
+        return result;
+    }
+
+    private boolean matchesAll(String[] entityValues, String[] tokens) {
+        for (String token : tokens) {
+            if (!matches(entityValues, token)) return false;
+        }
+        return true;
+    }
+
+    private boolean matches(String[] entityValues, String token) {
+        for (int i = 0; i < entityValues.length; i++) {
+            String value = entityValues[i];
+            if (value == null) continue;
+            switch (propertyExpressions.get(i).getSearchMode()) {
+                case EXACT:
+                    if (value.equals(token)) return true;
+                    break;
+                case PREFIX:
+                    if (value.startsWith(token)) return true;
+                    break;
+                default:
+                    if (value.contains(token)) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,287 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.TextSearchExpressions;
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.event.spi.PreUpdateEventListener;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the shadow properties of {@link TextSearchExpressions.ShadowPropertyExpression}s. Registered as the
+ * pre-insert and pre-update listener of a session factory with {@link #registerListeners(SessionFactory)}, it
+ * computes the shadow values from the source properties of the saved entities and puts them into the inserted and
+ * updated state, so they are written by the same statements. Shadow values of identifiers generated by the
+ * database on insert are written with an additional update right after the insert.
+ * <p/>
+ * {@link #ddl()} returns the statements which add the shadow columns and their indexes, for migration scripts, and
+ * {@link #backfill(Session)} computes the shadow values of the existing rows. Both the listeners and the backfill
+ * compute the values with {@link TextSearchExpressions.ShadowPropertyExpression#toShadowValue(Object)}, so they
+ * never differ. Bulk HQL updates of the source properties bypass the listeners and have to be followed by
+ * {@link #backfill(Session)}. The source property has to be a direct string, date or integral property (or the
+ * identifier) of the entity, and the shadow property has to be a string property mapped in the same table as its
+ * identifier.
+ */
+public class SearchShadowColumns implements PreInsertEventListener, PreUpdateEventListener, PostInsertEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_COLUMN_LENGTH = 255;
+
+    static final int BATCH_SIZE = 500;
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final Map<Class<?>, List<TextSearchExpressions.ShadowPropertyExpression>> expressionsByEntityClass =
+            new LinkedHashMap<Class<?>, List<TextSearchExpressions.ShadowPropertyExpression>>();
+
+    private int columnLength = DEFAULT_COLUMN_LENGTH;
+
+    public SearchShadowColumns(SessionFactory sessionFactory) {
+        this.sessionFactory = (SessionFactoryImplementor) sessionFactory;
+    }
+
+    /**
+     * Adds the shadow property expressions among the given text search expressions of the given entity class.
+     *
+     * @throws IllegalArgumentException if a source or shadow property is not mapped or its type is not supported
+     */
+    public SearchShadowColumns add(Class<?> entityClass, TextSearchExpressions textSearchExpressions) {
+        AbstractEntityPersister persister = persister(entityClass);
+        List<TextSearchExpressions.ShadowPropertyExpression> expressions = expressionsByEntityClass.get(entityClass);
+        if (expressions == null) expressions = new ArrayList<TextSearchExpressions.ShadowPropertyExpression>();
+
+        for (TextSearchExpressions.PropertyExpression propertyExpression : textSearchExpressions.getPropertyExpressions()) {
+            if (!(propertyExpression instanceof TextSearchExpressions.ShadowPropertyExpression)) continue;
+
+            TextSearchExpressions.ShadowPropertyExpression expression = (TextSearchExpressions.ShadowPropertyExpression) propertyExpression;
+            if (!isIdentifier(persister, expression) && persister.getEntityMetamodel().getPropertyIndexOrNull(expression.getName()) == null)
+                throw new IllegalArgumentException(String.format("%s is not a property of %s.", expression.getName(), entityClass.getName()));
+            if (persister.getEntityMetamodel().getPropertyIndexOrNull(expression.getShadowProperty()) == null)
+                throw new IllegalArgumentException(String.format("%s is not a property of %s.", expression.getShadowProperty(), entityClass.getName()));
+            if (persister.getPropertyType(expression.getShadowProperty()).getReturnedClass() != String.class)
+                throw new IllegalArgumentException(String.format("The shadow property %s of %s is not a string property.", expression.getShadowProperty(), entityClass.getName()));
+
+            Class<?> sourceClass = (isIdentifier(persister, expression) ? persister.getIdentifierType()
+                    : persister.getPropertyType(expression.getName())).getReturnedClass();
+            if (!isSupportedSourceClass(expression.getType(), sourceClass))
+                throw new IllegalArgumentException(String.format("The property %s of %s of type %s cannot be the source of a %s shadow property.",
+                        expression.getName(), entityClass.getName(), sourceClass.getName(), expression.getType()));
+            if (!expressions.contains(expression)) expressions.add(expression);
+        }
+
+        expressionsByEntityClass.put(entityClass, expressions);
+        return this;
+    }
+
+    /**
+     * Sets the length of the shadow columns created by {@link #ddl()}.
+     */
+    public SearchShadowColumns setColumnLength(int columnLength) {
+        this.columnLength = columnLength;
+        return this;
+    }
+
+    /**
+     * Registers this object as the pre-insert, pre-update and post-insert listener of the given session factory.
+     */
+    public SearchShadowColumns registerListeners(SessionFactory sessionFactory) {
+        EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.PRE_INSERT, this);
+        registry.appendListeners(EventType.PRE_UPDATE, this);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        return this;
+    }
+
+    /**
+     * Returns the statements which add the shadow columns and create an index on each of them.
+     */
+    public List<String> ddl() {
+        Dialect dialect = sessionFactory.getDialect();
+        List<String> statements = new ArrayList<String>();
+        for (Map.Entry<Class<?>, List<TextSearchExpressions.ShadowPropertyExpression>> entry : expressionsByEntityClass.entrySet()) {
+            AbstractEntityPersister persister = persister(entry.getKey());
+            for (TextSearchExpressions.ShadowPropertyExpression expression : entry.getValue()) {
+                String table = tableName(persister, expression);
+                String column = columnName(persister, expression);
+                statements.add(String.format("alter table %s %s %s %s", table, dialect.getAddColumnString(), column,
+                        dialect.getTypeName(Types.VARCHAR, columnLength, 0, 0)));
+                statements.add(String.format("create index %s on %s (%s)", indexName(table, column), table, column));
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Computes the shadow values of all the existing rows. The source values are scrolled with HQL and the shadow
+     * values are written with batched JDBC updates, bypassing the entities loaded in the session.
+     *
+     * @return the number of updated rows
+     */
+    public int backfill(Session session) {
+        int count = 0;
+        for (Map.Entry<Class<?>, List<TextSearchExpressions.ShadowPropertyExpression>> entry : expressionsByEntityClass.entrySet()) {
+            AbstractEntityPersister persister = persister(entry.getKey());
+            for (TextSearchExpressions.ShadowPropertyExpression expression : entry.getValue()) {
+                count += backfill(session, persister, expression);
+            }
+        }
+        return count;
+    }
+
+    private int backfill(Session session, AbstractEntityPersister persister, TextSearchExpressions.ShadowPropertyExpression expression) {
+        String identifier = persister.getIdentifierPropertyName();
+        ScrollableResults rows = session.createQuery(String.format("select e.%s, e.%s from %s e", identifier, expression.getName(),
+                persister.getEntityName())).setFetchSize(BATCH_SIZE).scroll(ScrollMode.FORWARD_ONLY);
+        int count = 0;
+        try {
+            PreparedStatement statement = ((SessionImplementor) session).connection().prepareStatement(updateStatement(persister, expression));
+            try {
+                while (rows.next()) {
+                    statement.setString(1, expression.toShadowValue(rows.get(1)));
+                    statement.setObject(2, rows.get(0));
+                    statement.addBatch();
+                    if (++count % BATCH_SIZE == 0) statement.executeBatch();
+                }
+                if (count % BATCH_SIZE != 0) statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new HibernateException(String.format("Cannot backfill the shadow property %s of %s.", expression.getShadowProperty(), persister.getEntityName()), e);
+        } finally {
+            rows.close();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean onPreInsert(PreInsertEvent event) {
+        for (TextSearchExpressions.ShadowPropertyExpression expression : expressions(event.getPersister())) {
+            update(event.getPersister(), event.getEntity(), event.getId(), event.getState(), expression);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onPreUpdate(PreUpdateEvent event) {
+        for (TextSearchExpressions.ShadowPropertyExpression expression : expressions(event.getPersister())) {
+            update(event.getPersister(), event.getEntity(), event.getId(), event.getState(), expression);
+        }
+        return false;
+    }
+
+    /**
+     * Writes the shadow values of the identifiers which were not known before the insert.
+     */
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        EntityPersister persister = event.getPersister();
+        for (TextSearchExpressions.ShadowPropertyExpression expression : expressions(persister)) {
+            int shadowIndex = persister.getEntityMetamodel().getPropertyIndex(expression.getShadowProperty());
+            if (!isIdentifier(persister, expression) || event.getState()[shadowIndex] != null) continue;
+
+            String value = expression.toShadowValue(event.getId());
+            try {
+                PreparedStatement statement = ((SessionImplementor) event.getSession()).connection()
+                        .prepareStatement(updateStatement((AbstractEntityPersister) persister, expression));
+                try {
+                    statement.setString(1, value);
+                    statement.setObject(2, event.getId());
+                    statement.executeUpdate();
+                } finally {
+                    statement.close();
+                }
+            } catch (SQLException e) {
+                throw new HibernateException(String.format("Cannot update the shadow property %s of %s.", expression.getShadowProperty(), persister.getEntityName()), e);
+            }
+            event.getState()[shadowIndex] = value;
+            persister.setPropertyValue(event.getEntity(), shadowIndex, value);
+        }
+    }
+
+    private void update(EntityPersister persister, Object entity, Serializable id, Object[] state, TextSearchExpressions.ShadowPropertyExpression expression) {
+        Object source = isIdentifier(persister, expression) ? id : state[persister.getEntityMetamodel().getPropertyIndex(expression.getName())];
+        int shadowIndex = persister.getEntityMetamodel().getPropertyIndex(expression.getShadowProperty());
+        String value = expression.toShadowValue(source);
+        state[shadowIndex] = value;
+        persister.setPropertyValue(entity, shadowIndex, value);
+    }
+
+    private List<TextSearchExpressions.ShadowPropertyExpression> expressions(EntityPersister persister) {
+        List<TextSearchExpressions.ShadowPropertyExpression> result = new ArrayList<TextSearchExpressions.ShadowPropertyExpression>();
+        for (Map.Entry<Class<?>, List<TextSearchExpressions.ShadowPropertyExpression>> entry : expressionsByEntityClass.entrySet()) {
+            if (entry.getKey().isAssignableFrom(persister.getMappedClass())) result.addAll(entry.getValue());
+        }
+        return result;
+    }
+
+    private AbstractEntityPersister persister(Class<?> entityClass) {
+        EntityPersister persister = sessionFactory.getEntityPersister(entityClass.getName());
+        if (!(persister instanceof AbstractEntityPersister))
+            throw new IllegalArgumentException(String.format("%s is not a mapped entity.", entityClass.getName()));
+        return (AbstractEntityPersister) persister;
+    }
+
+    private static boolean isSupportedSourceClass(TextSearchExpressions.PropertyExpressionTypeDict type, Class<?> sourceClass) {
+        switch (type) {
+            case PLAIN:
+                return sourceClass == String.class;
+            case DATE:
+                return Date.class.isAssignableFrom(sourceClass);
+            case ID:
+                return sourceClass == Long.class || sourceClass == Integer.class || sourceClass == Short.class;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the statement which sets the shadow value of the row with the given identifier.
+     */
+    private static String updateStatement(AbstractEntityPersister persister, TextSearchExpressions.ShadowPropertyExpression expression) {
+        return String.format("update %s set %s = ? where %s = ?", tableName(persister, expression), columnName(persister, expression),
+                persister.getIdentifierColumnNames()[0]);
+    }
+
+    private static boolean isIdentifier(EntityPersister persister, TextSearchExpressions.ShadowPropertyExpression expression) {
+        return expression.getName().equals(persister.getIdentifierPropertyName());
+    }
+
+    private static String tableName(AbstractEntityPersister persister, TextSearchExpressions.ShadowPropertyExpression expression) {
+        return persister.getSubclassTableName(persister.getSubclassPropertyTableNumber(expression.getShadowProperty()));
+    }
+
+    private static String columnName(AbstractEntityPersister persister, TextSearchExpressions.ShadowPropertyExpression expression) {
+        return persister.getPropertyColumnNames(expression.getShadowProperty())[0];
+    }
+
+    private static String indexName(String table, String column) {
+        String name = "idx_" + table.replace('.', '_') + "_" + column;
+        // the shortest limit among the common databases
+        return name.length() > 30 ? name.substring(0, 30) : name;
+    }
+}
@@ -0,0 +1,116 @@
+package com.semantive.hiqual.core;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An ordered set of substitutions which are applied to property expressions by {@link QueryBuilder}. Regular
+ * expressions are compiled once and shared by all instances, plain path prefixes (such as those registered for
+ * left outer joins) are replaced without using regular expressions at all. The transformed expressions are
+ * memoized until another substitution is added.
+ */
+public class Substitutions {
+
+    private static final LoadingCache<String, Pattern> patterns = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build(new CacheLoader<String, Pattern>() {
+                @Override
+                public Pattern load(String regex) {
+                    return Pattern.compile(regex);
+                }
+            });
+
+    private final LinkedHashMap<String, Substitution> substitutions = new LinkedHashMap<String, Substitution>();
+
+    private final Map<String, String> transformed = new HashMap<String, String>();
+
+    /**
+     * Adds a substitution with the same semantics as {@link String#replaceAll(String, String)}.
+     */
+    public Substitutions addPattern(String regex, String replacement) {
+        return add(regex, new PatternSubstitution(patterns.getUnchecked(regex), replacement));
+    }
+
+    /**
+     * Adds a substitution which replaces the given prefix of an expression. It is equivalent to a pattern
+     * substitution of the quoted prefix anchored at the beginning of the expression.
+     */
+    public Substitutions addPrefix(String prefix, String replacement) {
+        return add("^" + Pattern.quote(prefix), new PrefixSubstitution(prefix, replacement));
+    }
+
+    private Substitutions add(String key, Substitution substitution) {
+        substitutions.put(key, substitution);
+        transformed.clear();
+        return this;
+    }
+
+    public String transform(String expression) {
+        String result = transformed.get(expression);
+        if (result == null) {
+            result = expression;
+            for (Substitution substitution : substitutions.values()) {
+                result = substitution.apply(result);
+            }
+            transformed.put(expression, result);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return substitutions.toString();
+    }
+
+    private static abstract class Substitution {
+        abstract String apply(String expression);
+    }
+
+    private static class PatternSubstitution extends Substitution {
+        private final Pattern pattern;
+        private final String replacement;
+
+        private PatternSubstitution(Pattern pattern, String replacement) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+
+        @Override
+        String apply(String expression) {
+            Matcher matcher = pattern.matcher(expression);
+            return matcher.find() ? matcher.replaceAll(replacement) : expression;
+        }
+
+        @Override
+        public String toString() {
+            return replacement;
+        }
+    }
+
+    private static class PrefixSubstitution extends Substitution {
+        private final String prefix;
+        private final String replacement;
+
+        private PrefixSubstitution(String prefix, String replacement) {
+            this.prefix = prefix;
+            this.replacement = replacement;
+        }
+
+        @Override
+        String apply(String expression) {
+            return expression.startsWith(prefix) ? replacement + expression.substring(prefix.length()) : expression;
+        }
+
+        @Override
+        public String toString() {
+            return replacement;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.semantive.hiqual.core;
+
+import org.hibernate.transform.ResultTransformer;
+
+import java.util.List;
+
+/**
+ * Delegating result transformer which accumulates the time spent on transforming tuples. Used by
+ * {@link QueryBuilder} only when a {@link QueryListener} is registered.
+ */
+class TimedResultTransformer implements ResultTransformer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ResultTransformer delegate;
+
+    private long nanos;
+
+    TimedResultTransformer(ResultTransformer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        long start = System.nanoTime();
+        try {
+            return delegate.transformTuple(tuple, aliases);
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List transformList(List collection) {
+        return delegate.transformList(collection);
+    }
+
+    long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,77 @@
+package com.semantive.hiqual.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of the results of count queries, keyed by the count HQL and the values of its parameters. The cached
+ * totals expire after the configured time, so the total number of elements displayed along with the pages may be
+ * slightly outdated - use it for the result sets which do not change often or where the exact total is not crucial.
+ */
+public class TotalSizeCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final Cache<Key, Integer> totals;
+
+    public TotalSizeCache(long timeToLive, TimeUnit unit) {
+        this(DEFAULT_MAXIMUM_SIZE, timeToLive, unit);
+    }
+
+    public TotalSizeCache(long maximumSize, long timeToLive, TimeUnit unit) {
+        this.totals = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive, unit).recordStats().build();
+    }
+
+    public Integer get(String countQuery, Map<String, Object> parameters) {
+        return totals.getIfPresent(new Key(countQuery, parameters));
+    }
+
+    public void put(String countQuery, Map<String, Object> parameters, int totalSize) {
+        totals.put(new Key(countQuery, parameters), totalSize);
+    }
+
+    public CacheStats stats() {
+        return totals.stats();
+    }
+
+    public void invalidateAll() {
+        totals.invalidateAll();
+    }
+
+    private static class Key {
+        private final String countQuery;
+        private final Map<String, Object> parameters;
+        private final int hash;
+
+        private Key(String countQuery, Map<String, Object> parameters) {
+            this.countQuery = countQuery;
+            this.parameters = new HashMap<String, Object>();
+            if (parameters != null) for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                Object value = parameter.getValue();
+                // arrays do not implement equals and hashCode
+                this.parameters.put(parameter.getKey(), value instanceof Object[] ? Arrays.asList((Object[]) value) : value);
+            }
+            this.hash = 31 * countQuery.hashCode() + this.parameters.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+            return hash == that.hash && countQuery.equals(that.countQuery) && parameters.equals(that.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
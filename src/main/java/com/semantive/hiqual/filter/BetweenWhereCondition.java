@@ -1,5 +1,7 @@
 package com.semantive.hiqual.filter;
 
+import java.util.Arrays;
+
 /**
  * @author Piotr Jędruszuk
  */
@@ -62,4 +64,21 @@ public class BetweenWhereCondition extends AbstractWhereCondition {
     public void setUpperBoundValue(Object upperBoundValue) {
         this.upperBoundValue = upperBoundValue;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BetweenWhereCondition that = (BetweenWhereCondition) o;
+        return propertyName.equals(that.propertyName)
+                && Arrays.deepEquals(new Object[]{lowerBoundParameterName, lowerBoundValue, upperBoundParameterName, upperBoundValue},
+                new Object[]{that.lowerBoundParameterName, that.lowerBoundValue, that.upperBoundParameterName, that.upperBoundValue});
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * propertyName.hashCode()
+                + Arrays.deepHashCode(new Object[]{lowerBoundParameterName, lowerBoundValue, upperBoundParameterName, upperBoundValue});
+    }
 }
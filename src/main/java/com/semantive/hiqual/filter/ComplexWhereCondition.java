@@ -29,4 +29,18 @@ public class ComplexWhereCondition extends AbstractWhereCondition {
     public LogicalOperator getLogicalOperator() {
         return logicalOperator;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ComplexWhereCondition that = (ComplexWhereCondition) o;
+        return logicalOperator == that.logicalOperator && whereConditions.equals(that.whereConditions);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * logicalOperator.hashCode() + whereConditions.hashCode();
+    }
 }
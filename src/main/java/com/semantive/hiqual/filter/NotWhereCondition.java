@@ -21,4 +21,18 @@ public class NotWhereCondition extends AbstractWhereCondition {
     public void setWhereCondition(AbstractWhereCondition whereCondition) {
         this.whereCondition = whereCondition;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        NotWhereCondition that = (NotWhereCondition) o;
+        return whereCondition != null ? whereCondition.equals(that.whereCondition) : that.whereCondition == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return whereCondition != null ? 31 * whereCondition.hashCode() : 0;
+    }
 }
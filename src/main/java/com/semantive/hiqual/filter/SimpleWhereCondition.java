@@ -1,5 +1,7 @@
 package com.semantive.hiqual.filter;
 
+import java.util.Arrays;
+
 /**
  * @author Piotr Jędruszuk
  */
@@ -58,4 +60,24 @@ public class SimpleWhereCondition extends AbstractWhereCondition {
     public void setValue(Object value) {
         this.value = value;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SimpleWhereCondition that = (SimpleWhereCondition) o;
+        return propertyName.equals(that.propertyName) && operator == that.operator
+                && (parameterName != null ? parameterName.equals(that.parameterName) : that.parameterName == null)
+                && Arrays.deepEquals(new Object[]{value}, new Object[]{that.value});
+    }
+
+    @Override
+    public int hashCode() {
+        int result = propertyName.hashCode();
+        result = 31 * result + operator.hashCode();
+        result = 31 * result + (parameterName != null ? parameterName.hashCode() : 0);
+        result = 31 * result + Arrays.deepHashCode(new Object[]{value});
+        return result;
+    }
 }
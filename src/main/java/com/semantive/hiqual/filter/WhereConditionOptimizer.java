@@ -0,0 +1,234 @@
+package com.semantive.hiqual.filter;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Normalizes a where conditions tree before it is rendered, without changing its meaning:
+ * <ul>
+ * <li>nested complex conditions with the same logical operator are flattened, and complex conditions with a single
+ * subcondition are replaced with that subcondition,</li>
+ * <li>negations are pushed down to the leaves with De Morgan's laws; negated comparisons are replaced with the
+ * opposite comparisons and double negations are removed,</li>
+ * <li>{@code EQ} and {@code IN} conditions on the same property joined with {@code OR} are merged into a single
+ * {@code IN} condition, bound to the parameter of the first one,</li>
+ * <li>duplicate subconditions are removed,</li>
+ * <li>tautologies - empty {@code AND} conditions and {@code OR} conditions which contain a tautology or both
+ * {@code IS NULL} and {@code IS NOT NULL} for the same property - are removed.</li>
+ * </ul>
+ * The given tree is not modified - changed nodes are copied.
+ */
+public final class WhereConditionOptimizer {
+
+    private static final Map<Operator, Operator> NEGATED_OPERATORS = new LinkedHashMap<Operator, Operator>();
+
+    static {
+        NEGATED_OPERATORS.put(Operator.EQ, Operator.NOT_EQ);
+        NEGATED_OPERATORS.put(Operator.NOT_EQ, Operator.EQ);
+        NEGATED_OPERATORS.put(Operator.GT, Operator.LT_OR_EQ);
+        NEGATED_OPERATORS.put(Operator.LT_OR_EQ, Operator.GT);
+        NEGATED_OPERATORS.put(Operator.LT, Operator.GT_OR_EQ);
+        NEGATED_OPERATORS.put(Operator.GT_OR_EQ, Operator.LT);
+    }
+
+    private WhereConditionOptimizer() {
+    }
+
+    /**
+     * Returns the optimized condition, or {@code null} if the given condition is always true.
+     */
+    public static AbstractWhereCondition optimize(AbstractWhereCondition condition) {
+        return optimize(condition, false);
+    }
+
+    private static AbstractWhereCondition optimize(AbstractWhereCondition condition, boolean negated) {
+        if (condition instanceof NotWhereCondition) {
+            return optimize(((NotWhereCondition) condition).getWhereCondition(), !negated);
+        } else if (condition instanceof ComplexWhereCondition) {
+            return optimizeComplex((ComplexWhereCondition) condition, negated);
+        } else if (condition instanceof SimpleWhereCondition && negated) {
+            SimpleWhereCondition simpleWhereCondition = (SimpleWhereCondition) condition;
+            Operator negatedOperator = NEGATED_OPERATORS.get(simpleWhereCondition.getOperator());
+            if (negatedOperator != null) {
+                return new SimpleWhereCondition(simpleWhereCondition.getPropertyName(), negatedOperator,
+                        simpleWhereCondition.getParameterName(), simpleWhereCondition.getValue());
+            }
+        }
+        return negated && condition != null ? new NotWhereCondition(condition) : condition;
+    }
+
+    private static AbstractWhereCondition optimizeComplex(ComplexWhereCondition condition, boolean negated) {
+        LogicalOperator operator = condition.getLogicalOperator();
+        if (negated) operator = operator == LogicalOperator.AND ? LogicalOperator.OR : LogicalOperator.AND;
+
+        List<AbstractWhereCondition> subConditions = new ArrayList<AbstractWhereCondition>();
+        for (AbstractWhereCondition subCondition : condition.getWhereConditions()) {
+            AbstractWhereCondition optimized = optimize(subCondition, negated);
+            if (optimized == null) {
+                if (operator == LogicalOperator.OR) return null;
+            } else if (optimized instanceof ComplexWhereCondition && ((ComplexWhereCondition) optimized).getLogicalOperator() == operator) {
+                subConditions.addAll(((ComplexWhereCondition) optimized).getWhereConditions());
+            } else {
+                subConditions.add(optimized);
+            }
+        }
+
+        if (operator == LogicalOperator.OR) {
+            subConditions = mergeEqualities(subConditions);
+            if (containsNullCheckTautology(subConditions)) return null;
+        }
+        subConditions = removeDuplicates(subConditions);
+
+        if (subConditions.isEmpty()) return operator == LogicalOperator.AND ? null : new ComplexWhereCondition(operator);
+        if (subConditions.size() == 1) return subConditions.get(0);
+
+        ComplexWhereCondition result = new ComplexWhereCondition(operator);
+        for (AbstractWhereCondition subCondition : subConditions) {
+            result.addWhereCondition(subCondition);
+        }
+        return result;
+    }
+
+    /**
+     * Merges the {@code EQ} and {@code IN} conditions on the same property into a single {@code IN} condition, placed
+     * where the first of them was.
+     */
+    private static List<AbstractWhereCondition> mergeEqualities(List<AbstractWhereCondition> conditions) {
+        Map<String, List<SimpleWhereCondition>> equalitiesByProperty = new LinkedHashMap<String, List<SimpleWhereCondition>>();
+        for (AbstractWhereCondition condition : conditions) {
+            if (isMergeableEquality(condition)) {
+                SimpleWhereCondition simpleWhereCondition = (SimpleWhereCondition) condition;
+                List<SimpleWhereCondition> equalities = equalitiesByProperty.get(simpleWhereCondition.getPropertyName());
+                if (equalities == null) {
+                    equalities = new ArrayList<SimpleWhereCondition>();
+                    equalitiesByProperty.put(simpleWhereCondition.getPropertyName(), equalities);
+                }
+                equalities.add(simpleWhereCondition);
+            }
+        }
+
+        List<AbstractWhereCondition> result = new ArrayList<AbstractWhereCondition>(conditions.size());
+        for (AbstractWhereCondition condition : conditions) {
+            if (!isMergeableEquality(condition)) {
+                result.add(condition);
+                continue;
+            }
+
+            SimpleWhereCondition simpleWhereCondition = (SimpleWhereCondition) condition;
+            List<SimpleWhereCondition> equalities = equalitiesByProperty.get(simpleWhereCondition.getPropertyName());
+            if (equalities.size() == 1) {
+                result.add(condition);
+            } else if (equalities.get(0) == condition) {
+                Set<Object> values = new LinkedHashSet<Object>();
+                for (SimpleWhereCondition equality : equalities) {
+                    addValues(equality.getValue(), values);
+                }
+                result.add(new SimpleWhereCondition(simpleWhereCondition.getPropertyName(), Operator.IN,
+                        simpleWhereCondition.getParameterName(), new ArrayList<Object>(values)));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isMergeableEquality(AbstractWhereCondition condition) {
+        if (!(condition instanceof SimpleWhereCondition)) return false;
+
+        SimpleWhereCondition simpleWhereCondition = (SimpleWhereCondition) condition;
+        Object value = simpleWhereCondition.getValue();
+        if (simpleWhereCondition.getOperator() == Operator.EQ) return value != null && !isList(value);
+        return simpleWhereCondition.getOperator() == Operator.IN && isList(value) && size(value) > 0;
+    }
+
+    private static boolean containsNullCheckTautology(List<AbstractWhereCondition> conditions) {
+        Set<String> nullChecks = new LinkedHashSet<String>();
+        Set<String> notNullChecks = new LinkedHashSet<String>();
+        for (AbstractWhereCondition condition : conditions) {
+            if (condition instanceof SimpleWhereCondition && ((SimpleWhereCondition) condition).getValue() == null) {
+                SimpleWhereCondition simpleWhereCondition = (SimpleWhereCondition) condition;
+                if (simpleWhereCondition.getOperator() == Operator.EQ) nullChecks.add(simpleWhereCondition.getPropertyName());
+                if (simpleWhereCondition.getOperator() == Operator.NOT_EQ) notNullChecks.add(simpleWhereCondition.getPropertyName());
+            }
+        }
+        nullChecks.retainAll(notNullChecks);
+        return !nullChecks.isEmpty();
+    }
+
+    private static List<AbstractWhereCondition> removeDuplicates(List<AbstractWhereCondition> conditions) {
+        List<AbstractWhereCondition> result = new ArrayList<AbstractWhereCondition>(conditions.size());
+        for (AbstractWhereCondition condition : conditions) {
+            boolean duplicate = false;
+            for (AbstractWhereCondition existing : result) {
+                if (isSameCondition(existing, condition)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) result.add(condition);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether both conditions are structurally equal. Parameter names are not compared, as the conditions
+     * which differ only in parameter names have the same meaning.
+     */
+    private static boolean isSameCondition(AbstractWhereCondition a, AbstractWhereCondition b) {
+        if (a == b) return true;
+        if (a == null || b == null || a.getClass() != b.getClass()) return false;
+
+        if (a instanceof SimpleWhereCondition) {
+            SimpleWhereCondition sa = (SimpleWhereCondition) a;
+            SimpleWhereCondition sb = (SimpleWhereCondition) b;
+            return sa.getPropertyName().equals(sb.getPropertyName()) && sa.getOperator() == sb.getOperator()
+                    && isSameValue(sa.getValue(), sb.getValue());
+        } else if (a instanceof BetweenWhereCondition) {
+            BetweenWhereCondition ba = (BetweenWhereCondition) a;
+            BetweenWhereCondition bb = (BetweenWhereCondition) b;
+            return ba.getPropertyName().equals(bb.getPropertyName()) && isSameValue(ba.getLowerBoundValue(), bb.getLowerBoundValue())
+                    && isSameValue(ba.getUpperBoundValue(), bb.getUpperBoundValue());
+        } else if (a instanceof NotWhereCondition) {
+            return isSameCondition(((NotWhereCondition) a).getWhereCondition(), ((NotWhereCondition) b).getWhereCondition());
+        } else if (a instanceof ComplexWhereCondition) {
+            ComplexWhereCondition ca = (ComplexWhereCondition) a;
+            ComplexWhereCondition cb = (ComplexWhereCondition) b;
+            if (ca.getLogicalOperator() != cb.getLogicalOperator() || ca.getWhereConditions().size() != cb.getWhereConditions().size())
+                return false;
+            for (int i = 0; i < ca.getWhereConditions().size(); i++) {
+                if (!isSameCondition(ca.getWhereConditions().get(i), cb.getWhereConditions().get(i))) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isSameValue(Object a, Object b) {
+        return Arrays.deepEquals(new Object[]{a}, new Object[]{b});
+    }
+
+    private static boolean isList(Object value) {
+        return value instanceof Collection || (value != null && value.getClass().isArray());
+    }
+
+    private static int size(Object value) {
+        return value instanceof Collection ? ((Collection) value).size() : Array.getLength(value);
+    }
+
+    private static void addValues(Object value, Collection<Object> values) {
+        if (value instanceof Collection) {
+            values.addAll((Collection<?>) value);
+        } else if (value.getClass().isArray()) {
+            for (int i = 0; i < Array.getLength(value); i++) {
+                values.add(Array.get(value, i));
+            }
+        } else {
+            values.add(value);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.semantive.hiqual.filter;
+
+import com.google.common.base.Predicate;
+import com.semantive.commons.PropertyAccessor;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles where conditions into predicates evaluated in memory against beans, for example against the projected
+ * objects of an already loaded result set. The properties are read with {@link PropertyAccessor}s created once,
+ * at compilation time, and so are the patterns of {@code LIKE} conditions and the value sets of {@code IN}
+ * conditions.
+ * <p/>
+ * The conditions are evaluated with the three-valued logic of SQL: a comparison with a {@code null} property
+ * value is unknown, and so is its negation, so that a predicate accepts the same objects as the database would.
+ * Numbers are compared by their numeric values regardless of their types, and dates by their time.
+ */
+public final class WhereConditionPredicates {
+
+    private WhereConditionPredicates() {
+    }
+
+    /**
+     * Returns the predicate which accepts the beans of the given class matching the given conditions. If there are
+     * no conditions, the predicate accepts all beans.
+     */
+    public static <T> Predicate<T> compile(WhereConditions whereConditions, Class<T> beanClass) {
+        return compile(whereConditions != null ? whereConditions.getWhereCondition() : null, beanClass);
+    }
+
+    public static <T> Predicate<T> compile(AbstractWhereCondition condition, Class<T> beanClass) {
+        final CompiledCondition compiledCondition = condition != null ? compileCondition(condition, beanClass) : null;
+        return new Predicate<T>() {
+            @Override
+            public boolean apply(T bean) {
+                return compiledCondition == null || compiledCondition.evaluate(bean) == Boolean.TRUE;
+            }
+        };
+    }
+
+    /**
+     * Returns a new list of the given beans which match the given conditions, in the original order.
+     */
+    public static <T> List<T> filter(Collection<? extends T> beans, WhereConditions whereConditions, Class<T> beanClass) {
+        Predicate<T> predicate = compile(whereConditions, beanClass);
+        List<T> result = new ArrayList<T>();
+        for (T bean : beans) {
+            if (predicate.apply(bean)) result.add(bean);
+        }
+        return result;
+    }
+
+    /**
+     * A compiled condition. The result is {@code null} if it is unknown.
+     */
+    private static interface CompiledCondition {
+        Boolean evaluate(Object bean);
+    }
+
+    private static CompiledCondition compileCondition(AbstractWhereCondition condition, Class<?> beanClass) {
+        if (condition instanceof SimpleWhereCondition) {
+            return compileSimple((SimpleWhereCondition) condition, beanClass);
+        } else if (condition instanceof BetweenWhereCondition) {
+            return compileBetween((BetweenWhereCondition) condition, beanClass);
+        } else if (condition instanceof NotWhereCondition) {
+            return compileNot((NotWhereCondition) condition, beanClass);
+        } else if (condition instanceof ComplexWhereCondition) {
+            return compileComplex((ComplexWhereCondition) condition, beanClass);
+        }
+        throw new IllegalArgumentException(String.format("Unsupported where condition: %s", condition));
+    }
+
+    private static CompiledCondition compileNot(NotWhereCondition condition, Class<?> beanClass) {
+        final CompiledCondition subCondition = compileCondition(condition.getWhereCondition(), beanClass);
+        return new CompiledCondition() {
+            @Override
+            public Boolean evaluate(Object bean) {
+                Boolean result = subCondition.evaluate(bean);
+                return result != null ? !result : null;
+            }
+        };
+    }
+
+    private static CompiledCondition compileComplex(ComplexWhereCondition condition, Class<?> beanClass) {
+        final CompiledCondition[] subConditions = new CompiledCondition[condition.getWhereConditions().size()];
+        for (int i = 0; i < subConditions.length; i++) {
+            subConditions[i] = compileCondition(condition.getWhereConditions().get(i), beanClass);
+        }
+        final boolean conjunction = condition.getLogicalOperator() == LogicalOperator.AND;
+        return new CompiledCondition() {
+            @Override
+            public Boolean evaluate(Object bean) {
+                boolean unknown = false;
+                for (CompiledCondition subCondition : subConditions) {
+                    Boolean result = subCondition.evaluate(bean);
+                    if (result == null) unknown = true;
+                    else if (result != conjunction) return result;
+                }
+                return unknown ? null : conjunction;
+            }
+        };
+    }
+
+    private static CompiledCondition compileBetween(BetweenWhereCondition condition, Class<?> beanClass) {
+        final PropertyAccessor<?> accessor = accessor(condition.getPropertyName(), beanClass);
+        final Object lowerBound = normalize(condition.getLowerBoundValue());
+        final Object upperBound = normalize(condition.getUpperBoundValue());
+        return new CompiledCondition() {
+            @Override
+            public Boolean evaluate(Object bean) {
+                Object value = normalize(accessor.getProperty(bean));
+                if (value == null || lowerBound == null || upperBound == null) return null;
+                return compare(value, lowerBound) >= 0 && compare(value, upperBound) <= 0;
+            }
+        };
+    }
+
+    private static CompiledCondition compileSimple(SimpleWhereCondition condition, Class<?> beanClass) {
+        final PropertyAccessor<?> accessor = accessor(condition.getPropertyName(), beanClass);
+        final Operator operator = condition.getOperator();
+
+        if (condition.getValue() == null) {
+            if (operator != Operator.EQ && operator != Operator.NOT_EQ)
+                throw new NullPointerException("Value cannot be null for operators other than EQ and NOT_EQ.");
+            return new CompiledCondition() {
+                @Override
+                public Boolean evaluate(Object bean) {
+                    return (accessor.getProperty(bean) == null) == (operator == Operator.EQ);
+                }
+            };
+        }
+
+        switch (operator) {
+            case IN:
+                return compileIn(accessor, condition.getValue());
+            case CONTAINS:
+                return compileContains(accessor, condition.getValue());
+            case LIKE:
+                return compileLike(accessor, condition.getValue());
+            default:
+                return compileComparison(accessor, operator, condition.getValue());
+        }
+    }
+
+    private static CompiledCondition compileComparison(final PropertyAccessor<?> accessor, final Operator operator, Object value) {
+        final Object expected = normalize(value);
+        return new CompiledCondition() {
+            @Override
+            public Boolean evaluate(Object bean) {
+                Object actual = normalize(accessor.getProperty(bean));
+                if (actual == null) return null;
+
+                switch (operator) {
+                    case EQ:
+                        return actual.equals(expected);
+                    case NOT_EQ:
+                        return !actual.equals(expected);
+                    case GT:
+                        return compare(actual, expected) > 0;
+                    case GT_OR_EQ:
+                        return compare(actual, expected) >= 0;
+                    case LT:
+                        return compare(actual, expected) < 0;
+                    case LT_OR_EQ:
+                        return compare(actual, expected) <= 0;
+                    default:
+                        throw new IllegalArgumentException(String.format("Unsupported operator: %s", operator));
+                }
+            }
+        };
+    }
+
+    private static CompiledCondition compileIn(final PropertyAccessor<?> accessor, Object values) {
+        final Set<Object> expected = normalizedSet(values);
+        final boolean containsNull = expected.remove(null);
+        return new CompiledCondition() {
+            @Override
+            public Boolean evaluate(Object bean) {
+                Object actual = normalize(accessor.getProperty(bean));
+                if (actual == null) return null;
+                return expected.contains(actual) ? Boolean.TRUE : (containsNull || expected.isEmpty() ? null : Boolean.FALSE);
+            }
+        };
+    }
+
+    private static CompiledCondition compileContains(final PropertyAccessor<?> accessor, Object value) {
+        final Object expected = normalize(value);
+        return new CompiledCondition() {
+            @Override
+            public Boolean evaluate(Object bean) {
+                Object elements = accessor.getProperty(bean);
+                return elements != null && normalizedSet(elements).contains(expected);
+            }
+        };
+    }
+
+    private static CompiledCondition compileLike(final PropertyAccessor<?> accessor, Object value) {
+        final Pattern pattern = likePattern(value.toString());
+        return new CompiledCondition() {
+            @Override
+            public Boolean evaluate(Object bean) {
+                Object actual = accessor.getProperty(bean);
+                if (actual == null) return null;
+                return pattern.matcher(actual.toString()).matches();
+            }
+        };
+    }
+
+    /**
+     * Translates a SQL {@code LIKE} pattern, in which {@code %} matches any sequence of characters and {@code _}
+     * matches a single character, into a regular expression.
+     */
+    private static Pattern likePattern(String likePattern) {
+        StringBuilder regex = new StringBuilder(likePattern.length() + 16);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < likePattern.length(); i++) {
+            char c = likePattern.charAt(i);
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static <T> PropertyAccessor<T> accessor(String propertyName, Class<T> beanClass) {
+        String path = propertyName.startsWith("this.") ? propertyName.substring(5) : propertyName;
+        return new PropertyAccessor<T>(path, beanClass);
+    }
+
+    private static Set<Object> normalizedSet(Object values) {
+        Set<Object> result = new HashSet<Object>();
+        if (values instanceof Collection) {
+            for (Object value : (Collection<?>) values) {
+                result.add(normalize(value));
+            }
+        } else if (values.getClass().isArray()) {
+            for (int i = 0; i < Array.getLength(values); i++) {
+                result.add(normalize(Array.get(values, i)));
+            }
+        } else {
+            result.add(normalize(values));
+        }
+        return result;
+    }
+
+    /**
+     * Converts integral numbers to {@link Long}s, other numbers to {@link BigDecimal}s without trailing zeros (or to
+     * {@link Long}s if they are integral) and dates to plain {@link Date}s, so that the values of different types
+     * can be compared with {@code equals} and {@code hashCode}.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Long) {
+            return value;
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Number) {
+            if ((value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))
+                    || (value instanceof Float && (((Float) value).isNaN() || ((Float) value).isInfinite()))) return value;
+
+            BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+            if (decimal.signum() == 0) return 0L;
+            decimal = decimal.stripTrailingZeros();
+            if (decimal.scale() <= 0 && decimal.precision() - decimal.scale() <= 18) return decimal.longValue();
+            return decimal;
+        } else if (value instanceof Date && value.getClass() != Date.class) {
+            return new Date(((Date) value).getTime());
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass())
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+        if (!(a instanceof Comparable) || !a.getClass().isInstance(b))
+            throw new IllegalArgumentException(String.format("Cannot compare %s with %s", a, b));
+        // b is an instance of the class of a, so it is accepted by compareTo
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
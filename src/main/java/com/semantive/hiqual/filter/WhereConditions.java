@@ -19,4 +19,18 @@ public class WhereConditions {
         this.whereCondition = condition;
         return this;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        WhereConditions that = (WhereConditions) o;
+        return whereCondition != null ? whereCondition.equals(that.whereCondition) : that.whereCondition == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return whereCondition != null ? whereCondition.hashCode() : 0;
+    }
 }
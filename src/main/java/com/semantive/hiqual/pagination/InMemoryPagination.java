@@ -0,0 +1,160 @@
+package com.semantive.hiqual.pagination;
+
+import com.google.common.base.Predicate;
+import com.semantive.commons.PropertyAccessor;
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.filter.WhereConditionPredicates;
+import org.hibernate.criterion.Order;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Applies the where conditions, the orders and the page definition of a result set config to an in-memory
+ * collection of beans, so that small, cached reference data can be served the same way as the results of
+ * {@link com.semantive.hiqual.core.QueryBuilder}, without touching the database.
+ * <p/>
+ * The comparators read the order properties with {@link PropertyAccessor}s created once per call. {@code null}
+ * values are placed last in ascending and first in descending order, and the elements which are equal with
+ * respect to all the orders keep their original relative order. When the end of the requested page is much
+ * closer to the beginning of the collection than its size, only the top elements are selected, with a bounded
+ * heap, instead of sorting the whole collection. Keyset pages are not supported.
+ */
+public final class InMemoryPagination {
+
+    /**
+     * The top elements are selected with a heap when the collection is at least that many times larger than
+     * the end of the page.
+     */
+    private static final int TOP_K_RATIO = 4;
+
+    private InMemoryPagination() {
+    }
+
+    /**
+     * Filters, sorts and pages the given beans according to the given config.
+     *
+     * @param beans     all the beans
+     * @param config    result set config
+     * @param beanClass class of the beans, used to read the properties
+     * @return the requested page with the total number of the beans matching the where conditions
+     */
+    public static <T> PaginationAwareListWrapper<T> paginate(Collection<? extends T> beans, IResultSetConfig config, Class<T> beanClass) {
+        PageDefinition page = config != null ? config.pageDefinition() : null;
+        if (page instanceof KeysetPageDefinition)
+            throw new IllegalArgumentException("Keyset pagination is not supported for in-memory collections.");
+
+        List<T> matching = new ArrayList<T>(beans.size());
+        Predicate<T> predicate = config != null && config.whereConditions() != null
+                ? WhereConditionPredicates.compile(config.whereConditions(), beanClass) : null;
+        for (T bean : beans) {
+            if (predicate == null || predicate.apply(bean)) matching.add(bean);
+        }
+
+        Comparator<T> comparator = config != null ? comparator(config.orders(), beanClass) : null;
+        int pageStart = page != null ? Math.min(page.pageStart, matching.size()) : 0;
+        int pageEnd = page != null ? (int) Math.min((long) page.pageStart + page.pageSize, matching.size()) : matching.size();
+
+        List<T> sorted;
+        if (comparator == null) {
+            sorted = matching;
+        } else if ((long) pageEnd * TOP_K_RATIO < matching.size()) {
+            sorted = top(matching, comparator, pageEnd);
+        } else {
+            sorted = new ArrayList<T>(matching);
+            Collections.sort(sorted, comparator);
+        }
+
+        return new PaginationAwareListWrapper<T>(new ArrayList<T>(sorted.subList(pageStart, pageEnd)), pageStart, matching.size());
+    }
+
+    /**
+     * Returns the comparator which sorts the beans of the given class according to the given orders, or
+     * {@code null} if there are no orders.
+     */
+    public static <T> Comparator<T> comparator(List<Order> orders, Class<T> beanClass) {
+        if (orders == null || orders.isEmpty()) return null;
+
+        final List<PropertyAccessor<T>> accessors = new ArrayList<PropertyAccessor<T>>(orders.size());
+        final boolean[] ascending = new boolean[orders.size()];
+        for (int i = 0; i < ascending.length; i++) {
+            String[] order = orders.get(i).toString().split(" ");
+            String property = order[0].startsWith("this.") ? order[0].substring(5) : order[0];
+            accessors.add(new PropertyAccessor<T>(property, beanClass));
+            ascending[i] = order.length < 2 || !"desc".equalsIgnoreCase(order[1]);
+        }
+
+        return new Comparator<T>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public int compare(T a, T b) {
+                for (int i = 0; i < ascending.length; i++) {
+                    Object va = accessors.get(i).getProperty(a);
+                    Object vb = accessors.get(i).getProperty(b);
+                    int result;
+                    if (va == null || vb == null) result = va == vb ? 0 : (va == null ? 1 : -1);
+                    else result = ((Comparable<Object>) va).compareTo(vb);
+                    if (result != 0) return ascending[i] ? result : -result;
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Returns the first {@code k} elements of the given list in the order defined by the comparator, using a heap
+     * of at most {@code k} elements. The original positions break the ties, so the result is the same as the
+     * prefix of the stable sort.
+     */
+    private static <T> List<T> top(List<T> list, final Comparator<T> comparator, int k) {
+        List<T> result = new ArrayList<T>(k);
+        if (k == 0) return result;
+
+        PriorityQueue<Indexed<T>> heap = new PriorityQueue<Indexed<T>>(k, new Comparator<Indexed<T>>() {
+            @Override
+            public int compare(Indexed<T> a, Indexed<T> b) {
+                return -a.compareTo(b, comparator);
+            }
+        });
+        for (int i = 0; i < list.size(); i++) {
+            Indexed<T> element = new Indexed<T>(list.get(i), i);
+            if (heap.size() < k) {
+                heap.add(element);
+            } else if (element.compareTo(heap.peek(), comparator) < 0) {
+                heap.poll();
+                heap.add(element);
+            }
+        }
+
+        List<Indexed<T>> top = new ArrayList<Indexed<T>>(heap);
+        Collections.sort(top, new Comparator<Indexed<T>>() {
+            @Override
+            public int compare(Indexed<T> a, Indexed<T> b) {
+                return a.compareTo(b, comparator);
+            }
+        });
+        for (Indexed<T> element : top) {
+            result.add(element.value);
+        }
+        return result;
+    }
+
+    private static class Indexed<T> {
+        private final T value;
+        private final int index;
+
+        private Indexed(T value, int index) {
+            this.value = value;
+            this.index = index;
+        }
+
+        private int compareTo(Indexed<T> other, Comparator<T> comparator) {
+            int result = comparator.compare(value, other.value);
+            return result != 0 ? result : (index < other.index ? -1 : (index == other.index ? 0 : 1));
+        }
+    }
+}
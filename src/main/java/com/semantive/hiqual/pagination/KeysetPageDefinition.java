@@ -0,0 +1,218 @@
+package com.semantive.hiqual.pagination;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A page definition for keyset (seek) pagination. Instead of skipping {@code pageStart} rows, the next page is
+ * selected by comparing the sort keys with the values of the last row of the previous page. The last key consists
+ * of the values of all the orders of the result set config followed by the value of the entity id (see
+ * {@link com.semantive.hiqual.core.QueryBuilder#setKeysetIdProperty(String)}), which is used as a tie-breaker. A
+ * definition without the last key denotes the first page.
+ * <p/>
+ * The {@code pageStart} is not used to skip rows - it is only carried over, so that the pages know their offset.
+ * The values of the last key must not be null, so the keyset columns should not be nullable.
+ */
+public class KeysetPageDefinition extends PageDefinition {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final BaseEncoding TOKEN_ENCODING = BaseEncoding.base64Url().omitPadding();
+
+    /**
+     * Values of the sort keys of the last row of the previous page or {@code null} for the first page.
+     */
+    public final Object[] lastKey;
+
+    public KeysetPageDefinition(Integer pageSize) {
+        this(0, pageSize, null);
+    }
+
+    public KeysetPageDefinition(Integer pageStart, Integer pageSize, Object[] lastKey) {
+        super(pageStart, pageSize);
+        this.lastKey = lastKey;
+    }
+
+    public boolean isFirstPage() {
+        return lastKey == null;
+    }
+
+    /**
+     * Encodes this page definition into an opaque, URL safe token, which can be handed over to the clients and then
+     * decoded with {@link #fromContinuationToken(String)}.
+     *
+     * @return continuation token
+     */
+    public String toContinuationToken() {
+        JsonObject json = new JsonObject();
+        json.addProperty("o", pageStart);
+        json.addProperty("s", pageSize);
+        if (lastKey != null) {
+            JsonArray key = new JsonArray();
+            for (Object value : lastKey) key.add(encodeValue(value));
+            json.add("k", key);
+        }
+        return TOKEN_ENCODING.encode(json.toString().getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Decodes the page definition encoded with {@link #toContinuationToken()}. Enum values are decoded into
+     * {@link EnumKey}s, which are resolved against the types of the keyset columns when the page is queried.
+     *
+     * @param token continuation token
+     * @return decoded page definition
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static KeysetPageDefinition fromContinuationToken(String token) {
+        try {
+            JsonObject json = new JsonParser().parse(new String(TOKEN_ENCODING.decode(token), Charsets.UTF_8)).getAsJsonObject();
+            Object[] lastKey = null;
+            if (json.has("k")) {
+                JsonArray key = json.getAsJsonArray("k");
+                lastKey = new Object[key.size()];
+                for (int i = 0; i < lastKey.length; i++) lastKey[i] = decodeValue(key.get(i).getAsJsonArray());
+            }
+            return new KeysetPageDefinition(json.get("o").getAsInt(), json.get("s").getAsInt(), lastKey);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException(String.format("Malformed continuation token: %s", token), e);
+        }
+    }
+
+    private static JsonArray encodeValue(Object value) {
+        if (value == null) return typed("n");
+        if (value instanceof String) return typed("s", (String) value);
+        if (value instanceof Long) return typed("l", value.toString());
+        if (value instanceof Integer) return typed("i", value.toString());
+        if (value instanceof Short) return typed("h", value.toString());
+        if (value instanceof Byte) return typed("b", value.toString());
+        if (value instanceof Double) return typed("D", value.toString());
+        if (value instanceof Float) return typed("F", value.toString());
+        if (value instanceof BigDecimal) return typed("B", value.toString());
+        if (value instanceof BigInteger) return typed("I", value.toString());
+        if (value instanceof Boolean) return typed("z", value.toString());
+        if (value instanceof Timestamp)
+            return typed("T", String.valueOf(((Timestamp) value).getTime()), String.valueOf(((Timestamp) value).getNanos()));
+        if (value instanceof Date) return typed("t", String.valueOf(((Date) value).getTime()));
+        if (value instanceof Enum) return typed("e", ((Enum<?>) value).getDeclaringClass().getName(), ((Enum<?>) value).name());
+
+        throw new IllegalArgumentException(String.format("Values of type %s cannot be used as keyset pagination keys.", value.getClass().getName()));
+    }
+
+    private static JsonArray typed(String type, String... values) {
+        JsonArray typed = new JsonArray();
+        typed.add(new JsonPrimitive(type));
+        for (String value : values) typed.add(new JsonPrimitive(value));
+        return typed;
+    }
+
+    private static Object decodeValue(JsonArray typed) {
+        String type = typed.get(0).getAsString();
+        String value = typed.size() > 1 ? typed.get(1).getAsString() : null;
+        if ("n".equals(type)) return null;
+        if ("s".equals(type)) return value;
+        if ("l".equals(type)) return Long.valueOf(value);
+        if ("i".equals(type)) return Integer.valueOf(value);
+        if ("h".equals(type)) return Short.valueOf(value);
+        if ("b".equals(type)) return Byte.valueOf(value);
+        if ("D".equals(type)) return Double.valueOf(value);
+        if ("F".equals(type)) return Float.valueOf(value);
+        if ("B".equals(type)) return new BigDecimal(value);
+        if ("I".equals(type)) return new BigInteger(value);
+        if ("z".equals(type)) return Boolean.valueOf(value);
+        if ("t".equals(type)) return new Date(Long.parseLong(value));
+        if ("T".equals(type)) {
+            Timestamp timestamp = new Timestamp(Long.parseLong(value));
+            timestamp.setNanos(Integer.parseInt(typed.get(2).getAsString()));
+            return timestamp;
+        }
+        if ("e".equals(type)) return new EnumKey(value, typed.get(2).getAsString());
+        throw new IllegalArgumentException(String.format("Unknown key type %s.", type));
+    }
+
+    /**
+     * An enum value decoded from a continuation token. The enum type named in the token is never loaded - the value
+     * is resolved with {@link #resolve(Class)} against the type of the keyset column it belongs to.
+     */
+    public static final class EnumKey implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String typeName;
+        private final String name;
+
+        private EnumKey(String typeName, String name) {
+            this.typeName = typeName;
+            this.name = name;
+        }
+
+        /**
+         * Returns the constant of the given enum type.
+         *
+         * @throws IllegalArgumentException if the given type is not the enum type named in the token
+         */
+        public Object resolve(Class<?> type) {
+            if (type == null || !type.isEnum() || !type.getName().equals(typeName))
+                throw new IllegalArgumentException(String.format("The enum key %s does not match the keyset column type %s.", this, type));
+            for (Object constant : type.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equals(name)) return constant;
+            }
+            throw new IllegalArgumentException(String.format("The enum type %s has no constant %s.", typeName, name));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            EnumKey that = (EnumKey) o;
+            return typeName.equals(that.typeName) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * typeName.hashCode() + name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return typeName + "." + name;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        KeysetPageDefinition that = (KeysetPageDefinition) o;
+        return super.equals(o) && Arrays.equals(lastKey, that.lastKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Arrays.hashCode(lastKey);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("pageStart", pageStart)
+                .append("pageSize", pageSize)
+                .append("lastKey", lastKey)
+                .toString();
+    }
+}
@@ -21,15 +21,23 @@ public class PaginationAwareListWrapper<T> extends AbstractElementCollection<T,
 
     private final int _totalSize;
 
+    private final KeysetPageDefinition _nextPage;
+
     public PaginationAwareListWrapper(List<T> baseList, int offset, int totalSize) {
+        this(baseList, offset, totalSize, null);
+    }
+
+    public PaginationAwareListWrapper(List<T> baseList, int offset, int totalSize, KeysetPageDefinition nextPage) {
         this._baseList = baseList;
         this._offset = offset;
         this._totalSize = totalSize;
+        this._nextPage = nextPage;
     }
 
     public PaginationAwareListWrapper(List<T> baseList, IResultSetConfig config, int totalSize) {
         this._baseList = baseList;
         this._totalSize = totalSize;
+        this._nextPage = null;
         if (config != null && config.pageDefinition() != null)
             this._offset = config.pageDefinition().pageStart;
         else
@@ -185,4 +193,19 @@ public class PaginationAwareListWrapper<T> extends AbstractElementCollection<T,
         return _offset;
     }
 
+    /**
+     * @return definition of the next page when keyset pagination is used, {@code null} if this is the last page
+     */
+    public KeysetPageDefinition nextPage() {
+        return _nextPage;
+    }
+
+    /**
+     * @return continuation token of the next page when keyset pagination is used, {@code null} if this is the last
+     *         page
+     */
+    public String continuationToken() {
+        return _nextPage != null ? _nextPage.toContinuationToken() : null;
+    }
+
 }
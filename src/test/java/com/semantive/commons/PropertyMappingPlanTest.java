@@ -0,0 +1,275 @@
+package com.semantive.commons;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Checks that {@link PropertyMappingPlan} populates the beans in the same way as the property accessors used one by
+ * one.
+ */
+public class PropertyMappingPlanTest {
+
+    private static final String[] PATHS = {"name", "address.city", "address.geo.latitude", "address.geo.longitude", "tags", "contact.email"};
+
+    @Test
+    public void allValuesAreSet() {
+        assertEquivalent("Jan", "Warsaw", 52.2, 21.0, Arrays.asList("a", "b"), "jan@example.com");
+    }
+
+    @Test
+    public void intermediateObjectsAreNotCreatedForNullValues() {
+        Person person = assertEquivalent("Jan", null, null, null, null, null);
+
+        assertNull(person.getAddress());
+        assertNull(person.getContact());
+    }
+
+    @Test
+    public void intermediateObjectsAreCreatedForNestedValues() {
+        Person person = assertEquivalent(null, null, 52.2, null, null, null);
+
+        assertEquals(person.getAddress().getGeo().getLatitude(), 52.2);
+        assertNull(person.getAddress().getCity());
+    }
+
+    @Test
+    public void collectionsAreCopiedToPropertyType() {
+        Person person = assertEquivalent(null, null, null, null, Arrays.asList("a", "b", "a"), null);
+
+        assertEquals(person.getTags(), new HashSet<String>(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void replacementClassIsInstantiated() {
+        Person person = assertEquivalent(null, null, null, null, null, "jan@example.com");
+
+        assertEquals(person.getContact().getClass(), EmailContact.class);
+    }
+
+    @Test
+    public void existingIntermediateObjectsAreReused() {
+        PropertyMappingPlan<Person> plan = new PropertyMappingPlan<Person>(Person.class, accessors("metadata.source"));
+
+        Person person = plan.map(new Object[]{"import"});
+
+        assertEquals(person.getMetadata().getSource(), "import");
+        assertEquals(person.getMetadata().getCreatedBy(), "constructor");
+    }
+
+    @Test
+    public void sharedPrefixIsCreatedOnce() {
+        PropertyMappingPlan<Person> plan = new PropertyMappingPlan<Person>(Person.class, accessors(PATHS));
+        Address.instances = 0;
+
+        Person person = plan.map(new Object[]{null, "Warsaw", 52.2, 21.0, null, null});
+
+        assertEquals(Address.instances, 1);
+        assertEquals(person.getAddress().getGeo().getLongitude(), 21.0);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void setterFailureIsReported() {
+        new PropertyMappingPlan<Person>(Person.class, accessors("name")).map(new Object[]{Person.INVALID_NAME});
+    }
+
+    private static Person assertEquivalent(Object... values) {
+        PropertyAccessor<Person>[] accessors = accessors(PATHS);
+
+        Person expected = new Person();
+        for (int i = 0; i < accessors.length; i++) accessors[i].setProperty(expected, values[i]);
+        Person actual = new PropertyMappingPlan<Person>(Person.class, accessors).map(values);
+
+        assertEquals(actual.toString(), expected.toString());
+        return actual;
+    }
+
+    private static PropertyAccessor<Person>[] accessors(String... paths) {
+        Map<Integer, Class> contactClass = new HashMap<Integer, Class>();
+        contactClass.put(0, EmailContact.class);
+
+        @SuppressWarnings("unchecked")
+        PropertyAccessor<Person>[] accessors = new PropertyAccessor[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            Map<Integer, Class> classesMapping = paths[i].startsWith("contact.") ? contactClass : Collections.<Integer, Class>emptyMap();
+            accessors[i] = new PropertyAccessor<Person>(paths[i], Person.class, classesMapping);
+        }
+        return accessors;
+    }
+
+    public static class Person {
+        private static final String INVALID_NAME = "invalid";
+
+        private String name;
+        private Address address;
+        private Set<String> tags;
+        private Contact contact;
+        private Metadata metadata = new Metadata("constructor");
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            if (INVALID_NAME.equals(name)) throw new IllegalArgumentException(name);
+            this.name = name;
+        }
+
+        public Address getAddress() {
+            return address;
+        }
+
+        public void setAddress(Address address) {
+            this.address = address;
+        }
+
+        public Set<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(Set<String> tags) {
+            this.tags = tags;
+        }
+
+        public Contact getContact() {
+            return contact;
+        }
+
+        public void setContact(Contact contact) {
+            this.contact = contact;
+        }
+
+        public Metadata getMetadata() {
+            return metadata;
+        }
+
+        public void setMetadata(Metadata metadata) {
+            this.metadata = metadata;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Person(%s, %s, %s, %s, %s)", name, address, tags, contact, metadata);
+        }
+    }
+
+    public static class Address {
+        private static int instances;
+
+        private String city;
+        private Geo geo;
+
+        public Address() {
+            instances++;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+
+        public Geo getGeo() {
+            return geo;
+        }
+
+        public void setGeo(Geo geo) {
+            this.geo = geo;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Address(%s, %s)", city, geo);
+        }
+    }
+
+    public static class Geo {
+        private Double latitude;
+        private Double longitude;
+
+        public Double getLatitude() {
+            return latitude;
+        }
+
+        public void setLatitude(Double latitude) {
+            this.latitude = latitude;
+        }
+
+        public Double getLongitude() {
+            return longitude;
+        }
+
+        public void setLongitude(Double longitude) {
+            this.longitude = longitude;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Geo(%s, %s)", latitude, longitude);
+        }
+    }
+
+    public static interface Contact {
+        String getEmail();
+
+        void setEmail(String email);
+    }
+
+    public static class EmailContact implements Contact {
+        private String email;
+
+        @Override
+        public String getEmail() {
+            return email;
+        }
+
+        @Override
+        public void setEmail(String email) {
+            this.email = email;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("EmailContact(%s)", email);
+        }
+    }
+
+    public static class Metadata {
+        private String createdBy;
+        private String source;
+
+        public Metadata() {
+        }
+
+        public Metadata(String createdBy) {
+            this.createdBy = createdBy;
+        }
+
+        public String getCreatedBy() {
+            return createdBy;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public void setSource(String source) {
+            this.source = source;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Metadata(%s, %s)", createdBy, source);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.semantive.hiqual.core;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class AliasToBeanCustomTransformerTest {
+
+    @Test
+    public void nestedPropertiesAreSet() {
+        Order order = (Order) AliasToBeanCustomTransformer.build(Order.class)
+                .transformTuple(new Object[]{1L, "Jan", "Warsaw"}, new String[]{"id", "customer.name", "customer.address.city"});
+
+        assertEquals(order.getId(), Long.valueOf(1L));
+        assertEquals(order.getCustomer().getName(), "Jan");
+        assertEquals(order.getCustomer().getAddress().getCity(), "Warsaw");
+    }
+
+    @Test
+    public void leadingComponentAndPathSeparatorAreApplied() {
+        Order order = (Order) AliasToBeanCustomTransformer.build(Order.class)
+                .skipLeadingComponent("this")
+                .usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE)
+                .transformTuple(new Object[]{1L, "Warsaw"}, new String[]{"this_id", "this_customer_address_city"});
+
+        assertEquals(order.getId(), Long.valueOf(1L));
+        assertEquals(order.getCustomer().getAddress().getCity(), "Warsaw");
+        assertNull(order.getCustomer().getName());
+    }
+
+    @Test
+    public void nullNestedValuesLeaveIntermediateObjectsUnset() {
+        Order order = (Order) AliasToBeanCustomTransformer.build(Order.class)
+                .transformTuple(new Object[]{1L, null}, new String[]{"id", "customer.address.city"});
+
+        assertNull(order.getCustomer());
+    }
+
+    @Test
+    public void classReplacementIsInstantiated() {
+        Order order = (Order) AliasToBeanCustomTransformer.build(Order.class)
+                .setClassReplacement("customer", VipCustomer.class)
+                .transformTuple(new Object[]{"Jan"}, new String[]{"customer.name"});
+
+        assertEquals(order.getCustomer().getClass(), VipCustomer.class);
+    }
+
+    @Test
+    public void mappingPlanIsCachedPerConfiguration() {
+        String[] aliases = {"id", "customer.name"};
+        AliasToBeanCustomTransformer.build(Order.class).transformTuple(new Object[]{1L, "Jan"}, aliases);
+        long hits = AliasToBeanCustomTransformer.getCacheStats().hitCount();
+
+        Order order = (Order) AliasToBeanCustomTransformer.build(Order.class).transformTuple(new Object[]{2L, "Anna"}, aliases.clone());
+        assertEquals(AliasToBeanCustomTransformer.getCacheStats().hitCount(), hits + 1);
+        assertEquals(order.getCustomer().getName(), "Anna");
+
+        order = (Order) AliasToBeanCustomTransformer.build(Order.class).setClassReplacement("customer", VipCustomer.class)
+                .transformTuple(new Object[]{3L, "Ewa"}, aliases.clone());
+        assertEquals(AliasToBeanCustomTransformer.getCacheStats().hitCount(), hits + 1);
+        assertEquals(order.getCustomer().getClass(), VipCustomer.class);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void configurationAfterInitializationIsRejected() {
+        AliasToBeanCustomTransformer<Order> transformer = AliasToBeanCustomTransformer.build(Order.class);
+        transformer.transformTuple(new Object[]{1L}, new String[]{"id"});
+
+        transformer.usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE);
+    }
+
+    public static class Order {
+        private Long id;
+        private Customer customer;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(Customer customer) {
+            this.customer = customer;
+        }
+    }
+
+    public static class Customer {
+        private String name;
+        private Address address;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Address getAddress() {
+            return address;
+        }
+
+        public void setAddress(Address address) {
+            this.address = address;
+        }
+    }
+
+    public static class VipCustomer extends Customer {
+    }
+
+    public static class Address {
+        private String city;
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.semantive.hiqual.core;
+
+import org.testng.annotations.Test;
+
+import java.beans.ConstructorProperties;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class AliasToConstructorTransformerTest {
+
+    @Test
+    public void annotatedConstructorIsUsed() {
+        Point point = (Point) AliasToConstructorTransformer.build(Point.class).transformTuple(new Object[]{1, 2}, new String[]{"x", "y"});
+
+        assertEquals(point.getX(), 1);
+        assertEquals(point.getY(), 2);
+        assertEquals(point.getCreatedBy(), "constructor");
+    }
+
+    @Test
+    public void aliasesAreMatchedByName() {
+        AliasToConstructorTransformer<Point> transformer = AliasToConstructorTransformer.build(Point.class);
+
+        Point point = (Point) transformer.transformTuple(new Object[]{2, 1}, new String[]{"y", "x"});
+        assertEquals(point.getX(), 1);
+        assertEquals(point.getY(), 2);
+
+        point = (Point) transformer.transformTuple(new Object[]{4, 3}, new String[]{"y", "x"});
+        assertEquals(point.getX(), 3);
+        assertEquals(point.getY(), 4);
+    }
+
+    @Test
+    public void nestedNamesAreMatchedWithPathSeparator() {
+        Customer customer = (Customer) AliasToConstructorTransformer.build(Customer.class)
+                .usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE)
+                .transformTuple(new Object[]{"Warsaw", "Jan"}, new String[]{"address_city", "name"});
+
+        assertEquals(customer.getName(), "Jan");
+        assertEquals(customer.getCity(), "Warsaw");
+    }
+
+    @Test
+    public void factoryMethodIsUsed() {
+        Point point = (Point) AliasToConstructorTransformer.build(Point.class, "of", "x", "y")
+                .transformTuple(new Object[]{1, 2}, new String[]{"x", "y"});
+
+        assertEquals(point.getX(), 1);
+        assertEquals(point.getY(), 2);
+        assertEquals(point.getCreatedBy(), "factory");
+    }
+
+    @Test
+    public void nullArgumentsArePassed() {
+        Customer customer = (Customer) AliasToConstructorTransformer.build(Customer.class)
+                .transformTuple(new Object[]{null, null}, new String[]{"name", "address.city"});
+
+        assertNull(customer.getName());
+        assertNull(customer.getCity());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void classWithoutAnnotatedConstructorIsRejected() {
+        AliasToConstructorTransformer.build(String.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void classWithManyAnnotatedConstructorsIsRejected() {
+        AliasToConstructorTransformer.build(Ambiguous.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void missingFactoryMethodIsRejected() {
+        AliasToConstructorTransformer.build(Point.class, "of", "x");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void ambiguousFactoryMethodIsRejected() {
+        AliasToConstructorTransformer.build(Ambiguous.class, "of", "value");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void aliasesNotMatchingParametersAreRejected() {
+        AliasToConstructorTransformer.build(Point.class).transformTuple(new Object[]{1, 2}, new String[]{"x", "z"});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void aliasesOfOtherCountAreRejected() {
+        AliasToConstructorTransformer.build(Point.class).transformTuple(new Object[]{1}, new String[]{"x"});
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void configurationAfterInitializationIsRejected() {
+        AliasToConstructorTransformer<Point> transformer = AliasToConstructorTransformer.build(Point.class);
+        transformer.transformTuple(new Object[]{1, 2}, new String[]{"x", "y"});
+
+        transformer.usePathSeparator(AliasToBeanCustomTransformer.UNDERSCORE);
+    }
+
+    @Test
+    public void constructorFailureIsReportedWithCause() {
+        try {
+            AliasToConstructorTransformer.build(Point.class).transformTuple(new Object[]{-1, 2}, new String[]{"x", "y"});
+        } catch (RuntimeException e) {
+            assertEquals(e.getCause().getClass(), IllegalArgumentException.class);
+            return;
+        }
+        throw new AssertionError("The failure of the constructor should be reported.");
+    }
+
+    public static class Point {
+        private final int x;
+        private final int y;
+        private final String createdBy;
+
+        @ConstructorProperties({"x", "y"})
+        public Point(int x, int y) {
+            this(x, y, "constructor");
+        }
+
+        private Point(int x, int y, String createdBy) {
+            if (x < 0) throw new IllegalArgumentException("negative x");
+            this.x = x;
+            this.y = y;
+            this.createdBy = createdBy;
+        }
+
+        public static Point of(int x, int y) {
+            return new Point(x, y, "factory");
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public String getCreatedBy() {
+            return createdBy;
+        }
+    }
+
+    public static class Customer {
+        private final String name;
+        private final String city;
+
+        @ConstructorProperties({"name", "address.city"})
+        public Customer(String name, String city) {
+            this.name = name;
+            this.city = city;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCity() {
+            return city;
+        }
+    }
+
+    public static class Ambiguous {
+        @ConstructorProperties({"value"})
+        public Ambiguous(String value) {
+        }
+
+        @ConstructorProperties({"value"})
+        public Ambiguous(Integer value) {
+        }
+
+        public static Ambiguous of(String value) {
+            return new Ambiguous(value);
+        }
+
+        public static Ambiguous of(Integer value) {
+            return new Ambiguous(value);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.TextSearchExpressions;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HibernateQueryUtilsTest {
+
+    @Test
+    public void parameterizedConditionUsesSearchModes() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addPlainProperty("code", TextSearchExpressions.SearchMode.EXACT)
+                .addPlainProperty("name", TextSearchExpressions.SearchMode.CONTAINS);
+
+        String condition = HibernateQueryUtils.generateParameterizedAutocompleteQuery(config(expressions, "Abc"));
+
+        assertTrue(condition.contains("(LOWER(this.code) = :searchToken0Exact)"), condition);
+        assertTrue(condition.contains("(LOWER(this.name) LIKE :searchToken0Contains)"), condition);
+    }
+
+    @Test
+    public void parameterizedConditionDoesNotLowerShadowExpressions() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addShadowProperty("name", "nameSearch", TextSearchExpressions.PropertyExpressionTypeDict.PLAIN, TextSearchExpressions.SearchMode.PREFIX);
+
+        String condition = HibernateQueryUtils.generateParameterizedAutocompleteQuery(config(expressions, "Abc"));
+
+        assertEquals(condition, " (((this.nameSearch LIKE :searchToken0Prefix))) ");
+    }
+
+    @Test
+    public void parametersHaveWildcardsOfSearchModes() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addPlainProperty("code", TextSearchExpressions.SearchMode.EXACT)
+                .addPlainProperty("name", TextSearchExpressions.SearchMode.CONTAINS)
+                .addPlainProperty("city", TextSearchExpressions.SearchMode.PREFIX);
+
+        Map<String, Object> parameters = HibernateQueryUtils.autocompleteParameters(new String[]{"Abc", "d"}, expressions.getPropertyExpressions(), false);
+
+        assertEquals(parameters.size(), 6);
+        assertEquals(parameters.get("searchToken0Exact"), "abc");
+        assertEquals(parameters.get("searchToken0Contains"), "%abc%");
+        assertEquals(parameters.get("searchToken0Prefix"), "abc%");
+        assertEquals(parameters.get("searchToken1Prefix"), "d%");
+    }
+
+    @Test
+    public void parameterizedConditionIsTheSameAsInQueryBuilder() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addPlainProperty("code", TextSearchExpressions.SearchMode.EXACT)
+                .addPlainProperty("name", TextSearchExpressions.SearchMode.PREFIX)
+                .addShadowProperty("date", "dateSearch", TextSearchExpressions.PropertyExpressionTypeDict.DATE, TextSearchExpressions.SearchMode.PREFIX);
+        IResultSetConfig config = config(expressions, "abc def");
+
+        String condition = new QueryBuilder<Object>(Object.class, config).setFromClause("from Item this").generateAutocompleteCondition();
+
+        assertEquals(HibernateQueryUtils.generateParameterizedAutocompleteQuery(config), condition);
+    }
+
+    @Test
+    public void dictExpressionsAreComparedWithMatchingConstants() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addDictProperty("status", QueryBuilderSearchTest.Status.class, QueryBuilderSearchTest.Status.LABELS);
+
+        String condition = HibernateQueryUtils.generateParameterizedAutocompleteQuery(config(expressions, "akt"));
+        Map<String, Object> parameters = HibernateQueryUtils.autocompleteParameters(new String[]{"akt"}, expressions.getPropertyExpressions(), false);
+
+        assertEquals(condition, " (((this.status in (:searchToken0Dict0)))) ");
+        assertEquals(parameters.get("searchToken0Dict0"), Arrays.asList(QueryBuilderSearchTest.Status.ACTIVE));
+    }
+
+    @Test
+    public void literalConditionMatchesLabelsOfDictExpressions() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addDictProperty("status", QueryBuilderSearchTest.Status.class, QueryBuilderSearchTest.Status.LABELS);
+
+        String condition = HibernateQueryUtils.generateAutocompleteQuery(config(expressions, "akt"));
+
+        assertEquals(condition, " (((LOWER((case this.status when 'ACTIVE' then 'aktywny'  when 'CLOSED' then 'zamknięty'  end)) LIKE LOWER('akt%')))) ");
+    }
+
+    private static IResultSetConfig config(TextSearchExpressions expressions, String searchString) {
+        return new ResultSetConfigBuilder().setTextSearchExpressions(expressions).setSearchString(searchString).build();
+    }
+}
@@ -0,0 +1,227 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Checks {@link QueryBuilder#generatePaginatedListAsync(SessionFactory, ExecutorService)} on an in-memory H2
+ * database.
+ */
+public class QueryBuilderAsyncTest {
+
+    private static final int ITEM_COUNT = 20;
+
+    private SessionFactory sessionFactory;
+
+    private ExecutorService executor;
+
+    private final AtomicInteger openedSessions = new AtomicInteger();
+
+    private final AtomicInteger closedSessions = new AtomicInteger();
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Item.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:async;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (long id = 1; id <= ITEM_COUNT; id++) {
+            Item item = new Item();
+            item.setId(id);
+            session.save(item);
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void setUpExecutor() {
+        executor = Executors.newFixedThreadPool(2);
+        openedSessions.set(0);
+        closedSessions.set(0);
+    }
+
+    @AfterMethod
+    public void tearDownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void pageAndTotalSizeAreQueriedConcurrently() throws Exception {
+        PaginationAwareListWrapper<Item> page = queryBuilder(config(5, 5)).generatePaginatedListAsync(countingSessionFactory(), executor).get();
+
+        assertEquals(page.size(), 5);
+        assertEquals(page.get(0).getId(), Long.valueOf(6L));
+        assertEquals(page.offset(), 5);
+        assertEquals(page.totalSize(), ITEM_COUNT);
+        awaitTasks();
+        assertEquals(openedSessions.get(), 2);
+        assertEquals(closedSessions.get(), 2);
+    }
+
+    @Test
+    public void lastPageDoesNotWaitForCount() throws Exception {
+        PaginationAwareListWrapper<Item> page = queryBuilder(config(15, 10)).generatePaginatedListAsync(countingSessionFactory(), executor)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(page.size(), 5);
+        assertEquals(page.totalSize(), ITEM_COUNT);
+        awaitTasks();
+        assertEquals(closedSessions.get(), openedSessions.get());
+    }
+
+    @Test
+    public void failureIsPropagated() throws Exception {
+        Future<PaginationAwareListWrapper<Item>> future = queryBuilder(config(0, 5)).setFromClause("from Item i where i.missing = 1")
+                .generatePaginatedListAsync(countingSessionFactory(), executor);
+
+        try {
+            future.get();
+            fail("The failure of the query should be propagated.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RuntimeException, String.valueOf(e.getCause()));
+        }
+        awaitTasks();
+        assertEquals(closedSessions.get(), openedSessions.get());
+    }
+
+    @Test
+    public void cancelledQueriesAreNotExecuted() throws Exception {
+        ExecutorService blockedExecutor = Executors.newSingleThreadExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        blockedExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                latch.await();
+                return null;
+            }
+        });
+
+        Future<PaginationAwareListWrapper<Item>> future = queryBuilder(config(0, 5)).generatePaginatedListAsync(countingSessionFactory(), blockedExecutor);
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+
+        latch.countDown();
+        blockedExecutor.shutdown();
+        assertTrue(blockedExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(openedSessions.get(), 0);
+        try {
+            future.get();
+            fail("The cancellation should be reported.");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    private void awaitTasks() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Returns the session factory which counts the opened and closed stateless sessions.
+     */
+    private SessionFactory countingSessionFactory() {
+        return (SessionFactory) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{SessionFactory.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = delegate(sessionFactory, method, args);
+                if (method.getName().equals("openStatelessSession")) {
+                    openedSessions.incrementAndGet();
+                    return countingSession((StatelessSession) result);
+                }
+                return result;
+            }
+        });
+    }
+
+    private StatelessSession countingSession(final StatelessSession session) {
+        return (StatelessSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{StatelessSession.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("close")) closedSessions.incrementAndGet();
+                return delegate(session, method, args);
+            }
+        });
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static QueryBuilder<Item> queryBuilder(IResultSetConfig config) {
+        return new QueryBuilder<Item>(Item.class, config)
+                .setDefaultSelectClause("select i")
+                .setFromClause("from Item i")
+                .addDefaultSubstitution("i")
+                .setDefaultOrder(Order.asc("i.id"));
+    }
+
+    private static IResultSetConfig config(int offset, int pageSize) {
+        return new ResultSetConfigBuilder().setOffset(offset).setFetchSize(pageSize).build();
+    }
+
+    @Entity(name = "Item")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+    }
+}
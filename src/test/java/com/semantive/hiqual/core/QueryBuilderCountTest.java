@@ -0,0 +1,196 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.pagination.PageDefinition;
+import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Checks when {@link QueryBuilder#generatePaginatedList(Session)} executes the count query, on an in-memory H2
+ * database.
+ */
+public class QueryBuilderCountTest {
+
+    private static final int ITEM_COUNT = 10;
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    private CountingListener listener;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Item.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:count;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (long id = 1; id <= ITEM_COUNT; id++) {
+            Item item = new Item();
+            item.setId(id);
+            session.save(item);
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void openSession() {
+        session = sessionFactory.openSession();
+        listener = new CountingListener();
+    }
+
+    @AfterMethod
+    public void closeSession() {
+        session.close();
+    }
+
+    @Test
+    public void fullPageIsCounted() {
+        PaginationAwareListWrapper<Item> page = queryBuilder(0, 4).generatePaginatedList(session);
+
+        assertEquals(page.size(), 4);
+        assertEquals(page.totalSize(), ITEM_COUNT);
+        assertEquals(listener.countQueries, 1);
+    }
+
+    @Test
+    public void partialPageIsNotCounted() {
+        PaginationAwareListWrapper<Item> page = queryBuilder(8, 4).generatePaginatedList(session);
+
+        assertEquals(page.size(), 2);
+        assertEquals(page.totalSize(), ITEM_COUNT);
+        assertEquals(listener.countQueries, 0);
+    }
+
+    @Test
+    public void emptyPageIsCounted() {
+        PaginationAwareListWrapper<Item> page = queryBuilder(20, 4).generatePaginatedList(session);
+
+        assertEquals(page.size(), 0);
+        assertEquals(page.totalSize(), ITEM_COUNT);
+        assertEquals(listener.countQueries, 1);
+    }
+
+    @Test
+    public void estimatedModeReportsOneMoreElementForFullPage() {
+        PaginationAwareListWrapper<Item> page = queryBuilder(4, 4).setCountMode(QueryBuilder.CountMode.ESTIMATED).generatePaginatedList(session);
+
+        assertEquals(page.size(), 4);
+        assertEquals(page.totalSize(), 9);
+        assertEquals(listener.countQueries, 0);
+    }
+
+    @Test
+    public void estimatedModeCountsEmptyPage() {
+        PaginationAwareListWrapper<Item> page = queryBuilder(20, 4).setCountMode(QueryBuilder.CountMode.ESTIMATED).generatePaginatedList(session);
+
+        assertEquals(page.totalSize(), ITEM_COUNT);
+        assertEquals(listener.countQueries, 1);
+    }
+
+    @Test
+    public void cachedTotalSizeIsReused() {
+        TotalSizeCache cache = new TotalSizeCache(1, TimeUnit.HOURS);
+
+        assertEquals(queryBuilder(0, 4).useTotalSizeCache(cache).generatePaginatedList(session).totalSize(), ITEM_COUNT);
+        assertEquals(queryBuilder(4, 4).useTotalSizeCache(cache).generatePaginatedList(session).totalSize(), ITEM_COUNT);
+
+        assertEquals(listener.countQueries, 1);
+        assertEquals(cache.stats().hitCount(), 1);
+    }
+
+    @Test
+    public void totalSizeIsCachedPerParameterValues() {
+        TotalSizeCache cache = new TotalSizeCache(1, TimeUnit.HOURS);
+
+        assertEquals(queryBuilder(0, 2).useTotalSizeCache(cache)
+                .addConditionalWhereCondition("i.id > :minId", "minId", 2L)
+                .generatePaginatedList(session).totalSize(), ITEM_COUNT - 2);
+        assertEquals(queryBuilder(0, 2).useTotalSizeCache(cache)
+                .addConditionalWhereCondition("i.id > :minId", "minId", 5L)
+                .generatePaginatedList(session).totalSize(), ITEM_COUNT - 5);
+
+        assertEquals(listener.countQueries, 2);
+    }
+
+    @Test
+    public void cacheKeyComparesArraysByContent() {
+        TotalSizeCache cache = new TotalSizeCache(1, TimeUnit.HOURS);
+        cache.put("select count(*) from Item", Collections.<String, Object>singletonMap("ids", new Object[]{1L, 2L}), 2);
+
+        assertEquals(cache.get("select count(*) from Item", Collections.<String, Object>singletonMap("ids", new Object[]{1L, 2L})), Integer.valueOf(2));
+        assertNull(cache.get("select count(*) from Item", Collections.<String, Object>singletonMap("ids", new Object[]{1L, 3L})));
+        assertNull(cache.get("select count(*) from Other", Collections.<String, Object>singletonMap("ids", new Object[]{1L, 2L})));
+    }
+
+    @Test
+    public void cacheKeyAcceptsNoParameters() {
+        TotalSizeCache cache = new TotalSizeCache(1, TimeUnit.HOURS);
+        cache.put("select count(*) from Item", null, 10);
+
+        assertEquals(cache.get("select count(*) from Item", Collections.<String, Object>emptyMap()), Integer.valueOf(10));
+    }
+
+    private QueryBuilder<Item> queryBuilder(int pageStart, int pageSize) {
+        return new QueryBuilder<Item>(Item.class, new ResultSetConfigBuilder().setPageDefinition(new PageDefinition(pageStart, pageSize)).build())
+                .setDefaultSelectClause("select i")
+                .setFromClause("from Item i")
+                .addDefaultSubstitution("i")
+                .setDefaultOrder(Order.asc("i.id"))
+                .useQueryListener(listener);
+    }
+
+    private static class CountingListener extends NoOpQueryListener {
+        private int countQueries;
+
+        @Override
+        public void countQueryExecuted(QueryExecutionContext context, long nanos) {
+            countQueries++;
+        }
+    }
+
+    @Entity(name = "Item")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+/**
+ * Checks the lifecycle of the rows of the id filter table on an in-memory H2 database.
+ */
+public class QueryBuilderIdFilterTest {
+
+    private static final int ITEM_COUNT = 100;
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Item.class)
+                .addAnnotatedClass(IdFilterEntry.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:idfilter;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (long id = 1; id <= ITEM_COUNT; id++) {
+            Item item = new Item();
+            item.setId(id);
+            session.save(item);
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void openSession() {
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+    }
+
+    @AfterMethod
+    public void closeSession() {
+        session.getTransaction().rollback();
+        session.close();
+    }
+
+    @Test
+    public void paginatedListSharesFilterBetweenMainAndCountQuery() {
+        final List<List> filterKeys = new ArrayList<List>();
+        QueryBuilder<Item> queryBuilder = queryBuilder(config(evenIds(), 5)).useQueryListener(new NoOpQueryListener() {
+            @Override
+            public void mainQueryExecuted(QueryExecutionContext context, long nanos, int rows, long transformationNanos) {
+                filterKeys.add(filterKeys());
+            }
+
+            @Override
+            public void countQueryExecuted(QueryExecutionContext context, long nanos) {
+                filterKeys.add(filterKeys());
+            }
+        });
+
+        PaginationAwareListWrapper<Item> list = queryBuilder.generatePaginatedList(session);
+
+        assertEquals(list.size(), 5);
+        assertEquals(list.totalSize(), ITEM_COUNT / 2);
+        assertEquals(filterKeys.size(), 2);
+        assertEquals(filterKeys.get(0).size(), 1);
+        assertEquals(filterKeys.get(1), filterKeys.get(0));
+        assertEquals(rowCount(), 0L);
+    }
+
+    @Test
+    public void plainListDeletesFilter() {
+        List<Item> list = queryBuilder(config(evenIds(), null)).generatePlainList(session);
+
+        assertEquals(list.size(), ITEM_COUNT / 2);
+        assertEquals(rowCount(), 0L);
+    }
+
+    @Test
+    public void generatedQueriesShareFilterUntilReleased() {
+        QueryBuilder<Item> queryBuilder = queryBuilder(config(evenIds(), 5));
+
+        List mainResult = queryBuilder.generateMainQuery(session).list();
+        Number countResult = (Number) queryBuilder.generateCountQuery(session).uniqueResult();
+
+        assertEquals(mainResult.size(), 5);
+        assertEquals(countResult.intValue(), ITEM_COUNT / 2);
+        assertEquals(filterCount(), 1L);
+
+        queryBuilder.releaseIdFilters();
+        assertEquals(rowCount(), 0L);
+    }
+
+    @Test
+    public void iteratorDeletesFilterWhenIterated() {
+        ScrollableResultsIterator<Item> iterator = queryBuilder(config(evenIds(), null)).generateIterator(session);
+        assertEquals(filterCount(), 1L);
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+
+        assertEquals(count, ITEM_COUNT / 2);
+        assertEquals(rowCount(), 0L);
+    }
+
+    @Test
+    public void iteratorDeletesFilterWhenClosed() {
+        ScrollableResultsIterator<Item> iterator = queryBuilder(config(evenIds(), null)).generateIterator(session);
+        iterator.next();
+        iterator.close();
+
+        assertFalse(iterator.hasNext());
+        assertEquals(rowCount(), 0L);
+    }
+
+    private QueryBuilder<Item> queryBuilder(IResultSetConfig config) {
+        return new QueryBuilder<Item>(Item.class, config)
+                .setDefaultSelectClause("select i")
+                .setFromClause("from Item i")
+                .addDefaultSubstitution("i")
+                .setDefaultOrder(Order.asc("i.id"))
+                .useIdFilterTable(10);
+    }
+
+    private static IResultSetConfig config(List<Long> ids, Integer pageSize) {
+        ResultSetConfigBuilder builder = new ResultSetConfigBuilder().byIds(ids);
+        if (pageSize != null) builder.setOffset(0).setFetchSize(pageSize);
+        return builder.build();
+    }
+
+    private static List<Long> evenIds() {
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 2; id <= ITEM_COUNT; id += 2) ids.add(id);
+        return ids;
+    }
+
+    private List filterKeys() {
+        return session.createQuery("select distinct e.filterKey from IdFilterEntry e").list();
+    }
+
+    private long filterCount() {
+        return filterKeys().size();
+    }
+
+    private long rowCount() {
+        return ((Number) session.createQuery("select count(*) from IdFilterEntry e").uniqueResult()).longValue();
+    }
+
+    @Entity(name = "Item")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.TextSearchExpressions;
+import com.semantive.hiqual.pagination.PageDefinition;
+import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Checks the relevance ranking of the search results on an in-memory H2 database.
+ */
+public class QueryBuilderRankingTest {
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Person.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:ranking;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(new Person(1L, "Bob", "Annapolis"));
+        session.save(new Person(2L, "Joanna", "Rome"));
+        session.save(new Person(3L, "Anna", "Paris"));
+        session.save(new Person(4L, "Ann", "Berlin"));
+        session.save(new Person(5L, "Bob", "Oslo"));
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void openSession() {
+        session = sessionFactory.openSession();
+    }
+
+    @AfterMethod
+    public void closeSession() {
+        session.close();
+    }
+
+    @Test
+    public void resultsAreOrderedByWeightedScore() {
+        // Ann: exact name 2 * 3, Anna: prefix of name 2 * 2, Bob: prefix of city 1 * 2, Joanna: contained in name 2 * 1
+        assertEquals(ids(queryBuilder(config("ann", null)).generatePlainList(session)), "[4, 3, 1, 2]");
+    }
+
+    @Test
+    public void scoresOfTokensAndExpressionsAreSummed() {
+        // Anna from Paris: 2 * 2 + 1 * 1 for "a" and 1 * 1 for "r", Ann from Berlin: 2 * 2 and 1 * 1,
+        // Joanna from Rome: 2 * 1 and 1 * 2, Bob from Annapolis does not match "r"
+        assertEquals(ids(queryBuilder(config("a r", null)).generatePlainList(session)), "[3, 4, 2]");
+    }
+
+    @Test
+    public void paginationIsAppliedToRankedResults() {
+        PaginationAwareListWrapper<Person> page = queryBuilder(config("ann", 2)).generatePaginatedList(session);
+
+        assertEquals(ids(page), "[1, 2]");
+        assertEquals(page.totalSize(), 4);
+    }
+
+    @Test
+    public void cachedPlanBindsScoreParameters() {
+        QueryPlanCache planCache = new QueryPlanCache(10);
+        queryBuilder(config("ann", null)).usePlanCache(planCache).generatePlainList(session);
+
+        assertEquals(ids(queryBuilder(config("bob", null)).usePlanCache(planCache).generatePlainList(session)), "[1, 5]");
+    }
+
+    private static QueryBuilder<Person> queryBuilder(IResultSetConfig config) {
+        return new QueryBuilder<Person>(Person.class, config)
+                .setDefaultSelectClause("select this")
+                .setFromClause("from Person this")
+                .setDefaultOrder(Order.asc("this.id"))
+                .useRelevanceRanking();
+    }
+
+    private static IResultSetConfig config(String searchString, Integer pageSize) {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addPlainProperty("name")
+                .addPlainProperty("city")
+                .setWeight("name", 2);
+        ResultSetConfigBuilder builder = new ResultSetConfigBuilder().setTextSearchExpressions(expressions).setSearchString(searchString);
+        if (pageSize != null) builder.setPageDefinition(new PageDefinition(pageSize, pageSize));
+        return builder.build();
+    }
+
+    private static String ids(List<Person> people) {
+        List<Long> ids = new ArrayList<Long>();
+        for (Person person : people) ids.add(person.getId());
+        return ids.toString();
+    }
+
+    @Entity(name = "Person")
+    public static class Person {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        private String city;
+
+        public Person() {
+        }
+
+        public Person(Long id, String name, String city) {
+            this.id = id;
+            this.name = name;
+            this.city = city;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+    }
+}
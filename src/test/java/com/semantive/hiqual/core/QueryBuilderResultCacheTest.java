@@ -0,0 +1,158 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.pagination.PaginationAwareListWrapper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Checks the invalidation of the results cached by {@link QueryBuilder} on an in-memory H2 database.
+ */
+public class QueryBuilderResultCacheTest {
+
+    private static final int ITEM_COUNT = 10;
+
+    private SessionFactory sessionFactory;
+
+    private ResultCache resultCache;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Item.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:resultcache;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+        resultCache = new ResultCache(1, TimeUnit.HOURS).registerListeners(sessionFactory);
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void resetItems() {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.createQuery("delete from Item").executeUpdate();
+        for (long id = 1; id <= ITEM_COUNT; id++) {
+            session.save(new Item(id));
+        }
+        session.getTransaction().commit();
+        session.close();
+        resultCache.invalidateAll();
+    }
+
+    @Test
+    public void repeatedQueryIsServedFromCache() {
+        assertEquals(paginatedList().totalSize(), ITEM_COUNT);
+        long hits = resultCache.stats().hitCount();
+
+        assertEquals(paginatedList().totalSize(), ITEM_COUNT);
+        assertEquals(resultCache.stats().hitCount(), hits + 1);
+    }
+
+    @Test
+    public void committedInsertInvalidatesCachedPage() {
+        assertEquals(paginatedList().totalSize(), ITEM_COUNT);
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(new Item(ITEM_COUNT + 1L));
+        session.getTransaction().commit();
+        session.close();
+
+        assertEquals(paginatedList().totalSize(), ITEM_COUNT + 1);
+    }
+
+    @Test
+    public void committedDeleteInvalidatesCachedPage() {
+        assertEquals(paginatedList().get(0).getId(), Long.valueOf(1L));
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.delete(session.get(Item.class, 1L));
+        session.getTransaction().commit();
+        session.close();
+
+        PaginationAwareListWrapper<Item> list = paginatedList();
+        assertEquals(list.get(0).getId(), Long.valueOf(2L));
+        assertEquals(list.totalSize(), ITEM_COUNT - 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void entityClassesAreRequired() {
+        queryBuilder().useResultCache(resultCache);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unmappedEntityClassIsRejected() {
+        Session session = sessionFactory.openSession();
+        try {
+            queryBuilder().useResultCache(resultCache, String.class).generatePaginatedList(session);
+        } finally {
+            session.close();
+        }
+    }
+
+    private PaginationAwareListWrapper<Item> paginatedList() {
+        Session session = sessionFactory.openSession();
+        try {
+            return queryBuilder().useResultCache(resultCache, Item.class).generatePaginatedList(session);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static QueryBuilder<Item> queryBuilder() {
+        return new QueryBuilder<Item>(Item.class, config())
+                .setDefaultSelectClause("select i")
+                .setFromClause("from Item i")
+                .addDefaultSubstitution("i")
+                .setDefaultOrder(Order.asc("i.id"));
+    }
+
+    private static IResultSetConfig config() {
+        return new ResultSetConfigBuilder().setOffset(0).setFetchSize(5).build();
+    }
+
+    @Entity(name = "Item")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        public Item() {
+        }
+
+        public Item(Long id) {
+            this.id = id;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.commons.IDescribed;
+import com.semantive.commons.functional.F1;
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.TextSearchExpressions;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks the rendering of the autocomplete conditions of {@link QueryBuilder} and their query shapes.
+ */
+public class QueryBuilderSearchTest {
+
+    @Test
+    public void expressionsOfTheSamePropertyAreAllRendered() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addPlainProperty("name", TextSearchExpressions.SearchMode.EXACT)
+                .addShadowProperty("name", "nameSearch", TextSearchExpressions.PropertyExpressionTypeDict.PLAIN, TextSearchExpressions.SearchMode.PREFIX);
+
+        String condition = queryBuilder(config(expressions, "abc")).generateAutocompleteCondition();
+
+        assertTrue(condition.contains("(LOWER(this.name) = :searchToken0Exact)"), condition);
+        assertTrue(condition.contains("(this.nameSearch LIKE :searchToken0Prefix)"), condition);
+    }
+
+    @Test
+    public void shapeDependsOnKindOfExpression() {
+        TextSearchExpressions plain = new TextSearchExpressions().addPlainProperty("status");
+        TextSearchExpressions dict = new TextSearchExpressions().addDictProperty("status", Status.class, Status.LABELS);
+
+        assertFalse(queryBuilder(config(plain, "abc")).getQueryShape().equals(queryBuilder(config(dict, "abc")).getQueryShape()));
+    }
+
+    @Test
+    public void shapeDependsOnLowerCaseOfExpression() {
+        TextSearchExpressions plain = new TextSearchExpressions().addPlainProperty("nameSearch");
+        TextSearchExpressions shadow = new TextSearchExpressions()
+                .addShadowProperty("name", "nameSearch", TextSearchExpressions.PropertyExpressionTypeDict.PLAIN, TextSearchExpressions.SearchMode.CONTAINS);
+
+        assertFalse(queryBuilder(config(plain, "abc")).getQueryShape().equals(queryBuilder(config(shadow, "abc")).getQueryShape()));
+    }
+
+    private static QueryBuilder<Object> queryBuilder(IResultSetConfig config) {
+        return new QueryBuilder<Object>(Object.class, config).setFromClause("from Item this");
+    }
+
+    private static IResultSetConfig config(TextSearchExpressions expressions, String searchString) {
+        return new ResultSetConfigBuilder().setTextSearchExpressions(expressions).setSearchString(searchString).build();
+    }
+
+    public static enum Status implements IDescribed {
+        ACTIVE, CLOSED;
+
+        public static final F1<String, String> LABELS = new F1<String, String>() {
+            @Override
+            public String apply(String key) {
+                return key.endsWith("ACTIVE") ? "Aktywny" : "Zamknięty";
+            }
+        };
+
+        @Override
+        public String getDescriptionKey() {
+            return "dict.Status." + name();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks the reporting of the executions recorded by {@link QueryDiagnostics} on an in-memory H2 database.
+ */
+public class QueryDiagnosticsTest {
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Item.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:diagnostics;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.generate_statistics", "true");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (long id = 1; id <= 3; id++) {
+            Item item = new Item();
+            item.setId(id);
+            session.save(item);
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void openSession() {
+        session = sessionFactory.openSession();
+    }
+
+    @AfterMethod
+    public void closeSession() {
+        session.close();
+    }
+
+    @Test
+    public void executionsBelowThresholdsAreOnlyCounted() {
+        QueryDiagnostics diagnostics = new QueryDiagnostics().setThresholds(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        queryBuilder(diagnostics).generatePaginatedList(session);
+
+        assertEquals(diagnostics.getExecutionCount(), 1);
+        assertEquals(diagnostics.getReportedCount(), 0);
+        assertTrue(diagnostics.getRecords().isEmpty());
+    }
+
+    @Test
+    public void executionsOverThresholdsAreReported() {
+        QueryDiagnostics diagnostics = new QueryDiagnostics().setThresholds(0, 0);
+
+        queryBuilder(diagnostics).generatePaginatedList(session);
+
+        List<QueryDiagnostics.Record> records = diagnostics.getRecords();
+        assertEquals(diagnostics.getReportedCount(), 1);
+        assertEquals(records.size(), 1);
+        QueryDiagnostics.Record record = records.get(0);
+        assertEquals(Arrays.asList(record.getReasons()), Arrays.asList("slow query", "possible N+1 selects"));
+        assertEquals(record.targetEntityClass, Item.class);
+        assertEquals(record.rows, 3);
+        assertNotNull(record.shapeFingerprint);
+        assertNotNull(record.parameterNames);
+        assertEquals(diagnostics.dump().length, 1);
+    }
+
+    @Test
+    public void bufferKeepsMostRecentRecords() {
+        QueryDiagnostics diagnostics = new QueryDiagnostics(2).setThresholds(0, 0);
+
+        for (int i = 0; i < 3; i++) queryBuilder(diagnostics).generatePlainList(session);
+
+        assertEquals(diagnostics.getExecutionCount(), 3);
+        assertEquals(diagnostics.getReportedCount(), 3);
+        assertEquals(diagnostics.getRecords().size(), 2);
+        diagnostics.clear();
+        assertTrue(diagnostics.getRecords().isEmpty());
+    }
+
+    private static QueryBuilder<Item> queryBuilder(QueryDiagnostics diagnostics) {
+        return new QueryBuilder<Item>(Item.class, new ResultSetConfigBuilder().setOffset(0).setFetchSize(10).build())
+                .setDefaultSelectClause("select i")
+                .setFromClause("from Item i")
+                .addDefaultSubstitution("i")
+                .setDefaultOrder(Order.asc("i.id"))
+                .useDiagnostics(diagnostics);
+    }
+
+    @Entity(name = "Item")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import org.hibernate.ScrollMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks {@link ScrollableResultsIterator} and {@link QueryBuilder#generateIterator(Session, int, int)} on an
+ * in-memory H2 database.
+ */
+public class ScrollableResultsIteratorTest {
+
+    private static final int ITEM_COUNT = 10;
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Item.class)
+                .addAnnotatedClass(IdFilterEntry.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:iterator;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (long id = 1; id <= ITEM_COUNT; id++) {
+            Item item = new Item();
+            item.setId(id);
+            session.save(item);
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void openSession() {
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+    }
+
+    @AfterMethod
+    public void closeSession() {
+        session.getTransaction().rollback();
+        session.close();
+    }
+
+    @Test
+    public void sessionIsClearedEveryClearInterval() {
+        ScrollableResultsIterator<Item> iterator = queryBuilder(null).generateIterator(session, 2, 3);
+
+        List<Integer> entityCounts = new ArrayList<Integer>();
+        while (iterator.hasNext()) {
+            Item item = iterator.next();
+            assertTrue(session.contains(item), "The last returned object should stay attached.");
+            entityCounts.add(session.getStatistics().getEntityCount());
+        }
+
+        assertEquals(entityCounts, Arrays.asList(1, 2, 3, 1, 2, 3, 1, 2, 3, 1));
+    }
+
+    @Test
+    public void sessionIsNotClearedWithZeroClearInterval() {
+        ScrollableResultsIterator<Item> iterator = queryBuilder(null).generateIterator(session, 2, 0);
+
+        while (iterator.hasNext()) iterator.next();
+
+        assertEquals(session.getStatistics().getEntityCount(), ITEM_COUNT);
+    }
+
+    @Test
+    public void resultsAreClosedOnceWhenIterated() {
+        CountingIterator iterator = new CountingIterator(session);
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        iterator.close();
+
+        assertEquals(count, ITEM_COUNT);
+        assertEquals(iterator.closeCount, 1);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void abandonedIterationIsClosedExplicitly() {
+        CountingIterator iterator = new CountingIterator(session);
+        iterator.next();
+        assertEquals(iterator.closeCount, 0);
+
+        iterator.close();
+        iterator.close();
+
+        assertEquals(iterator.closeCount, 1);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expectedExceptions = NoSuchElementException.class)
+    public void nextAfterEndIsRejected() {
+        ScrollableResultsIterator<Item> iterator = queryBuilder(null).generateIterator(session);
+        while (iterator.hasNext()) iterator.next();
+
+        iterator.next();
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void removeIsRejected() {
+        queryBuilder(null).generateIterator(session).remove();
+    }
+
+    @Test
+    public void idFilterIsDeletedWhenClosedBeforeIteration() {
+        List<Long> ids = Arrays.asList(2L, 4L, 6L);
+        ScrollableResultsIterator<Item> iterator = queryBuilder(ids).useIdFilterTable(1).generateIterator(session);
+        assertEquals(idFilterRowCount(), ids.size());
+
+        iterator.close();
+
+        assertEquals(idFilterRowCount(), 0L);
+    }
+
+    private long idFilterRowCount() {
+        return ((Number) session.createQuery("select count(*) from IdFilterEntry e").uniqueResult()).longValue();
+    }
+
+    private static QueryBuilder<Item> queryBuilder(List<Long> ids) {
+        ResultSetConfigBuilder config = new ResultSetConfigBuilder();
+        if (ids != null) config.byIds(ids);
+        return new QueryBuilder<Item>(Item.class, config.build())
+                .setDefaultSelectClause("select i")
+                .setFromClause("from Item i")
+                .addDefaultSubstitution("i")
+                .setDefaultOrder(Order.asc("i.id"));
+    }
+
+    private static class CountingIterator extends ScrollableResultsIterator<Item> {
+        private int closeCount;
+
+        private CountingIterator(Session session) {
+            super(session.createQuery("select i from Item i order by i.id").scroll(ScrollMode.FORWARD_ONLY), null, null, session, 0);
+        }
+
+        @Override
+        protected void afterClose() {
+            closeCount++;
+        }
+    }
+
+    @Entity(name = "Item")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+    }
+}
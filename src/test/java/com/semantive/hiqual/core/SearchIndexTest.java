@@ -0,0 +1,249 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.TextSearchExpressions;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks {@link SearchIndex} on an in-memory H2 database.
+ */
+public class SearchIndexTest {
+
+    private SessionFactory sessionFactory;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(City.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:searchindex;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void resetCities() {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.createQuery("delete from City").executeUpdate();
+        session.save(new City(1L, "Warszawa", "PL"));
+        session.save(new City(2L, "Wrocław", "PL"));
+        session.save(new City(3L, "Berlin", "DE"));
+        session.save(new City(4L, "Bernau", "DE"));
+        session.save(new City(5L, "Kraków", null));
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @Test
+    public void tokensAreResolvedToMatchingIds() {
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions()).build();
+
+        assertTrue(index.isBuilt());
+        assertEquals(index.size(), 5);
+        assertEquals(index.candidates("ber"), ids(3L, 4L));
+        assertEquals(index.candidates("NAU"), ids(4L));
+        assertEquals(index.candidates("ber", "lin"), ids(3L));
+        assertEquals(index.candidates("xyz"), ids());
+    }
+
+    @Test
+    public void shortTokensAreOnlyVerified() {
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions()).build();
+
+        assertEquals(index.candidates("war", "pl"), ids(1L));
+        assertEquals(index.candidates("ber", "pl"), ids());
+        assertNull(index.candidates("pl"));
+    }
+
+    @Test
+    public void searchModesOfExpressionsAreApplied() {
+        TextSearchExpressions expressions = new TextSearchExpressions()
+                .addPlainProperty("name", TextSearchExpressions.SearchMode.PREFIX)
+                .addPlainProperty("country", TextSearchExpressions.SearchMode.EXACT);
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions).build();
+
+        assertEquals(index.candidates("ber"), ids(3L, 4L));
+        assertEquals(index.candidates("lin"), ids());
+        assertEquals(index.candidates("ber", "de"), ids(3L, 4L));
+    }
+
+    @Test
+    public void indexIsNotUsedBeforeBuild() {
+        assertNull(new SearchIndex(sessionFactory, City.class, expressions()).candidates("ber"));
+    }
+
+    @Test
+    public void tooManyCandidatesAreNotResolved() {
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions(), 1).build();
+
+        assertNull(index.candidates("ber"));
+        assertEquals(index.candidates("berl"), ids(3L));
+    }
+
+    @Test
+    public void committedChangesAreIndexed() {
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions()).build().registerListeners(sessionFactory);
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(new City(6L, "Bergen", "NO"));
+        ((City) session.get(City.class, 3L)).setName("Hamburg");
+        session.delete(session.get(City.class, 4L));
+        session.getTransaction().commit();
+        session.close();
+
+        assertEquals(index.candidates("ber"), ids(6L));
+        assertEquals(index.candidates("burg"), ids(3L));
+        assertEquals(index.size(), 5);
+    }
+
+    @Test
+    public void refreshReloadsBulkUpdatedEntity() {
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions()).build();
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.createQuery("update City set name = 'Gdańsk' where id = 1").executeUpdate();
+        session.getTransaction().commit();
+        session.close();
+        assertEquals(index.candidates("war"), ids(1L));
+
+        index.refresh(1L);
+
+        assertEquals(index.candidates("war"), ids());
+        assertEquals(index.candidates("gdań"), ids(1L));
+    }
+
+    @Test
+    public void coversSameExpressionsOnly() {
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions());
+
+        assertTrue(index.covers(expressions()));
+        assertFalse(index.covers(new TextSearchExpressions().addPlainProperty("name")));
+        assertFalse(index.covers(null));
+    }
+
+    @Test
+    public void queryBuilderSelectsResolvedIds() {
+        SearchIndex index = new SearchIndex(sessionFactory, City.class, expressions()).build();
+
+        assertEquals(names(search("ber", index)), names(search("ber", null)));
+        assertEquals(names(search("ber", index)), "[Berlin, Bernau]");
+        assertEquals(names(search("xyz", index)), "[]");
+        assertEquals(names(search("pl", index)), "[Warszawa, Wrocław]");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unmappedEntityIsRejected() {
+        new SearchIndex(sessionFactory, String.class, expressions());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void emptyExpressionsAreRejected() {
+        new SearchIndex(sessionFactory, City.class, new TextSearchExpressions());
+    }
+
+    private List<City> search(String searchString, SearchIndex index) {
+        IResultSetConfig config = new ResultSetConfigBuilder().setTextSearchExpressions(expressions()).setSearchString(searchString).build();
+        Session session = sessionFactory.openSession();
+        try {
+            return new QueryBuilder<City>(City.class, config)
+                    .setDefaultSelectClause("select this")
+                    .setFromClause("from City this")
+                    .setDefaultOrder(Order.asc("this.id"))
+                    .useSearchIndex(index)
+                    .generatePlainList(session);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static TextSearchExpressions expressions() {
+        return new TextSearchExpressions().addPlainProperty("name").addPlainProperty("country");
+    }
+
+    private static Set<Serializable> ids(Long... ids) {
+        return new HashSet<Serializable>(Arrays.asList(ids));
+    }
+
+    private static String names(List<City> cities) {
+        List<String> names = new ArrayList<String>();
+        for (City city : cities) names.add(city.getName());
+        return names.toString();
+    }
+
+    @Entity(name = "City")
+    public static class City {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        private String country;
+
+        public City() {
+        }
+
+        public City(Long id, String name, String country) {
+            this.id = id;
+            this.name = name;
+            this.country = country;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getCountry() {
+            return country;
+        }
+
+        public void setCountry(String country) {
+            this.country = country;
+        }
+    }
+}
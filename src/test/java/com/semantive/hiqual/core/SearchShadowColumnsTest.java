@@ -0,0 +1,265 @@
+package com.semantive.hiqual.core;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.TextSearchExpressions;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks the maintenance of the shadow properties by {@link SearchShadowColumns} on an in-memory H2 database.
+ */
+public class SearchShadowColumnsTest {
+
+    private SessionFactory sessionFactory;
+
+    private SearchShadowColumns shadowColumns;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Document.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:shadow;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+        shadowColumns = new SearchShadowColumns(sessionFactory).add(Document.class, expressions()).registerListeners(sessionFactory);
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void deleteDocuments() {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.createQuery("delete from Document").executeUpdate();
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @Test
+    public void shadowValuesAreWrittenOnInsert() {
+        Long id = save(new Document("Annual REPORT", new GregorianCalendar(2014, 2, 7).getTime()));
+
+        Document document = load(id);
+        assertEquals(document.getTitleSearch(), "annual report");
+        assertEquals(document.getIssuedSearch(), "2014-03-07");
+        assertEquals(document.getIdSearch(), "id" + id);
+    }
+
+    @Test
+    public void shadowValuesAreWrittenOnUpdate() {
+        Long id = save(new Document("Annual Report", null));
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        Document document = (Document) session.get(Document.class, id);
+        document.setTitle("Quarterly Report");
+        document.setIssued(new GregorianCalendar(2015, 0, 1).getTime());
+        session.getTransaction().commit();
+        session.close();
+
+        document = load(id);
+        assertEquals(document.getTitleSearch(), "quarterly report");
+        assertEquals(document.getIssuedSearch(), "2015-01-01");
+        assertEquals(document.getIdSearch(), "id" + id);
+    }
+
+    @Test
+    public void backfillFollowsBulkUpdates() {
+        Long first = save(new Document("Annual Report", null));
+        Long second = save(new Document("Invoice", new GregorianCalendar(2014, 2, 7).getTime()));
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.createQuery("update Document set title = 'Budget', titleSearch = null, idSearch = null").executeUpdate();
+        int count = shadowColumns.backfill(session);
+        session.getTransaction().commit();
+        session.close();
+
+        // every row for each of the three expressions
+        assertEquals(count, 6);
+        assertEquals(load(first).getTitleSearch(), "budget");
+        assertEquals(load(first).getIdSearch(), "id" + first);
+        assertNull(load(first).getIssuedSearch());
+        assertEquals(load(second).getIssuedSearch(), "2014-03-07");
+    }
+
+    @Test
+    public void shadowPropertiesAreSearched() {
+        Long id = save(new Document("Annual Report", new GregorianCalendar(2014, 2, 7).getTime()));
+        save(new Document("Invoice", null));
+
+        assertEquals(titles(search("REPORT")), "[Annual Report]");
+        assertEquals(titles(search("2014-03")), "[Annual Report]");
+        assertEquals(titles(search("id" + id)), "[Annual Report]");
+    }
+
+    @Test
+    public void ddlAddsIndexedColumns() {
+        List<String> ddl = shadowColumns.ddl();
+
+        assertEquals(ddl.size(), 6);
+        assertTrue(ddl.get(0).matches("alter table Document add( column)? titleSearch varchar\\(255\\)"), ddl.get(0));
+        assertEquals(ddl.get(1), "create index idx_Document_titleSearch on Document (titleSearch)");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownShadowPropertyIsRejected() {
+        new SearchShadowColumns(sessionFactory).add(Document.class, new TextSearchExpressions()
+                .addShadowProperty("title", "missing", TextSearchExpressions.PropertyExpressionTypeDict.PLAIN, TextSearchExpressions.SearchMode.CONTAINS));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unsupportedSourcePropertyIsRejected() {
+        new SearchShadowColumns(sessionFactory).add(Document.class, new TextSearchExpressions()
+                .addShadowProperty("issued", "titleSearch", TextSearchExpressions.PropertyExpressionTypeDict.PLAIN, TextSearchExpressions.SearchMode.CONTAINS));
+    }
+
+    private Long save(Document document) {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(document);
+        session.getTransaction().commit();
+        session.close();
+        return document.getId();
+    }
+
+    private Document load(Long id) {
+        Session session = sessionFactory.openSession();
+        try {
+            return (Document) session.get(Document.class, id);
+        } finally {
+            session.close();
+        }
+    }
+
+    private List<Document> search(String searchString) {
+        IResultSetConfig config = new ResultSetConfigBuilder().setTextSearchExpressions(expressions()).setSearchString(searchString).build();
+        Session session = sessionFactory.openSession();
+        try {
+            return new QueryBuilder<Document>(Document.class, config)
+                    .setDefaultSelectClause("select this")
+                    .setFromClause("from Document this")
+                    .setDefaultOrder(Order.asc("this.id"))
+                    .generatePlainList(session);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static TextSearchExpressions expressions() {
+        return new TextSearchExpressions()
+                .addShadowProperty("title", "titleSearch", TextSearchExpressions.PropertyExpressionTypeDict.PLAIN, TextSearchExpressions.SearchMode.CONTAINS)
+                .addShadowProperty("issued", "issuedSearch", TextSearchExpressions.PropertyExpressionTypeDict.DATE, TextSearchExpressions.SearchMode.PREFIX)
+                .addShadowProperty("id", "idSearch", TextSearchExpressions.PropertyExpressionTypeDict.ID, TextSearchExpressions.SearchMode.EXACT);
+    }
+
+    private static String titles(List<Document> documents) {
+        List<String> titles = new ArrayList<String>();
+        for (Document document : documents) titles.add(document.getTitle());
+        return titles.toString();
+    }
+
+    @Entity(name = "Document")
+    public static class Document {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+
+        private String title;
+
+        @Temporal(TemporalType.DATE)
+        private Date issued;
+
+        private String titleSearch;
+
+        private String issuedSearch;
+
+        private String idSearch;
+
+        public Document() {
+        }
+
+        public Document(String title, Date issued) {
+            this.title = title;
+            this.issued = issued;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public Date getIssued() {
+            return issued;
+        }
+
+        public void setIssued(Date issued) {
+            this.issued = issued;
+        }
+
+        public String getTitleSearch() {
+            return titleSearch;
+        }
+
+        public void setTitleSearch(String titleSearch) {
+            this.titleSearch = titleSearch;
+        }
+
+        public String getIssuedSearch() {
+            return issuedSearch;
+        }
+
+        public void setIssuedSearch(String issuedSearch) {
+            this.issuedSearch = issuedSearch;
+        }
+
+        public String getIdSearch() {
+            return idSearch;
+        }
+
+        public void setIdSearch(String idSearch) {
+            this.idSearch = idSearch;
+        }
+    }
+}
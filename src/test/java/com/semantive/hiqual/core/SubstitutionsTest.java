@@ -0,0 +1,74 @@
+package com.semantive.hiqual.core;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class SubstitutionsTest {
+
+    private static final String DEFAULT_SUBSTITUTION = "\\bthis\\.([\\w\\.]+)\\b";
+
+    @Test
+    public void patternIsEquivalentToReplaceAll() {
+        Substitutions substitutions = new Substitutions().addPattern(DEFAULT_SUBSTITUTION, "e.$1");
+
+        for (String expression : new String[]{"this.name", "lower(this.a.b) || this.c", "that.name", "xthis.name", ""}) {
+            assertEquals(substitutions.transform(expression), expression.replaceAll(DEFAULT_SUBSTITUTION, "e.$1"), expression);
+        }
+    }
+
+    @Test
+    public void prefixIsReplacedOnlyAtTheBeginning() {
+        Substitutions substitutions = new Substitutions().addPrefix("e.address.", "_e_address.");
+
+        assertEquals(substitutions.transform("e.address.city"), "_e_address.city");
+        assertEquals(substitutions.transform("e.addressLine"), "e.addressLine");
+        assertEquals(substitutions.transform("lower(e.address.city)"), "lower(e.address.city)");
+    }
+
+    @Test
+    public void prefixIsNotTreatedAsRegularExpression() {
+        Substitutions substitutions = new Substitutions().addPrefix("e.a.", "_e_a.");
+
+        assertEquals(substitutions.transform("eXaXb"), "eXaXb");
+        assertEquals(substitutions.transform("e.a.b"), "_e_a.b");
+    }
+
+    @Test
+    public void substitutionsAreAppliedInOrder() {
+        Substitutions substitutions = new Substitutions()
+                .addPattern(DEFAULT_SUBSTITUTION, "e.$1")
+                .addPrefix("e.address.", "_e_address.");
+
+        assertEquals(substitutions.transform("this.address.city"), "_e_address.city");
+        assertEquals(substitutions.transform("this.name"), "e.name");
+    }
+
+    @Test
+    public void memoizedResultsAreDroppedWhenSubstitutionIsAdded() {
+        Substitutions substitutions = new Substitutions().addPattern(DEFAULT_SUBSTITUTION, "e.$1");
+        assertEquals(substitutions.transform("this.address.city"), "e.address.city");
+
+        substitutions.addPrefix("e.address.", "_e_address.");
+
+        assertEquals(substitutions.transform("this.address.city"), "_e_address.city");
+    }
+
+    @Test
+    public void samePatternReplacesEarlierSubstitution() {
+        Substitutions substitutions = new Substitutions()
+                .addPattern(DEFAULT_SUBSTITUTION, "a.$1")
+                .addPattern(DEFAULT_SUBSTITUTION, "b.$1");
+
+        assertEquals(substitutions.transform("this.name"), "b.name");
+    }
+
+    @Test
+    public void compiledPatternsAreSharedByInstances() {
+        Substitutions first = new Substitutions().addPattern("x(\\d)", "y$1");
+        Substitutions second = new Substitutions().addPattern("x(\\d)", "z$1");
+
+        assertEquals(first.transform("x1 x2"), "y1 y2");
+        assertEquals(second.transform("x1 x2"), "z1 z2");
+    }
+}
@@ -0,0 +1,203 @@
+package com.semantive.hiqual.filter;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class WhereConditionOptimizerTest {
+
+    @Test
+    public void negatedComparisonsAreReplacedWithOppositeComparisons() {
+        assertEquals(optimize(not(condition("a", Operator.EQ, "p", 1))), condition("a", Operator.NOT_EQ, "p", 1));
+        assertEquals(optimize(not(condition("a", Operator.NOT_EQ, "p", 1))), condition("a", Operator.EQ, "p", 1));
+        assertEquals(optimize(not(condition("a", Operator.GT, "p", 1))), condition("a", Operator.LT_OR_EQ, "p", 1));
+        assertEquals(optimize(not(condition("a", Operator.LT_OR_EQ, "p", 1))), condition("a", Operator.GT, "p", 1));
+        assertEquals(optimize(not(condition("a", Operator.LT, "p", 1))), condition("a", Operator.GT_OR_EQ, "p", 1));
+        assertEquals(optimize(not(condition("a", Operator.GT_OR_EQ, "p", 1))), condition("a", Operator.LT, "p", 1));
+    }
+
+    @Test
+    public void negationsWithoutOppositeOperatorAreKept() {
+        assertEquals(optimize(not(condition("a", Operator.LIKE, "p", "x%"))), not(condition("a", Operator.LIKE, "p", "x%")));
+        assertEquals(optimize(not(condition("a", Operator.IN, "p", Arrays.asList(1, 2)))), not(condition("a", Operator.IN, "p", Arrays.asList(1, 2))));
+    }
+
+    @Test
+    public void doubleNegationsAreRemoved() {
+        assertEquals(optimize(not(not(condition("a", Operator.LIKE, "p", "x%")))), condition("a", Operator.LIKE, "p", "x%"));
+    }
+
+    @Test
+    public void negationsArePushedDownWithDeMorganLaws() {
+        AbstractWhereCondition condition = not(and(condition("a", Operator.EQ, "p1", 1), condition("b", Operator.LT, "p2", 2)));
+
+        assertEquals(optimize(condition), or(condition("a", Operator.NOT_EQ, "p1", 1), condition("b", Operator.GT_OR_EQ, "p2", 2)));
+    }
+
+    @Test
+    public void negatedEmptyAndIsEmptyOr() {
+        assertEquals(optimize(not(and())), or());
+    }
+
+    @Test
+    public void negatedEmptyOrIsTautology() {
+        assertNull(optimize(not(or())));
+    }
+
+    @Test
+    public void emptyAndIsTautology() {
+        assertNull(optimize(and()));
+    }
+
+    @Test
+    public void emptyOrIsKept() {
+        assertEquals(optimize(or()), or());
+    }
+
+    @Test
+    public void orWithTautologyIsTautology() {
+        assertNull(optimize(or(condition("a", Operator.EQ, "p", 1), and())));
+    }
+
+    @Test
+    public void isNullOrIsNotNullIsTautology() {
+        assertNull(optimize(or(condition("a", Operator.EQ, "p1", null), condition("b", Operator.EQ, "p2", 1), condition("a", Operator.NOT_EQ, "p3", null))));
+    }
+
+    @Test
+    public void isNullOrIsNotNullTautologyIsRemovedFromAnd() {
+        AbstractWhereCondition condition = and(condition("b", Operator.EQ, "p1", 1),
+                or(condition("a", Operator.EQ, "p2", null), condition("a", Operator.NOT_EQ, "p3", null)));
+
+        assertEquals(optimize(condition), condition("b", Operator.EQ, "p1", 1));
+    }
+
+    @Test
+    public void nullChecksOfDifferentPropertiesAreNotTautology() {
+        AbstractWhereCondition condition = or(condition("a", Operator.EQ, "p1", null), condition("b", Operator.NOT_EQ, "p2", null));
+
+        assertEquals(optimize(condition), condition);
+    }
+
+    @Test
+    public void isNullAndIsNotNullIsKept() {
+        AbstractWhereCondition condition = and(condition("a", Operator.EQ, "p1", null), condition("a", Operator.NOT_EQ, "p2", null));
+
+        assertEquals(optimize(condition), condition);
+    }
+
+    @Test
+    public void equalitiesAreMergedIntoInWithFirstParameterName() {
+        AbstractWhereCondition condition = or(
+                condition("b", Operator.LIKE, "p0", "x%"),
+                condition("a", Operator.EQ, "p1", 1),
+                condition("c", Operator.EQ, "p2", 5),
+                condition("a", Operator.IN, "p3", Arrays.asList(2, 3)),
+                condition("a", Operator.EQ, "p4", 1));
+
+        assertEquals(optimize(condition), or(
+                condition("b", Operator.LIKE, "p0", "x%"),
+                condition("a", Operator.IN, "p1", Arrays.<Object>asList(1, 2, 3)),
+                condition("c", Operator.EQ, "p2", 5)));
+    }
+
+    @Test
+    public void inListsAreMergedWithFirstParameterName() {
+        AbstractWhereCondition condition = or(
+                condition("a", Operator.IN, "p1", new Integer[]{1, 2}),
+                condition("a", Operator.IN, "p2", Arrays.asList(2, 3)));
+
+        assertEquals(optimize(condition), condition("a", Operator.IN, "p1", Arrays.<Object>asList(1, 2, 3)));
+    }
+
+    @Test
+    public void equalitiesJoinedWithAndAreNotMerged() {
+        AbstractWhereCondition condition = and(condition("a", Operator.EQ, "p1", 1), condition("a", Operator.EQ, "p2", 2));
+
+        assertEquals(optimize(condition), condition);
+    }
+
+    @Test
+    public void nullEqualitiesAndEmptyInListsAreNotMerged() {
+        AbstractWhereCondition condition = or(
+                condition("a", Operator.EQ, "p1", null),
+                condition("a", Operator.IN, "p2", Arrays.asList()),
+                condition("a", Operator.EQ, "p3", 1));
+
+        assertEquals(optimize(condition), condition);
+    }
+
+    @Test
+    public void nestedConditionsWithSameOperatorAreFlattened() {
+        AbstractWhereCondition condition = and(
+                condition("a", Operator.EQ, "p1", 1),
+                and(condition("b", Operator.EQ, "p2", 2), and(condition("c", Operator.EQ, "p3", 3))),
+                or(condition("d", Operator.EQ, "p4", 4), or(condition("e", Operator.LIKE, "p5", "x%"))));
+
+        assertEquals(optimize(condition), and(
+                condition("a", Operator.EQ, "p1", 1),
+                condition("b", Operator.EQ, "p2", 2),
+                condition("c", Operator.EQ, "p3", 3),
+                or(condition("d", Operator.EQ, "p4", 4), condition("e", Operator.LIKE, "p5", "x%"))));
+    }
+
+    @Test
+    public void negatedNestedConditionsAreFlattened() {
+        AbstractWhereCondition condition = not(or(condition("a", Operator.EQ, "p1", 1), not(and(condition("b", Operator.GT, "p2", 2)))));
+
+        assertEquals(optimize(condition), and(condition("a", Operator.NOT_EQ, "p1", 1), condition("b", Operator.GT, "p2", 2)));
+    }
+
+    @Test
+    public void singleSubconditionIsUnwrapped() {
+        assertEquals(optimize(and(or(condition("a", Operator.EQ, "p", 1)))), condition("a", Operator.EQ, "p", 1));
+    }
+
+    @Test
+    public void duplicatesDifferingInParameterNamesAreRemoved() {
+        AbstractWhereCondition condition = and(condition("a", Operator.GT, "p1", 1), condition("b", Operator.LT, "p2", 2), condition("a", Operator.GT, "p3", 1));
+
+        assertEquals(optimize(condition), and(condition("a", Operator.GT, "p1", 1), condition("b", Operator.LT, "p2", 2)));
+    }
+
+    @Test
+    public void givenTreeIsNotModified() {
+        AbstractWhereCondition condition = not(and(condition("a", Operator.EQ, "p1", 1), and(condition("b", Operator.EQ, "p2", 2))));
+        AbstractWhereCondition copy = not(and(condition("a", Operator.EQ, "p1", 1), and(condition("b", Operator.EQ, "p2", 2))));
+
+        optimize(condition);
+
+        assertEquals(condition, copy);
+    }
+
+    private static AbstractWhereCondition optimize(AbstractWhereCondition condition) {
+        return WhereConditionOptimizer.optimize(condition);
+    }
+
+    private static SimpleWhereCondition condition(String propertyName, Operator operator, String parameterName, Object value) {
+        return new SimpleWhereCondition(propertyName, operator, parameterName, value);
+    }
+
+    private static NotWhereCondition not(AbstractWhereCondition condition) {
+        return new NotWhereCondition(condition);
+    }
+
+    private static ComplexWhereCondition and(AbstractWhereCondition... conditions) {
+        return complex(LogicalOperator.AND, conditions);
+    }
+
+    private static ComplexWhereCondition or(AbstractWhereCondition... conditions) {
+        return complex(LogicalOperator.OR, conditions);
+    }
+
+    private static ComplexWhereCondition complex(LogicalOperator operator, AbstractWhereCondition... conditions) {
+        ComplexWhereCondition result = new ComplexWhereCondition(operator);
+        for (AbstractWhereCondition condition : conditions) {
+            result.addWhereCondition(condition);
+        }
+        return result;
+    }
+}
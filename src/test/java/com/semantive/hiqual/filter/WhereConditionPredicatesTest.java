@@ -0,0 +1,274 @@
+package com.semantive.hiqual.filter;
+
+import com.google.common.base.Predicate;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class WhereConditionPredicatesTest {
+
+    private static final Bean WITHOUT_NAME = new Bean();
+
+    private static final Bean NAMED = new Bean().setName("abc");
+
+    @Test
+    public void comparisonWithNullPropertyIsUnknown() {
+        assertFalse(matches(condition("name", Operator.EQ, "abc"), WITHOUT_NAME));
+        assertFalse(matches(condition("name", Operator.NOT_EQ, "abc"), WITHOUT_NAME));
+        assertFalse(matches(not(condition("name", Operator.EQ, "abc")), WITHOUT_NAME));
+        assertFalse(matches(not(condition("name", Operator.NOT_EQ, "abc")), WITHOUT_NAME));
+        assertFalse(matches(condition("name", Operator.LIKE, "%"), WITHOUT_NAME));
+        assertFalse(matches(not(condition("name", Operator.LIKE, "%")), WITHOUT_NAME));
+        assertFalse(matches(not(new BetweenWhereCondition("count", "p1", 1, "p2", 2)), WITHOUT_NAME));
+    }
+
+    @Test
+    public void nullChecksAreNeverUnknown() {
+        assertTrue(matches(condition("name", Operator.EQ, null), WITHOUT_NAME));
+        assertFalse(matches(condition("name", Operator.NOT_EQ, null), WITHOUT_NAME));
+        assertFalse(matches(not(condition("name", Operator.EQ, null)), WITHOUT_NAME));
+        assertTrue(matches(not(condition("name", Operator.EQ, null)), NAMED));
+    }
+
+    @Test
+    public void unknownIsAbsorbedByFalseInConjunction() {
+        AbstractWhereCondition unknownAndFalse = and(condition("name", Operator.EQ, "abc"), condition("count", Operator.EQ, 1));
+
+        assertFalse(matches(unknownAndFalse, new Bean().setCount(2)));
+        assertTrue(matches(not(unknownAndFalse), new Bean().setCount(2)));
+        assertFalse(matches(not(and(condition("name", Operator.EQ, "abc"), condition("count", Operator.EQ, 2))), new Bean().setCount(2)));
+    }
+
+    @Test
+    public void unknownIsAbsorbedByTrueInDisjunction() {
+        assertTrue(matches(or(condition("name", Operator.EQ, "abc"), condition("count", Operator.EQ, 2)), new Bean().setCount(2)));
+        assertFalse(matches(not(or(condition("name", Operator.EQ, "abc"), condition("count", Operator.EQ, 1))), new Bean().setCount(2)));
+    }
+
+    @Test
+    public void likeWildcardsAreTranslated() {
+        assertTrue(matches(condition("name", Operator.LIKE, "a%"), NAMED));
+        assertTrue(matches(condition("name", Operator.LIKE, "%c"), NAMED));
+        assertTrue(matches(condition("name", Operator.LIKE, "a%c"), NAMED));
+        assertTrue(matches(condition("name", Operator.LIKE, "a_c"), NAMED));
+        assertTrue(matches(condition("name", Operator.LIKE, "%"), new Bean().setName("")));
+        assertTrue(matches(condition("name", Operator.LIKE, "a%c"), new Bean().setName("a\nb\nc")));
+        assertFalse(matches(condition("name", Operator.LIKE, "a_"), NAMED));
+        assertFalse(matches(condition("name", Operator.LIKE, "b%"), NAMED));
+        assertFalse(matches(condition("name", Operator.LIKE, "ab"), NAMED));
+    }
+
+    @Test
+    public void likeIsCaseSensitive() {
+        assertFalse(matches(condition("name", Operator.LIKE, "A%"), NAMED));
+    }
+
+    @Test
+    public void likeRegexMetacharactersAreLiterals() {
+        assertTrue(matches(condition("name", Operator.LIKE, "a.b(c)%"), new Bean().setName("a.b(c)d")));
+        assertFalse(matches(condition("name", Operator.LIKE, "a.b%"), new Bean().setName("axb")));
+        assertFalse(matches(condition("name", Operator.LIKE, "a*"), new Bean().setName("aaa")));
+        assertTrue(matches(condition("name", Operator.LIKE, "\\E%"), new Bean().setName("\\E\\Q")));
+    }
+
+    @Test
+    public void numbersOfDifferentTypesAreComparedByValue() {
+        Bean bean = new Bean().setCount(5).setAmount(new BigDecimal("2.50")).setPrice(0.1);
+
+        assertTrue(matches(condition("count", Operator.EQ, 5L), bean));
+        assertTrue(matches(condition("count", Operator.EQ, 5.0), bean));
+        assertTrue(matches(condition("count", Operator.EQ, new BigDecimal("5.00")), bean));
+        assertTrue(matches(condition("count", Operator.GT, 4.5), bean));
+        assertFalse(matches(condition("count", Operator.GT, 5.5f), bean));
+        assertTrue(matches(condition("count", Operator.LT_OR_EQ, new BigDecimal("5")), bean));
+        assertTrue(matches(condition("amount", Operator.EQ, 2.5), bean));
+        assertTrue(matches(condition("amount", Operator.NOT_EQ, 2.51), bean));
+        assertTrue(matches(condition("amount", Operator.GT_OR_EQ, 2L), bean));
+        assertTrue(matches(condition("price", Operator.EQ, new BigDecimal("0.1")), bean));
+        assertTrue(matches(new BetweenWhereCondition("count", "p1", 4.9, "p2", 5L), bean));
+        assertTrue(matches(condition("count", Operator.IN, Arrays.asList(1L, 5L)), bean));
+        assertTrue(matches(condition("amount", Operator.IN, new Object[]{2.5}), bean));
+    }
+
+    @Test
+    public void datesAreComparedByTime() {
+        Bean bean = new Bean().setCreated(new Timestamp(1000L));
+
+        assertTrue(matches(condition("created", Operator.EQ, new Date(1000L)), bean));
+        assertTrue(matches(condition("created", Operator.LT, new Date(1001L)), bean));
+    }
+
+    @Test
+    public void containsChecksElements() {
+        Bean bean = new Bean().setTags(new HashSet<String>(Arrays.asList("a", "b"))).setIds(Arrays.asList(1L, 3L));
+
+        assertTrue(matches(condition("tags", Operator.CONTAINS, "a"), bean));
+        assertFalse(matches(condition("tags", Operator.CONTAINS, "c"), bean));
+        assertTrue(matches(condition("ids", Operator.CONTAINS, 3), bean));
+        assertFalse(matches(not(condition("ids", Operator.CONTAINS, 3)), bean));
+    }
+
+    @Test
+    public void containsOnNullOrEmptyCollectionIsFalse() {
+        assertFalse(matches(condition("tags", Operator.CONTAINS, "a"), new Bean()));
+        assertTrue(matches(not(condition("tags", Operator.CONTAINS, "a")), new Bean()));
+        assertFalse(matches(condition("tags", Operator.CONTAINS, "a"), new Bean().setTags(Collections.<String>emptySet())));
+    }
+
+    @Test
+    public void inListWithNullIsUnknownForOtherValues() {
+        AbstractWhereCondition condition = condition("count", Operator.IN, Arrays.asList(1, null));
+
+        assertTrue(matches(condition, new Bean().setCount(1)));
+        assertFalse(matches(condition, new Bean().setCount(2)));
+        assertFalse(matches(not(condition), new Bean().setCount(2)));
+        assertFalse(matches(not(condition), new Bean().setCount(1)));
+    }
+
+    @Test
+    public void inListWithoutNullIsFalseForOtherValues() {
+        AbstractWhereCondition condition = condition("count", Operator.IN, Arrays.asList(1, 3));
+
+        assertFalse(matches(condition, new Bean().setCount(2)));
+        assertTrue(matches(not(condition), new Bean().setCount(2)));
+        assertFalse(matches(not(condition), new Bean()));
+    }
+
+    @Test
+    public void emptyInListIsUnknown() {
+        AbstractWhereCondition condition = condition("count", Operator.IN, Collections.emptyList());
+
+        assertFalse(matches(condition, new Bean().setCount(1)));
+        assertFalse(matches(not(condition), new Bean().setCount(1)));
+    }
+
+    @Test
+    public void filterKeepsOrderOfMatchingBeans() {
+        Bean first = new Bean().setName("a1");
+        Bean second = new Bean().setName("b");
+        Bean third = new Bean().setName("a2");
+
+        List<Bean> result = WhereConditionPredicates.filter(Arrays.asList(first, second, third, WITHOUT_NAME),
+                new WhereConditions(condition("name", Operator.LIKE, "a%")), Bean.class);
+
+        assertEquals(result, Arrays.asList(first, third));
+    }
+
+    @Test
+    public void missingConditionsAcceptAllBeans() {
+        assertTrue(WhereConditionPredicates.compile((WhereConditions) null, Bean.class).apply(WITHOUT_NAME));
+    }
+
+    private static boolean matches(AbstractWhereCondition condition, Bean bean) {
+        Predicate<Bean> predicate = WhereConditionPredicates.compile(condition, Bean.class);
+        return predicate.apply(bean);
+    }
+
+    private static SimpleWhereCondition condition(String propertyName, Operator operator, Object value) {
+        return new SimpleWhereCondition(propertyName, operator, "p", value);
+    }
+
+    private static NotWhereCondition not(AbstractWhereCondition condition) {
+        return new NotWhereCondition(condition);
+    }
+
+    private static ComplexWhereCondition and(AbstractWhereCondition... conditions) {
+        return complex(LogicalOperator.AND, conditions);
+    }
+
+    private static ComplexWhereCondition or(AbstractWhereCondition... conditions) {
+        return complex(LogicalOperator.OR, conditions);
+    }
+
+    private static ComplexWhereCondition complex(LogicalOperator operator, AbstractWhereCondition... conditions) {
+        ComplexWhereCondition result = new ComplexWhereCondition(operator);
+        for (AbstractWhereCondition condition : conditions) {
+            result.addWhereCondition(condition);
+        }
+        return result;
+    }
+
+    public static class Bean {
+        private String name;
+        private Integer count;
+        private BigDecimal amount;
+        private Double price;
+        private Date created;
+        private Set<String> tags;
+        private List<Long> ids;
+
+        public String getName() {
+            return name;
+        }
+
+        public Bean setName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Integer getCount() {
+            return count;
+        }
+
+        public Bean setCount(Integer count) {
+            this.count = count;
+            return this;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public Bean setAmount(BigDecimal amount) {
+            this.amount = amount;
+            return this;
+        }
+
+        public Double getPrice() {
+            return price;
+        }
+
+        public Bean setPrice(Double price) {
+            this.price = price;
+            return this;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+
+        public Bean setCreated(Date created) {
+            this.created = created;
+            return this;
+        }
+
+        public Set<String> getTags() {
+            return tags;
+        }
+
+        public Bean setTags(Set<String> tags) {
+            this.tags = tags;
+            return this;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public Bean setIds(List<Long> ids) {
+            this.ids = ids;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.semantive.hiqual.pagination;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.filter.Operator;
+import com.semantive.hiqual.filter.SimpleWhereCondition;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class InMemoryPaginationTest {
+
+    private static final int BEAN_COUNT = 1000;
+
+    @Test
+    public void topElementsAreSameAsPrefixOfStableSort() {
+        List<Bean> beans = randomBeans(BEAN_COUNT);
+
+        for (int pageStart = 0; pageStart < 200; pageStart += 10) {
+            // the end of each page is at least 4 times smaller than the size, so the top elements are selected with the heap
+            IResultSetConfig config = new ResultSetConfigBuilder().addOrder("group", "asc").addOrder("rank", "desc")
+                    .setOffset(pageStart).setFetchSize(10).build();
+
+            PaginationAwareListWrapper<Bean> page = InMemoryPagination.paginate(beans, config, Bean.class);
+
+            assertEquals(page, stableSort(beans, config).subList(pageStart, pageStart + 10), "page " + pageStart);
+            assertEquals(page.offset(), pageStart);
+            assertEquals(page.totalSize(), BEAN_COUNT);
+        }
+    }
+
+    @Test
+    public void fullSortIsStable() {
+        List<Bean> beans = randomBeans(BEAN_COUNT);
+        IResultSetConfig config = new ResultSetConfigBuilder().addOrder("group", "desc").setOffset(900).setFetchSize(50).build();
+
+        PaginationAwareListWrapper<Bean> page = InMemoryPagination.paginate(beans, config, Bean.class);
+
+        assertEquals(page, stableSort(beans, config).subList(900, 950));
+    }
+
+    @Test
+    public void nullsAreLastInAscendingOrder() {
+        Bean a = new Bean(1, 0);
+        Bean b = new Bean(null, 1);
+        Bean c = new Bean(0, 2);
+        IResultSetConfig config = new ResultSetConfigBuilder().addOrder("group", "asc").build();
+
+        assertEquals(InMemoryPagination.paginate(Arrays.asList(a, b, c), config, Bean.class), Arrays.asList(c, a, b));
+    }
+
+    @Test
+    public void nullsAreFirstInDescendingOrder() {
+        Bean a = new Bean(1, 0);
+        Bean b = new Bean(null, 1);
+        Bean c = new Bean(0, 2);
+        IResultSetConfig config = new ResultSetConfigBuilder().addOrder("group", "desc").build();
+
+        assertEquals(InMemoryPagination.paginate(Arrays.asList(a, b, c), config, Bean.class), Arrays.asList(b, a, c));
+    }
+
+    @Test
+    public void nullsAreOrderedTheSameWayOnTopElementsPath() {
+        List<Bean> beans = randomBeans(BEAN_COUNT);
+        IResultSetConfig config = new ResultSetConfigBuilder().addOrder("group", "desc").setOffset(0).setFetchSize(10).build();
+
+        PaginationAwareListWrapper<Bean> page = InMemoryPagination.paginate(beans, config, Bean.class);
+
+        assertEquals(page, stableSort(beans, config).subList(0, 10));
+        assertNull(page.get(9).getGroup());
+    }
+
+    @Test
+    public void pageStartPastEndReturnsEmptyPage() {
+        List<Bean> beans = randomBeans(20);
+        IResultSetConfig config = new ResultSetConfigBuilder().addOrder("rank", "asc").setOffset(40).setFetchSize(10).build();
+
+        PaginationAwareListWrapper<Bean> page = InMemoryPagination.paginate(beans, config, Bean.class);
+
+        assertTrue(page.isEmpty());
+        assertEquals(page.totalSize(), 20);
+    }
+
+    @Test
+    public void lastPageIsTruncated() {
+        List<Bean> beans = randomBeans(25);
+        IResultSetConfig config = new ResultSetConfigBuilder().setOffset(20).setFetchSize(10).build();
+
+        PaginationAwareListWrapper<Bean> page = InMemoryPagination.paginate(beans, config, Bean.class);
+
+        assertEquals(page, beans.subList(20, 25));
+        assertEquals(page.totalSize(), 25);
+    }
+
+    @Test
+    public void totalSizeCountsOnlyMatchingBeans() {
+        List<Bean> beans = randomBeans(BEAN_COUNT);
+        IResultSetConfig config = new ResultSetConfigBuilder().andCondition(new SimpleWhereCondition("group", Operator.EQ, "g", 3))
+                .addOrder("rank", "asc").setOffset(0).setFetchSize(5).build();
+
+        PaginationAwareListWrapper<Bean> page = InMemoryPagination.paginate(beans, config, Bean.class);
+
+        int matching = 0;
+        for (Bean bean : beans) {
+            if (Integer.valueOf(3).equals(bean.getGroup())) matching++;
+        }
+        assertEquals(page.totalSize(), matching);
+        for (Bean bean : page) assertEquals(bean.getGroup(), Integer.valueOf(3));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void keysetPagesAreRejected() {
+        InMemoryPagination.paginate(randomBeans(10), new ResultSetConfigBuilder().setKeysetPagination(5).build(), Bean.class);
+    }
+
+    private static List<Bean> randomBeans(int count) {
+        Random random = new Random(42);
+        List<Bean> beans = new ArrayList<Bean>(count);
+        for (int i = 0; i < count; i++) {
+            // few distinct values, so that there are many ties
+            beans.add(new Bean(random.nextInt(10) == 0 ? null : random.nextInt(5), random.nextInt(20)));
+        }
+        return beans;
+    }
+
+    private static List<Bean> stableSort(List<Bean> beans, IResultSetConfig config) {
+        Comparator<Bean> comparator = InMemoryPagination.comparator(config.orders(), Bean.class);
+        List<Bean> sorted = new ArrayList<Bean>(beans);
+        Collections.sort(sorted, comparator);
+        return sorted;
+    }
+
+    public static class Bean {
+        private Integer group;
+        private Integer rank;
+
+        public Bean() {
+        }
+
+        public Bean(Integer group, Integer rank) {
+            this.group = group;
+            this.rank = rank;
+        }
+
+        public Integer getGroup() {
+            return group;
+        }
+
+        public void setGroup(Integer group) {
+            this.group = group;
+        }
+
+        public Integer getRank() {
+            return rank;
+        }
+
+        public void setRank(Integer rank) {
+            this.rank = rank;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.semantive.hiqual.pagination;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class KeysetPageDefinitionTest {
+
+    @Test
+    public void firstPageRoundTrip() {
+        KeysetPageDefinition page = KeysetPageDefinition.fromContinuationToken(new KeysetPageDefinition(20).toContinuationToken());
+
+        assertEquals(page, new KeysetPageDefinition(20));
+        assertTrue(page.isFirstPage());
+        assertNull(page.lastKey);
+    }
+
+    @Test
+    public void valuesRoundTrip() {
+        Timestamp timestamp = new Timestamp(1234567890123L);
+        timestamp.setNanos(123456789);
+        Object[] lastKey = {"a \"quoted\" ż", 1L, 2, (short) 3, (byte) 4, 5.5d, 6.5f, new BigDecimal("7.25"),
+                new BigInteger("123456789012345678901234567890"), true, new Date(1234567890123L), timestamp};
+
+        KeysetPageDefinition page = KeysetPageDefinition.fromContinuationToken(new KeysetPageDefinition(40, 20, lastKey).toContinuationToken());
+
+        assertEquals(page.pageStart, 40);
+        assertEquals(page.pageSize, 20);
+        assertEquals(page.lastKey.length, lastKey.length);
+        for (int i = 0; i < lastKey.length; i++) {
+            assertEquals(page.lastKey[i].getClass(), lastKey[i].getClass());
+            assertEquals(page.lastKey[i], lastKey[i]);
+        }
+        assertEquals(((Timestamp) page.lastKey[11]).getNanos(), 123456789);
+    }
+
+    @Test
+    public void tokenIsUrlSafe() {
+        String token = new KeysetPageDefinition(0, 10, new Object[]{"???>>>", 1L}).toContinuationToken();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+    }
+
+    @Test
+    public void enumValuesAreDecodedIntoKeys() {
+        KeysetPageDefinition page = KeysetPageDefinition.fromContinuationToken(
+                new KeysetPageDefinition(0, 10, new Object[]{Color.GREEN, 1L}).toContinuationToken());
+
+        assertTrue(page.lastKey[0] instanceof KeysetPageDefinition.EnumKey);
+        assertSame(((KeysetPageDefinition.EnumKey) page.lastKey[0]).resolve(Color.class), Color.GREEN);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void enumKeyOfOtherTypeIsRejected() {
+        KeysetPageDefinition page = KeysetPageDefinition.fromContinuationToken(
+                new KeysetPageDefinition(0, 10, new Object[]{Color.GREEN, 1L}).toContinuationToken());
+
+        ((KeysetPageDefinition.EnumKey) page.lastKey[0]).resolve(Shape.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownEnumConstantIsRejected() {
+        KeysetPageDefinition page = KeysetPageDefinition.fromContinuationToken(BaseEncoding.base64Url().omitPadding()
+                .encode(("{\"o\":0,\"s\":10,\"k\":[[\"e\",\"" + Color.class.getName() + "\",\"BLUE\"]]}").getBytes(Charsets.UTF_8)));
+
+        ((KeysetPageDefinition.EnumKey) page.lastKey[0]).resolve(Color.class);
+    }
+
+    @Test
+    public void decodedDefinitionIsSerializable() throws Exception {
+        KeysetPageDefinition page = KeysetPageDefinition.fromContinuationToken(
+                new KeysetPageDefinition(10, 10, new Object[]{Color.GREEN, 1L}).toContinuationToken());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(page);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(copy, page);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unsupportedValuesAreRejected() {
+        new KeysetPageDefinition(0, 10, new Object[]{new Object()}).toContinuationToken();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void malformedTokenIsRejected() {
+        KeysetPageDefinition.fromContinuationToken("not a token");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownKeyTypeIsRejected() {
+        KeysetPageDefinition.fromContinuationToken(BaseEncoding.base64Url().omitPadding()
+                .encode("{\"o\":0,\"s\":10,\"k\":[[\"x\",\"1\"]]}".getBytes(Charsets.UTF_8)));
+    }
+
+    public static enum Color {
+        RED, GREEN
+    }
+
+    public static enum Shape {
+        RED, GREEN
+    }
+}
@@ -0,0 +1,366 @@
+package com.semantive.hiqual.pagination;
+
+import com.semantive.hiqual.IResultSetConfig;
+import com.semantive.hiqual.ResultSetConfigBuilder;
+import com.semantive.hiqual.core.QueryBuilder;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Order;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.beans.ConstructorProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks the keyset pagination of {@link QueryBuilder} on an in-memory H2 database.
+ */
+public class KeysetPaginationTest {
+
+    private static final int PRODUCT_COUNT = 10;
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    @BeforeClass
+    public void setUpSessionFactory() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Product.class)
+                .addAnnotatedClass(Tag.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:keyset;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        sessionFactory = configuration.buildSessionFactory(new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry());
+
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (long id = 1; id <= PRODUCT_COUNT; id++) {
+            // the prices repeat, so the id has to break the ties
+            session.save(new Product(id, "product " + id, (int) (id % 3), id % 2 == 0 ? Category.BOOK : Category.FOOD));
+            session.save(new Tag("tag" + id, (int) (id % 2)));
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterClass
+    public void tearDownSessionFactory() {
+        sessionFactory.close();
+    }
+
+    @BeforeMethod
+    public void openSession() {
+        session = sessionFactory.openSession();
+    }
+
+    @AfterMethod
+    public void closeSession() {
+        session.close();
+    }
+
+    @Test
+    public void seekPredicateComparesEachColumnInItsDirection() {
+        IResultSetConfig config = new ResultSetConfigBuilder()
+                .setPageDefinition(new KeysetPageDefinition(3, 3, new Object[]{2, "product 8", 8L}))
+                .setOrder(Order.desc("price"))
+                .addOrder(Order.asc("name"))
+                .build();
+
+        String condition = new QueryBuilder<Product>(Product.class, config).setFromClause("from Product this").generateKeysetCondition();
+
+        assertEquals(condition, " and ((this.price < :_keyset_0) or (this.price = :_keyset_0 and this.name > :_keyset_1)"
+                + " or (this.price = :_keyset_0 and this.name = :_keyset_1 and this.id > :_keyset_2)) ");
+    }
+
+    @Test
+    public void idIsNotAppendedWhenOrderedById() {
+        IResultSetConfig config = new ResultSetConfigBuilder()
+                .setPageDefinition(new KeysetPageDefinition(3, 3, new Object[]{3L}))
+                .setOrder(Order.desc("id"))
+                .build();
+
+        String condition = new QueryBuilder<Product>(Product.class, config).setFromClause("from Product this").generateKeysetCondition();
+
+        assertEquals(condition, " and ((this.id < :_keyset_0)) ");
+    }
+
+    @Test
+    public void firstPageHasNoSeekPredicate() {
+        IResultSetConfig config = new ResultSetConfigBuilder().setKeysetPagination(3).setOrder(Order.desc("price")).build();
+
+        assertEquals(new QueryBuilder<Product>(Product.class, config).setFromClause("from Product this").generateKeysetCondition(), "");
+    }
+
+    @Test
+    public void mixedOrdersArePagedWithIdAsTieBreaker() {
+        List<Long> ids = pageThrough(new ResultSetConfigBuilder().setKeysetPagination(3)
+                .setOrder(Order.desc("price"))
+                .addOrder(Order.asc("name")));
+
+        assertEquals(ids.toString(), "[2, 5, 8, 1, 10, 4, 7, 3, 6, 9]");
+    }
+
+    @Test
+    public void enumKeysAreResolvedByColumnType() {
+        List<Long> ids = pageThrough(new ResultSetConfigBuilder().setKeysetPagination(4).setOrder(Order.asc("category")));
+
+        assertEquals(ids.toString(), "[2, 4, 6, 8, 10, 1, 3, 5, 7, 9]");
+    }
+
+    @Test
+    public void partialPageIsTheLastOne() {
+        PaginationAwareListWrapper<Product> page = queryBuilder(new ResultSetConfigBuilder()
+                .setPageDefinition(new KeysetPageDefinition(8, 4, new Object[]{8L})).setOrder(Order.asc("id")).build())
+                .generatePaginatedList(session);
+
+        assertEquals(page.size(), 2);
+        assertEquals(page.totalSize(), PRODUCT_COUNT);
+        assertNull(page.nextPage());
+        assertNull(page.continuationToken());
+    }
+
+    @Test
+    public void fullLastPageIsFollowedByEmptyPage() {
+        ResultSetConfigBuilder config = new ResultSetConfigBuilder()
+                .setPageDefinition(new KeysetPageDefinition(5, 5, new Object[]{5L})).setOrder(Order.asc("id"));
+
+        PaginationAwareListWrapper<Product> page = queryBuilder(config.build()).generatePaginatedList(session);
+        assertEquals(page.size(), 5);
+        assertEquals(page.nextPage(), new KeysetPageDefinition(10, 5, new Object[]{10L}));
+
+        page = queryBuilder(config.setContinuationToken(page.continuationToken()).build()).generatePaginatedList(session);
+        assertTrue(page.isEmpty());
+        assertNull(page.nextPage());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void nullInLastKeyIsRejected() {
+        queryBuilder(new ResultSetConfigBuilder()
+                .setPageDefinition(new KeysetPageDefinition(3, 3, new Object[]{null, 3L})).setOrder(Order.asc("price")).build())
+                .generatePaginatedList(session);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void lastKeyNotMatchingOrdersIsRejected() {
+        queryBuilder(new ResultSetConfigBuilder()
+                .setPageDefinition(new KeysetPageDefinition(3, 3, new Object[]{3L})).setOrder(Order.asc("price")).build())
+                .generatePaginatedList(session);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void nullKeyOfLastRowIsRejected() {
+        queryBuilder(new ResultSetConfigBuilder().setKeysetPagination(3).setOrder(Order.asc("note")).build())
+                .generatePaginatedList(session);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void keysetColumnsHaveToBeFetched() {
+        new QueryBuilder<ProductView>(ProductView.class, new ResultSetConfigBuilder().setKeysetPagination(3)
+                .setPropertiesToFetch("id", "name", "price").setOrder(Order.asc("category")).build())
+                .setFromClause("from Product this")
+                .useConstructorProjection()
+                .generatePaginatedList(session);
+    }
+
+    @Test
+    public void immutableProjectionsArePaged() {
+        List<Long> ids = new ArrayList<Long>();
+        ResultSetConfigBuilder config = new ResultSetConfigBuilder().setKeysetPagination(4)
+                .setPropertiesToFetch("id", "name", "price")
+                .setOrder(Order.desc("price"));
+
+        PaginationAwareListWrapper<ProductView> page;
+        do {
+            page = new QueryBuilder<ProductView>(ProductView.class, config.build())
+                    .setFromClause("from Product this")
+                    .useConstructorProjection()
+                    .generatePaginatedList(session);
+            for (ProductView view : page) ids.add(view.getId());
+            if (page.continuationToken() != null) config.setContinuationToken(page.continuationToken());
+        } while (page.continuationToken() != null);
+
+        assertEquals(ids.toString(), "[2, 5, 8, 1, 4, 7, 10, 3, 6, 9]");
+        assertNull(page.nextPage());
+    }
+
+    @Test
+    public void tieBreakerIsIdentifierOfEntity() {
+        List<String> codes = new ArrayList<String>();
+        ResultSetConfigBuilder config = new ResultSetConfigBuilder().setKeysetPagination(3).setOrder(Order.asc("rank"));
+
+        PaginationAwareListWrapper<Tag> page;
+        do {
+            page = new QueryBuilder<Tag>(Tag.class, config.build())
+                    .setDefaultSelectClause("select this")
+                    .setFromClause("from Tag this")
+                    .setKeysetIdProperty(sessionFactory, Tag.class)
+                    .generatePaginatedList(session);
+            for (Tag tag : page) codes.add(tag.getCode());
+            if (page.continuationToken() != null) config.setContinuationToken(page.continuationToken());
+        } while (page.continuationToken() != null);
+
+        assertEquals(codes.toString(), "[tag10, tag2, tag4, tag6, tag8, tag1, tag3, tag5, tag7, tag9]");
+    }
+
+    private List<Long> pageThrough(ResultSetConfigBuilder config) {
+        List<Long> ids = new ArrayList<Long>();
+        PaginationAwareListWrapper<Product> page;
+        do {
+            page = queryBuilder(config.build()).generatePaginatedList(session);
+            for (Product product : page) ids.add(product.getId());
+            if (page.continuationToken() != null) config.setContinuationToken(page.continuationToken());
+        } while (page.continuationToken() != null);
+        return ids;
+    }
+
+    private static QueryBuilder<Product> queryBuilder(IResultSetConfig config) {
+        return new QueryBuilder<Product>(Product.class, config)
+                .setDefaultSelectClause("select this")
+                .setFromClause("from Product this");
+    }
+
+    public static enum Category {
+        BOOK, FOOD
+    }
+
+    @Entity(name = "Product")
+    public static class Product {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        private Integer price;
+
+        private Category category;
+
+        private String note;
+
+        public Product() {
+        }
+
+        public Product(Long id, String name, Integer price, Category category) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.category = category;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getPrice() {
+            return price;
+        }
+
+        public void setPrice(Integer price) {
+            this.price = price;
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+
+        public void setCategory(Category category) {
+            this.category = category;
+        }
+
+        public String getNote() {
+            return note;
+        }
+
+        public void setNote(String note) {
+            this.note = note;
+        }
+    }
+
+    public static class ProductView {
+
+        private final Long id;
+
+        private final String name;
+
+        private final Integer price;
+
+        @ConstructorProperties({"id", "name", "price"})
+        public ProductView(Long id, String name, Integer price) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Integer getPrice() {
+            return price;
+        }
+    }
+
+    @Entity(name = "Tag")
+    public static class Tag {
+
+        @Id
+        private String code;
+
+        private Integer rank;
+
+        public Tag() {
+        }
+
+        public Tag(String code, Integer rank) {
+            this.code = code;
+            this.rank = rank;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+        public Integer getRank() {
+            return rank;
+        }
+
+        public void setRank(Integer rank) {
+            this.rank = rank;
+        }
+    }
+}